@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.Edge;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.PayloadSchema;
+
+/**
+ * Edge payload of generated graphs, the label is also the edge type.
+ * Payloads are encoded and read by predicates through {@link #SCHEMA}
+ * @author amitport
+ */
+public class BenchPayload implements Edge.Typed {
+	private static final long serialVersionUID = 5329645385817325540L;
+
+	public final static PayloadSchema<BenchPayload> SCHEMA = new PayloadSchema<BenchPayload>(BenchPayload.class, "weight", "label") {
+		@Override
+		public Object get(BenchPayload payload, int field) {
+			return (field == 0) ? (Object) payload.weight : payload.label;
+		}
+
+		@Override
+		protected BenchPayload create(Object[] values) {
+			return new BenchPayload((values[0] == null) ? 0 : (Integer) values[0], (String) values[1]);
+		}
+	};
+
+	static {
+		PayloadCodecs.register(PayloadCodecs.FIRST_ID, SCHEMA);
+	}
+
+	public final int weight;
+	public final String label;
+
+	public BenchPayload(int weight, String label) {
+		this.weight = weight;
+		this.label = label;
+	}
+
+	@Override
+	public String getEdgeType() {
+		return label;
+	}
+
+	@Override
+	public String toString() {
+		return label + ":" + weight;
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.GraphPackService;
+import graphpack.local.persistence.IEdgeStore;
+import graphpack.local.persistence.MemoryClientStore;
+import graphpack.local.persistence.MemoryEdgeStore;
+import graphpack.local.persistence.MemoryNodeStore;
+import graphpack.remote.IConnectionManager;
+import graphpack.traversal.ITraversalEngine;
+
+/**
+ * A service held in memory, connected only to services of the same JVM (directly, unless another connection manager is given)
+ * @author amitport
+ */
+public class BenchService extends GraphPackService {
+
+	public BenchService(String serviceName, Class<? extends ITraversalEngine> traversalEngineClass) {
+		this(serviceName, traversalEngineClass, MemoryEdgeStore.class);
+	}
+
+	public BenchService(String serviceName, Class<? extends ITraversalEngine> traversalEngineClass,
+			Class<? extends IEdgeStore> edgeStoreClass) {
+		this(serviceName, traversalEngineClass, edgeStoreClass, LocalConnectionManager.class);
+	}
+
+	public BenchService(String serviceName, Class<? extends ITraversalEngine> traversalEngineClass,
+			Class<? extends IEdgeStore> edgeStoreClass, Class<? extends IConnectionManager> connectionManagerClass) {
+		super(serviceName, connectionManagerClass, MemoryClientStore.class, MemoryNodeStore.class,
+				edgeStoreClass, NoParser.class, NoTaskManager.class, null);
+		setTraversalEngineClass(traversalEngineClass);
+		init();
+		start();
+	}
+}
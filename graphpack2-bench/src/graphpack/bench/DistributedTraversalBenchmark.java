@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.IClient;
+import graphpack.INode;
+import graphpack.local.persistence.MemoryEdgeStore;
+import graphpack.matching.Matcher;
+import graphpack.matching.ResultSet;
+import graphpack.remote.loopback.LoopbackConnectionManager;
+import graphpack.remote.loopback.LoopbackTransport;
+import graphpack.remote.loopback.WireConditions;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Traversals of a generated graph (see {@link Graphs}) spread over services of the same JVM, all remote calls
+ * are encoded and sent over a simulated wire (see {@link LoopbackTransport})
+ * @author amitport
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class DistributedTraversalBenchmark {
+	final static String SERVICE = "bench", CLIENT = "c";
+
+	@Param({"grid", "powerlaw"})
+	String shape;
+
+	@Param({"2000"})
+	int size;
+
+	@Param({"cons", "repeat"})
+	String pattern;
+
+	@Param({"3"})
+	int services;
+
+	@Param({"0", "200"})
+	long latencyMicros;
+
+	@Param({"depthFirst", "breadthFirst"})
+	String engine;
+
+	BenchService[] cluster;
+	INode root;
+	Matcher matcher;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		LoopbackTransport.SHARED.setConditions(WireConditions.PERFECT.withLatency(latencyMicros, TimeUnit.MICROSECONDS));
+		cluster = new BenchService[services];
+		IClient[] clients = new IClient[services];
+		String[] serviceNames = new String[services];
+		for (int i = 0; i < services; i++) {
+			serviceNames[i] = SERVICE + i;
+			cluster[i] = new BenchService(serviceNames[i], TraversalBenchmark.engineClass(engine), MemoryEdgeStore.class,
+					LoopbackConnectionManager.class);
+			cluster[i].createClient(CLIENT);
+			clients[i] = cluster[i].client(CLIENT);
+		}
+		Graphs.build(shape, clients, serviceNames, CLIENT, size);
+		root = clients[0].node("n0");
+		matcher = Patterns.get(pattern).compile();
+		LoopbackTransport.SHARED.resetCounters();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (BenchService service : cluster) service.shutdown();
+		LoopbackTransport.SHARED.setConditions(WireConditions.PERFECT);
+	}
+
+	@Benchmark
+	public ResultSet traverse() {
+		return root.traverse(matcher);
+	}
+}
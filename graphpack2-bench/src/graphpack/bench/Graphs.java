@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.IClient;
+import graphpack.NodeLocation;
+
+import java.util.Random;
+
+/**
+ * Synthetic graph generators, all nodes are created in a single client and named {@code n0, n1, ...}
+ * ({@code n0} is where traversals start). Payload weights and labels are drawn from a fixed seed
+ * so every run builds exactly the same graph.
+ * @author amitport
+ */
+public final class Graphs {
+	public final static long SEED = 0x6a7b5L;
+	public final static String[] LABELS = {"knows", "likes", "follows", "blocks"};
+
+	private Graphs(){}
+
+	/** builds the graph named {@code shape} (chain, star, grid or powerlaw) with about {@code size} nodes */
+	public static void build(String shape, IClient client, String serviceName, String clientName, int size) {
+		build(shape, new IClient[]{client}, new String[]{serviceName}, clientName, size);
+	}
+
+	/**
+	 * builds the same graph with its nodes spread round robin over {@code clients} (all named {@code clientName}),
+	 * node {@code ni} is held by {@code clients[i % clients.length]} of the service {@code serviceNames[i % clients.length]}
+	 */
+	public static void build(String shape, IClient[] clients, String[] serviceNames, String clientName, int size) {
+		Builder b = new Builder(clients, serviceNames, clientName);
+		if ("chain".equals(shape)) chain(b, size);
+		else if ("star".equals(shape)) star(b, size);
+		else if ("grid".equals(shape)) grid(b, (int) Math.sqrt(size));
+		else if ("powerlaw".equals(shape)) powerLaw(b, size, 3);
+		else throw new IllegalArgumentException("unknown shape " + shape);
+	}
+
+	/** n0 -> n1 -> ... -> n(size-1) */
+	static void chain(Builder b, int size) {
+		b.nodes(size);
+		for (int i = 0; i + 1 < size; i++) b.edge(i, i + 1);
+	}
+
+	/** n0 -> every other node */
+	static void star(Builder b, int size) {
+		b.nodes(size);
+		for (int i = 1; i < size; i++) b.edge(0, i);
+	}
+
+	/** a {@code side} x {@code side} grid with edges to the right and downwards */
+	static void grid(Builder b, int side) {
+		b.nodes(side * side);
+		for (int r = 0; r < side; r++) {
+			for (int c = 0; c < side; c++) {
+				int i = r * side + c;
+				if (c + 1 < side) b.edge(i, i + 1);
+				if (r + 1 < side) b.edge(i, i + side);
+			}
+		}
+	}
+
+	/**
+	 * preferential attachment: every new node is linked from {@code m} existing nodes chosen proportionally
+	 * to their degree, so out-degrees follow a power law and n0 is a hub
+	 */
+	static void powerLaw(Builder b, int size, int m) {
+		b.nodes(size);
+		int[] ends = new int[2 * m * size];//every edge adds both of its ends, a node appears once per unit of degree
+		int count = 0;
+		for (int i = 1; i < size; i++) {
+			for (int j = 0; j < m; j++) {
+				int source = (count == 0) ? 0 : ends[b.random.nextInt(count)];
+				b.edge(source, i);
+				ends[count++] = source;
+				ends[count++] = i;
+			}
+		}
+	}
+
+	/*** static ***/
+
+	static class Builder {
+		final IClient[] clients;
+		final String[] serviceNames;
+		final String clientName;
+		final Random random = new Random(SEED);
+		Builder(IClient[] clients, String[] serviceNames, String clientName) {
+			this.clients = clients;
+			this.serviceNames = serviceNames;
+			this.clientName = clientName;
+		}
+		void nodes(int size) {
+			for (int i = 0; i < size; i++) clients[i % clients.length].createNode("n" + i);
+		}
+		void edge(int source, int target) {
+			clients[source % clients.length].node("n" + source).addOutgoingEdge(
+					new NodeLocation(serviceNames[target % clients.length], clientName, "n" + target),
+					new BenchPayload(random.nextInt(100), LABELS[random.nextInt(LABELS.length)]));
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.IService;
+import graphpack.remote.IConnectionManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Connects services of the same JVM directly (no serialization), enough for single service benchmarks
+ * @author amitport
+ */
+public class LocalConnectionManager implements IConnectionManager {
+	final static ConcurrentMap<String,IService> exported = new ConcurrentHashMap<String,IService>();
+	String serviceName;
+
+	@Override
+	public void export(String serviceName, IService service) {
+		this.serviceName = serviceName;
+		exported.put(serviceName, service);
+	}
+
+	@Override
+	public void unexport() {
+		if (serviceName != null) exported.remove(serviceName);
+	}
+
+	@Override
+	public IService connect(String sourceService, String sourceClient, String targetService) {
+		IService $ = exported.get(targetService);
+		if ($ == null) throw new IllegalStateException("unknown service " + targetService);
+		return $;
+	}
+}
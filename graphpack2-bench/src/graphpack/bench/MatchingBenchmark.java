@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.Edge;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.matching.Matcher;
+import graphpack.matching.Result;
+import graphpack.matching.ResultSet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The building blocks of matching: a single matcher step, merging results and combining result sets
+ * @author amitport
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class MatchingBenchmark {
+	@Param({"edge", "cons", "or", "repeat", "predicate"})
+	String pattern;
+
+	@Param({"1000"})
+	int results;
+
+	SerializableEdge[] edges;
+	Matcher matcher, compiled;
+	Result r1, r2;
+	ResultSet rs1, rs2;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(Graphs.SEED);
+		edges = new SerializableEdge[64];
+		for (int i = 0; i < edges.length; i++) {
+			edges[i] = new SerializableEdge(location(i), location(i + 1), i,
+					new BenchPayload(random.nextInt(100), Graphs.LABELS[random.nextInt(Graphs.LABELS.length)]));
+		}
+		matcher = Patterns.get(pattern);
+		compiled = matcher.compile();
+
+		r1 = result("a", edges[0].target, "b", edges[1].target, "x", 1);
+		r2 = result("b", edges[1].target, "c", edges[2].target, "y", 2);
+		rs1 = new ResultSet();
+		rs2 = new ResultSet();
+		for (int i = 0; i < results; i++) {
+			//about 10 matches per key
+			rs1.add(result("k", random.nextInt(results / 10), "a", i));
+			rs2.add(result("k", random.nextInt(results / 10), "b", i));
+		}
+	}
+
+	@Benchmark
+	public void cont(Blackhole bh) {
+		for (SerializableEdge e : edges) bh.consume(matcher.cont(e));
+	}
+
+	@Benchmark
+	public void contCompiled(Blackhole bh) {
+		for (SerializableEdge e : edges) bh.consume(compiled.cont(e));
+	}
+
+	/** two steps, so the second step starts from bound variables */
+	@Benchmark
+	public void contTwice(Blackhole bh) {
+		for (int i = 0; i + 1 < edges.length; i++) bh.consume(matcher.cont(edges[i]).cont(edges[i + 1]));
+	}
+
+	@Benchmark
+	public Result merge() {
+		return Result.merge(r1, r2);
+	}
+
+	@Benchmark
+	public int product() {
+		return ResultSet.product(rs1, rs2).size();
+	}
+
+	@Benchmark
+	public int union() {
+		ResultSet $ = ResultSet.Empty();
+		for (int i = 0; i < 16; i++) $ = ResultSet.union($, (i % 2 == 0) ? rs1 : rs2);
+		return $.size();
+	}
+
+	static NodeLocation location(int i) {
+		return new NodeLocation("bench", "c", "n" + i);
+	}
+
+	static Result result(Object... namesAndValues) {
+		Result $ = new Result();
+		for (int i = 0; i < namesAndValues.length; i += 2) $.put((String) namesAndValues[i], namesAndValues[i + 1]);
+		return $;
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.matching.Matcher;
+import graphpack.matching.Predicate;
+import graphpack.parsing.java.IParser;
+
+/**
+ * Benchmarks build their matchers directly (see {@link Patterns}) so parsing isn't part of what is measured
+ * @author amitport
+ */
+public class NoParser implements IParser {
+	@Override
+	public Matcher parsePath(String str, Object... params) {
+		throw new UnsupportedOperationException("use Patterns");
+	}
+
+	@Override
+	public Predicate parsePredicate(String str, Object... params) {
+		throw new UnsupportedOperationException("use Patterns");
+	}
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.Extensions;
+import graphpack.INode;
+import graphpack.taskprocessing.ITask;
+import graphpack.taskprocessing.ITaskManager;
+
+/**
+ * Benchmarks don't run tasks
+ * @author amitport
+ */
+public class NoTaskManager implements ITaskManager {
+	@Override
+	public void addTask(String clientName, String nodeName, String taskName, INode node, Extensions extensions, Class<? extends ITask> task) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void callTask(String clientName, String nodeName, String taskName, Object... params) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.matching.Matcher;
+import graphpack.matching.Predicate;
+import graphpack.matching.Value;
+import graphpack.parsing.java.IReservedIdentifiers;
+
+/**
+ * The matchers used by the benchmarks, built directly (without a parser)
+ * @author amitport
+ */
+public final class Patterns {
+	public final static IReservedIdentifiers IDENTIFIERS = new Identifiers();
+
+	private Patterns(){}
+
+	/** @return the matcher named {@code pattern} (edge, cons, or, repeat, predicate or typed) */
+	public static Matcher get(String pattern) {
+		if ("edge".equals(pattern)) return edge("e", "t");
+		if ("cons".equals(pattern)) return new Matcher.Cons(edge("e1", null), new Matcher.Cons(edge(null, null), edge("e3", "t")));
+		if ("or".equals(pattern)) return new Matcher.Or(edge("e", "t"), new Matcher.Cons(edge(null, null), edge("e", "t")));
+		if ("repeat".equals(pattern)) return new Matcher.Repeat(edge(null, null), 1, 4);
+		if ("predicate".equals(pattern)) return new Matcher.Edge(IDENTIFIERS, "e", null, "t", heavy("e"));
+		if ("typed".equals(pattern)) return new Matcher.Edge(IDENTIFIERS, "e", "knows", "t",
+				new Predicate.Comparison.GreaterThan(new Value.Property("e", new String[]{"weight"}), new Value.Literal(50)));
+		throw new IllegalArgumentException("unknown pattern " + pattern);
+	}
+
+	static Matcher edge(String edgeName, String targetName) {
+		return new Matcher.Edge(IDENTIFIERS, edgeName, null, targetName, null);
+	}
+
+	/** edgeName.weight > 50 and edgeName.label == "knows" */
+	static Predicate heavy(String edgeName) {
+		return new Predicate.And(
+				new Predicate.Comparison.GreaterThan(new Value.Property(edgeName, new String[]{"weight"}), new Value.Literal(50)),
+				new Predicate.Equals(new Value.Property(edgeName, new String[]{"label"}), new Value.Literal("knows")));
+	}
+
+	/*** static ***/
+
+	static class Identifiers implements IReservedIdentifiers {
+		private static final long serialVersionUID = -1180302779213394735L;
+		@Override
+		public String getCURRENT_SRC_NAME() {return "_src";}
+		@Override
+		public String getCURRENT_EDG_NAME() {return "_edg";}
+		@Override
+		public String getCURRENT_TRG_NAME() {return "_trg";}
+	}
+}
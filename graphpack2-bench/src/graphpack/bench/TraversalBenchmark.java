@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.bench;
+
+import graphpack.INode;
+import graphpack.local.persistence.IEdgeStore;
+import graphpack.local.persistence.MemoryEdgeStore;
+import graphpack.local.persistence.OffHeapEdgeStore;
+import graphpack.matching.Matcher;
+import graphpack.matching.ResultSet;
+import graphpack.traversal.BreadthFirstTraversalEngine;
+import graphpack.traversal.DepthFirstTraversalEngine;
+import graphpack.traversal.ITraversalEngine;
+import graphpack.traversal.ParallelTraversalEngine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Traversals from the root of a generated graph (see {@link Graphs}) held by the in-memory stores
+ * @author amitport
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class TraversalBenchmark {
+	final static String SERVICE = "bench", CLIENT = "c";
+
+	@Param({"chain", "star", "grid", "powerlaw"})
+	String shape;
+
+	@Param({"10000"})
+	int size;
+
+	@Param({"edge", "cons", "or", "repeat", "predicate", "typed"})
+	String pattern;
+
+	@Param({"false", "true"})
+	boolean compiled;
+
+	@Param({"depthFirst"})
+	String engine;
+
+	@Param({"memory"})
+	String store;
+
+	BenchService service;
+	INode root;
+	Matcher matcher;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		service = new BenchService(SERVICE, engineClass(engine), storeClass(store));
+		service.createClient(CLIENT);
+		Graphs.build(shape, service.client(CLIENT), SERVICE, CLIENT, size);
+		root = service.client(CLIENT).node("n0");
+		matcher = Patterns.get(pattern);
+		if (compiled) matcher = matcher.compile();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		service.shutdown();
+	}
+
+	@Benchmark
+	public ResultSet traverse() {
+		return root.traverse(matcher);
+	}
+
+	static Class<? extends ITraversalEngine> engineClass(String engine) {
+		if ("depthFirst".equals(engine)) return DepthFirstTraversalEngine.class;
+		if ("breadthFirst".equals(engine)) return BreadthFirstTraversalEngine.class;
+		if ("parallel".equals(engine)) return ParallelTraversalEngine.class;
+		throw new IllegalArgumentException("unknown engine " + engine);
+	}
+
+	static Class<? extends IEdgeStore> storeClass(String store) {
+		if ("memory".equals(store)) return MemoryEdgeStore.class;
+		if ("offheap".equals(store)) return OffHeapEdgeStore.class;
+		throw new IllegalArgumentException("unknown store " + store);
+	}
+}
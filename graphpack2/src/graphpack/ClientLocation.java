@@ -48,7 +48,7 @@ public class ClientLocation  implements Serializable {
 			return false;
 		if (getClass() != obj.getClass())
 			return false;
-		NodeLocation other = (NodeLocation) obj;
+		ClientLocation other = (ClientLocation) obj;
 		if (serviceName == null) {
 			if (other.serviceName != null)
 				return false;
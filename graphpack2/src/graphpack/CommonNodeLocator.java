@@ -15,28 +15,39 @@
  ******************************************************************************/
 package graphpack;
 
-import graphpack.remote.IConnectionManager;
+import graphpack.local.NodeRegistry;
+import graphpack.remote.RemoteNodeLocator;
 
 import com.google.inject.Inject;
 
+/**
+ * Locates local nodes through the {@link NodeRegistry} (the client and node stores are only asked once per node)
+ * and remote nodes through the {@link RemoteNodeLocator}
+ * @author amitport
+ */
 public class CommonNodeLocator implements INodeLocator {
 	IService local;
-	IConnectionManager connectionManager;
+	RemoteNodeLocator remote;
+	NodeRegistry registry;
 	@Inject
-	public CommonNodeLocator(IService local, IConnectionManager connectionManager){
+	public CommonNodeLocator(IService local, RemoteNodeLocator remote, NodeRegistry registry){
 		this.local = local;
-		this.connectionManager = connectionManager;
+		this.remote = remote;
+		this.registry = registry;
 	}
 	
 	@Override
 	public INode locate(String sourceService, String sourceClient, NodeLocation location){
-		System.out.println(sourceService+ " " + local + "got here!!");
 		if (location.getServiceName().equals(sourceService)) {
-			System.out.println(local + "got here");
-			return local.client(location.clientName).node(location.nodeName);
+			INode $ = registry.node(location);
+			if ($ == null) {
+				IClient client = local.client(location.clientName);
+				$ = (client == null) ? null : client.node(location.nodeName);
+				if ($ != null) registry.register($);
+			}
+			return $;
 		} else {
-			return connectionManager.connect(sourceService, sourceClient, location.serviceName)
-					.client(location.clientName).node(location.nodeName);
+			return remote.locate(sourceService, sourceClient, location);
 		}
 	}
 }
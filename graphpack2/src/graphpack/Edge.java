@@ -18,13 +18,36 @@ package graphpack;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
 
+/**
+ * An edge as seen from one of its ends: {@link #target} is the node reached by following it.
+ * Outgoing edges are followed from their source, incoming edges (see {@link INode#getIncomingEdges()}) are
+ * followed backwards, so their {@link #target} is the source of the underlying {@link #serializableEdge}.
+ */
 final public class Edge {	
 	final public INode target;
 	final public SerializableEdge serializableEdge;
+	final public boolean incoming;
 	
 	public Edge(NodeLocation source, INode target, long num, Payload payload) {
 		this.target = target;
 		this.serializableEdge = new SerializableEdge(source, target.location(), num, payload);
+		this.incoming = false;
+	}
+	
+	private Edge(INode source, SerializableEdge serializableEdge) {
+		this.target = source;
+		this.serializableEdge = serializableEdge;
+		this.incoming = true;
+	}
+	
+	/** @return {@code e} as an incoming edge of its target, followed back to {@code source} */
+	public static Edge incoming(INode source, SerializableEdge e) {
+		return new Edge(source, e);
+	}
+	
+	/** @return the location of {@link #target} */
+	public NodeLocation targetLocation() {
+		return incoming ? serializableEdge.source : serializableEdge.target;
 	}
 	
 	@Override
@@ -41,7 +64,7 @@ final public class Edge {
 		if (getClass() != obj.getClass())
 			return false;
 		Edge other = (Edge) obj;
-		return (serializableEdge.equals(other.serializableEdge));
+		return incoming == other.incoming && serializableEdge.equals(other.serializableEdge);
 	}
 	
 	@Override
@@ -73,4 +96,13 @@ final public class Edge {
 				{return EMPTY;}
 		}
 	}
+	
+	/**
+	 * a payload that gives its edge a type, matched by the edge type of {@link graphpack.matching.Matcher.Edge}
+	 * and indexed by edge stores (untyped edges never match a typed pattern)
+	 * @author amitport
+	 */
+	public static interface Typed extends Payload {
+		String getEdgeType();
+	}
 }
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack;
+
+import graphpack.Edge.Payload;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.PayloadSchema;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Describes the outgoing edges a matcher may still consume: edges of some types (see {@link Edge.Typed})
+ * whose payload fields satisfy a conjunction of simple conditions.
+ * Selectors are conservative, every edge the matcher accepts is selected (but not the other way around),
+ * so edge stores may use them to look up candidate edges in an index instead of scanning all of them.
+ * @author amitport
+ */
+public final class EdgeSelector implements Serializable {
+	private static final long serialVersionUID = -6398735613528924106L;
+
+	/** selects every edge */
+	public final static EdgeSelector ALL = new EdgeSelector(null, Collections.<Condition>emptyList());
+
+	final Set<String> types;//null for any type
+	final List<Condition> conditions;
+
+	private EdgeSelector(Set<String> types, List<Condition> conditions) {
+		this.types = types;
+		this.conditions = conditions;
+	}
+
+	public static EdgeSelector ofType(String type) {
+		return new EdgeSelector(Collections.singleton(type), Collections.<Condition>emptyList());
+	}
+
+	/** @return this selector restricted to edges whose payload {@code field} satisfies {@code op value} */
+	public EdgeSelector where(String field, Op op, Object value) {
+		List<Condition> newConditions = new ArrayList<Condition>(conditions);
+		newConditions.add(new Condition(field, op, value));
+		return new EdgeSelector(types, Collections.unmodifiableList(newConditions));
+	}
+
+	/** @return a selector of the edges selected by either this or {@code other} */
+	public EdgeSelector or(EdgeSelector other) {
+		if (this.equals(other)) return this;
+		if (types == null || other.types == null) return ALL;
+		Set<String> newTypes = new HashSet<String>(types);
+		newTypes.addAll(other.types);
+		return new EdgeSelector(Collections.unmodifiableSet(newTypes),
+				conditions.equals(other.conditions) ? conditions : Collections.<Condition>emptyList());
+	}
+
+	public boolean isAll() {
+		return types == null && conditions.isEmpty();
+	}
+
+	/** @return the selected edge types or {@code null} for any type */
+	public Set<String> getTypes() {return types;}
+	public List<Condition> getConditions() {return conditions;}
+
+	public boolean matches(Payload payload) {
+		if (types != null && !types.contains(typeOf(payload))) return false;
+		for (Condition c : conditions) {
+			if (!c.matches(field(payload, c.field))) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * ((types == null) ? 0 : types.hashCode()) + conditions.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof EdgeSelector))
+			return false;
+		EdgeSelector other = (EdgeSelector) obj;
+		return ((types == null) ? other.types == null : types.equals(other.types))
+				&& conditions.equals(other.conditions);
+	}
+
+	@Override
+	public String toString() {
+		if (isAll()) return "<all edges>";
+		return "<" + ((types == null) ? "any type" : types) + (conditions.isEmpty() ? "" : " where " + conditions) + ">";
+	}
+
+	/*** static ***/
+
+	private final static ConcurrentMap<Class<?>,ConcurrentMap<String,Object>> fields =
+			new ConcurrentHashMap<Class<?>,ConcurrentMap<String,Object>>();
+	private final static Object NO_FIELD = new Object();
+
+	/** @return the type of an edge with {@code payload} or {@code null} if it is untyped */
+	public static String typeOf(Payload payload) {
+		return (payload instanceof Edge.Typed) ? ((Edge.Typed) payload).getEdgeType() : null;
+	}
+
+	/**
+	 * @return the value of {@code field} of {@code payload} (as predicates read it) or {@code null} if there is no such field,
+	 * fields are read through the payload's {@link PayloadSchema} if it has one and reflectively (public fields) otherwise
+	 */
+	public static Object field(Payload payload, String field) {
+		if (payload == null) return null;
+		PayloadSchema<Payload> schema = PayloadCodecs.schema(payload);
+		if (schema != null) {
+			int i = schema.field(field);
+			if (i >= 0) return schema.get(payload, i);
+		}
+		ConcurrentMap<String,Object> byName = fields.get(payload.getClass());
+		if (byName == null) {
+			ConcurrentMap<String,Object> other = fields.putIfAbsent(payload.getClass(), byName = new ConcurrentHashMap<String,Object>());
+			if (other != null) byName = other;
+		}
+		Object f = byName.get(field);
+		if (f == null) {
+			try {
+				f = payload.getClass().getField(field);
+			} catch (NoSuchFieldException e) {
+				f = NO_FIELD;
+			}
+			byName.put(field, f);
+		}
+		if (f == NO_FIELD) return null;
+		try {
+			return ((Field) f).get(payload);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** @return {@code value} as compared by predicates: numbers become doubles */
+	public static Object normalize(Object value) {
+		return (value instanceof Number && !(value instanceof Double)) ? ((Number) value).doubleValue() : value;
+	}
+
+	public static enum Op {
+		EQ("=="), LT("<"), LE("<="), GT(">"), GE(">=");
+		final String symbol;
+		Op(String symbol) {
+			this.symbol = symbol;
+		}
+		/** @return the operator that holds for {@code b op' a} whenever {@code a op b} holds */
+		public Op flip() {
+			switch (this) {
+			case LT: return GT;
+			case LE: return GE;
+			case GT: return LT;
+			case GE: return LE;
+			default: return this;
+			}
+		}
+	}
+
+	/**
+	 * {@code field op value}, ordering conditions only hold between numbers
+	 * @author amitport
+	 */
+	public static final class Condition implements Serializable {
+		private static final long serialVersionUID = 7306620911264473183L;
+
+		final String field;
+		final Op op;
+		final Object value;//normalized
+
+		Condition(String field, Op op, Object value) {
+			if (op != Op.EQ && !(value instanceof Number)) throw new IllegalArgumentException(op.symbol + " needs a number, got " + value);
+			this.field = field;
+			this.op = op;
+			this.value = normalize(value);
+		}
+
+		public String getField() {return field;}
+		public Op getOp() {return op;}
+		public Object getValue() {return value;}
+
+		public boolean matches(Object fieldValue) {
+			fieldValue = normalize(fieldValue);
+			if (op == Op.EQ) return value.equals(fieldValue);
+			if (!(fieldValue instanceof Double)) return false;
+			int c = ((Double) fieldValue).compareTo((Double) value);
+			switch (op) {
+			case LT: return c < 0;
+			case LE: return c <= 0;
+			case GT: return c > 0;
+			default: return c >= 0;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * field.hashCode() + op.hashCode()) + value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Condition))
+				return false;
+			Condition other = (Condition) obj;
+			return field.equals(other.field) && op == other.op && value.equals(other.value);
+		}
+
+		@Override
+		public String toString() {
+			return field + " " + op.symbol + " " + value;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack;
+
+import graphpack.Edge.Payload;
+
+import graphpack.codec.PayloadCodecs;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Comparator;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * An edge that is yet to be added, the unit of bulk loading (see {@link IService#addEdges(java.util.List)})
+ * @author amitport
+ */
+public final class EdgeTuple implements Serializable {
+	private static final long serialVersionUID = 3148395604417762069L;
+
+	/** orders tuples by their source (service, client and node name) */
+	public final static Comparator<EdgeTuple> BY_SOURCE = new Comparator<EdgeTuple>() {
+		@Override
+		public int compare(EdgeTuple t1, EdgeTuple t2) {
+			NodeLocation s1 = t1.source, s2 = t2.source;
+			int $ = s1.getServiceName().compareTo(s2.getServiceName());
+			if ($ == 0) $ = s1.getClientName().compareTo(s2.getClientName());
+			if ($ == 0) $ = s1.getNodeName().compareTo(s2.getNodeName());
+			return $;
+		}
+	};
+
+	final NodeLocation source;
+	final NodeLocation target;
+	final Payload payload;
+
+	public EdgeTuple(NodeLocation source, NodeLocation target, Payload payload) {
+		this.source = source;
+		this.target = target;
+		this.payload = (payload == null) ? Payload.EMPTY : payload;
+	}
+
+	public NodeLocation getSource() {return source;}
+	public NodeLocation getTarget() {return target;}
+	public Payload getPayload() {return payload;}
+
+	public void write(DataOutput out) throws IOException {
+		writeLocation(out, source);
+		writeLocation(out, target);
+		PayloadCodecs.write(out, payload);
+	}
+
+	public static EdgeTuple read(DataInput in) throws IOException {
+		return new EdgeTuple(readLocation(in), readLocation(in), PayloadCodecs.read(in));
+	}
+
+	public static void writeLocation(DataOutput out, NodeLocation l) throws IOException {
+		out.writeUTF(l.getServiceName());
+		out.writeUTF(l.getClientName());
+		out.writeUTF(l.getNodeName());
+	}
+
+	public static NodeLocation readLocation(DataInput in) throws IOException {
+		return new NodeLocation(in.readUTF(), in.readUTF(), in.readUTF());
+	}
+
+	//tuples sent to remote services are written by the payload codecs as well
+	Object writeReplace() throws ObjectStreamException {
+		ByteArrayDataOutput $ = ByteStreams.newDataOutput();
+		try {
+			write($);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return new Serialized($.toByteArray());
+	}
+
+	@Override
+	public String toString() {
+		return source + "->" + target + ((payload == Payload.EMPTY) ? "" : " " + payload);
+	}
+
+	/*** static ***/
+
+	private static final class Serialized implements Serializable {
+		private static final long serialVersionUID = -2318417233410539725L;
+
+		final byte[] bytes;
+
+		Serialized(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		Object readResolve() throws ObjectStreamException {
+			try {
+				return read(ByteStreams.newDataInput(bytes));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
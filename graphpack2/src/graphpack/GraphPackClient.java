@@ -16,16 +16,23 @@
 package graphpack;
 
 import graphpack.parsing.java.IParser;
+import graphpack.remote.IAsyncConnectionManager;
+import graphpack.remote.IAsyncService;
 import graphpack.remote.IConnectionManager;
+import graphpack.remote.PooledConnectionManager;
+import graphpack.remote.RemoteNodeCache;
 import graphpack.remote.RemoteNodeLocator;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Singleton;
+import com.google.inject.name.Names;
 
 public class GraphPackClient extends AbstractModule {
 	Class<? extends IConnectionManager> connectionManagerClass;
 	Class<? extends IParser> parserClass;
+	long remoteNodeCacheCapacity = RemoteNodeCache.DEFAULT_CAPACITY;
+	int connectionPoolSize = PooledConnectionManager.DEFAULT_POOL_SIZE;//0 - connections aren't pooled
 	IConnectionManager connectionManager;
 	
 	public GraphPackClient(Class<? extends IConnectionManager> connectionMangerClass,
@@ -34,13 +41,30 @@ public class GraphPackClient extends AbstractModule {
 		this.parserClass = parserClass;
 	}
 	
+	/** keeps up to {@code size} connections to every service (0 connects every time), must be called before {@link #init()} */
+	public void setConnectionPoolSize(int size) {
+		this.connectionPoolSize = size;
+	}
+	
+	/** caches up to {@code capacity} remote node proxies, must be called before {@link #init()} */
+	public void setRemoteNodeCacheCapacity(long capacity) {
+		this.remoteNodeCacheCapacity = capacity;
+	}
+	
 	protected void init(){
 		connectionManager = Guice.createInjector(this).getInstance(IConnectionManager.class);
 	}
 	
 	@Override 
 	protected void configure() {
-		bind(IConnectionManager.class).to(connectionManagerClass).in(Singleton.class);
+		if (connectionPoolSize == 0 || IAsyncConnectionManager.class.isAssignableFrom(connectionManagerClass)) {//async managers multiplex a single connection
+			bind(IConnectionManager.class).to(connectionManagerClass).in(Singleton.class);
+		} else {
+			bind(Integer.class).annotatedWith(Names.named("connectionPoolSize")).toInstance(connectionPoolSize);
+			bind(IConnectionManager.class).annotatedWith(Names.named(PooledConnectionManager.UNPOOLED)).to(connectionManagerClass).in(Singleton.class);
+			bind(IConnectionManager.class).to(PooledConnectionManager.class).in(Singleton.class);
+		}
+		bind(Long.class).annotatedWith(Names.named("remoteNodeCacheCapacity")).toInstance(remoteNodeCacheCapacity);
 		bind(INodeLocator.class).to(RemoteNodeLocator.class).in(Singleton.class);
 		bind(IParser.class).to(parserClass).in(Singleton.class);
 	}
@@ -59,5 +83,12 @@ public class GraphPackClient extends AbstractModule {
 		public IService to(String targetService){
 			return connectionManager.connect(sourceService, sourceClient, targetService);
 		}
+		
+		/** @throws UnsupportedOperationException if the connection manager isn't asynchronous */
+		public IAsyncService toAsync(String targetService){
+			if (!(connectionManager instanceof IAsyncConnectionManager))
+				throw new UnsupportedOperationException(connectionManager.getClass().getSimpleName() + " isn't asynchronous");
+			return ((IAsyncConnectionManager) connectionManager).connectAsync(sourceService, sourceClient, targetService);
+		}
 	}
 }
@@ -18,14 +18,36 @@ package graphpack;
 import graphpack.local.Client;
 import graphpack.local.IClientFactory;
 import graphpack.local.INodeFactory;
+import graphpack.local.IncomingEdgeSender;
 import graphpack.local.Node;
 import graphpack.local.Service;
+import graphpack.local.persistence.CachingEdgeStore;
+import graphpack.local.persistence.CachingNodeStore;
+import graphpack.local.persistence.ClockCache;
+import graphpack.local.persistence.EdgeListCache;
 import graphpack.local.persistence.IClientStore;
 import graphpack.local.persistence.IEdgeStore;
+import graphpack.local.persistence.FileWriteAheadLog;
+import graphpack.local.persistence.ICheckpointable;
 import graphpack.local.persistence.INodeStore;
+import graphpack.local.persistence.IWriteAheadLog;
+import graphpack.local.persistence.MappedEdgeStore;
+import graphpack.local.persistence.NoWriteAheadLog;
+import graphpack.local.persistence.NodeCache;
+import graphpack.matching.IResultConsumer;
 import graphpack.parsing.java.IParser;
+import graphpack.remote.IAsyncConnectionManager;
 import graphpack.remote.IConnectionManager;
+import graphpack.remote.PooledConnectionManager;
+import graphpack.remote.RemoteNodeCache;
 import graphpack.taskprocessing.ITaskManager;
+import graphpack.traversal.DepthFirstTraversalEngine;
+import graphpack.traversal.ITraversalEngine;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.Collection;
+import java.util.List;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
@@ -43,10 +65,17 @@ public class GraphPackService extends AbstractModule implements IService {
 	Class<? extends IEdgeStore> edgeStoreClass;
 	Class<? extends IParser> parserClass;
 	Class<? extends ITaskManager> taskManager;
+	Class<? extends ITraversalEngine> traversalEngineClass = DepthFirstTraversalEngine.class;
+	Class<? extends IWriteAheadLog> writeAheadLogClass = NoWriteAheadLog.class;
+	long edgeCacheCapacity, nodeCacheCapacity;//0 - no cache
+	long remoteNodeCacheCapacity = RemoteNodeCache.DEFAULT_CAPACITY;
+	int connectionPoolSize = PooledConnectionManager.DEFAULT_POOL_SIZE;//0 - connections aren't pooled
 	Extensions extensions;
 	
 	IService local;
+	IncomingEdgeSender incomingEdgeSender;
 	IConnectionManager connectionManager;
+	IWriteAheadLog writeAheadLog;
 	
 	Injector injector;
 	
@@ -68,11 +97,85 @@ public class GraphPackService extends AbstractModule implements IService {
 		this.extensions = extensions;
 	}
 	
+	/** selects the traversal engine (depth first by default), must be called before {@link #init()} */
+	public void setTraversalEngineClass(Class<? extends ITraversalEngine> traversalEngineClass) {
+		this.traversalEngineClass = traversalEngineClass;
+	}
+	
+	/**
+	 * selects the write-ahead log (none by default), must be called before {@link #init()}
+	 * @see FileWriteAheadLog
+	 */
+	public void setWriteAheadLogClass(Class<? extends IWriteAheadLog> writeAheadLogClass) {
+		this.writeAheadLogClass = writeAheadLogClass;
+	}
+	
+	/**
+	 * caches the outgoing edges of up to {@code capacity} edges (by default nothing is cached), must be called before {@link #init()}
+	 * @see CachingEdgeStore
+	 */
+	public void setEdgeCacheCapacity(long capacity) {
+		this.edgeCacheCapacity = capacity;
+	}
+	
+	/**
+	 * caches up to {@code capacity} nodes (by default nothing is cached), must be called before {@link #init()}
+	 * @see CachingNodeStore
+	 */
+	public void setNodeCacheCapacity(long capacity) {
+		this.nodeCacheCapacity = capacity;
+	}
+	
+	/**
+	 * keeps up to {@code size} connections to every remote service (0 connects on every lookup),
+	 * must be called before {@link #init()}
+	 * @see PooledConnectionManager
+	 */
+	public void setConnectionPoolSize(int size) {
+		this.connectionPoolSize = size;
+	}
+	
+	/**
+	 * caches up to {@code capacity} remote node proxies (0 resolves remote nodes on every hop), must be called before {@link #init()}
+	 * @see RemoteNodeCache
+	 */
+	public void setRemoteNodeCacheCapacity(long capacity) {
+		this.remoteNodeCacheCapacity = capacity;
+	}
+	
+	/** @return the counters of the remote node cache */
+	public ClockCache.Metrics getRemoteNodeCacheMetrics() {
+		return injector.getInstance(RemoteNodeCache.class).metrics();
+	}
+	
+	/** @return the counters of the edge cache or {@code null} if there is none */
+	public ClockCache.Metrics getEdgeCacheMetrics() {
+		return (edgeCacheCapacity == 0) ? null : injector.getInstance(EdgeListCache.class).metrics();
+	}
+	
+	/** @return the counters of the node cache or {@code null} if there is none */
+	public ClockCache.Metrics getNodeCacheMetrics() {
+		return (nodeCacheCapacity == 0) ? null : injector.getInstance(NodeCache.class).metrics();
+	}
+	
 	protected void init(){
 		injector = Guice.createInjector(this);
 		
 		local = injector.getInstance(IService.class);
 		connectionManager = injector.getInstance(IConnectionManager.class);
+		writeAheadLog = injector.getInstance(IWriteAheadLog.class);
+		incomingEdgeSender = injector.getInstance(IncomingEdgeSender.class);
+		writeAheadLog.recover(local);
+	}
+	
+	/**
+	 * makes the stores durable and truncates the write-ahead log, once the incoming edges of remote targets were
+	 * sent (if they can't be sent the log is kept). The log is only forced unless all the stores are durable
+	 * (the mapped stores), as it is the only copy of the graph otherwise
+	 */
+	public void checkpoint(){
+		incomingEdgeSender.flush();
+		writeAheadLog.checkpoint();
 	}
 	
 	@Override 
@@ -80,15 +183,37 @@ public class GraphPackService extends AbstractModule implements IService {
 		bind(String.class).annotatedWith(Names.named("serviceName")).toInstance(serviceName);
 		bind(IService.class).to(Service.class).in(Singleton.class);
 		bind(Service.class).in(Singleton.class);
-		bind(IConnectionManager.class).to(connectionManagerClass).in(Singleton.class);
+		if (connectionPoolSize == 0 || IAsyncConnectionManager.class.isAssignableFrom(connectionManagerClass)) {//async managers multiplex a single connection
+			bind(IConnectionManager.class).to(connectionManagerClass).in(Singleton.class);
+		} else {
+			bind(Integer.class).annotatedWith(Names.named("connectionPoolSize")).toInstance(connectionPoolSize);
+			bind(IConnectionManager.class).annotatedWith(Names.named(PooledConnectionManager.UNPOOLED)).to(connectionManagerClass).in(Singleton.class);
+			bind(IConnectionManager.class).to(PooledConnectionManager.class).in(Singleton.class);
+		}
+		bind(Long.class).annotatedWith(Names.named("remoteNodeCacheCapacity")).toInstance(remoteNodeCacheCapacity);
 		bind(INodeLocator.class).to(CommonNodeLocator.class).in(Singleton.class);
 		bind(IParser.class).to(parserClass).in(Singleton.class);
 		bind(ITaskManager.class).to(taskManager).in(Singleton.class);
+		bind(ITraversalEngine.class).to(traversalEngineClass).in(Singleton.class);
+		bind(IWriteAheadLog.class).to(writeAheadLogClass).in(Singleton.class);
+		bind(Boolean.class).annotatedWith(Names.named(FileWriteAheadLog.DURABLE_STORES)).toInstance(durableStores());
 		bind(Extensions.class).toProvider(Providers.of(extensions));
 		
 		bind(IClientStore.class).to(clientStoreClass);
-		bind(INodeStore.class).to(nodeStoreClass);
-		bind(IEdgeStore.class).to(edgeStoreClass);
+		if (nodeCacheCapacity == 0) {
+			bind(INodeStore.class).to(nodeStoreClass);
+		} else {
+			bind(Long.class).annotatedWith(Names.named("nodeCacheCapacity")).toInstance(nodeCacheCapacity);
+			bind(INodeStore.class).annotatedWith(Names.named(CachingNodeStore.UNCACHED)).to(nodeStoreClass);
+			bind(INodeStore.class).to(CachingNodeStore.class);
+		}
+		if (edgeCacheCapacity == 0) {
+			bind(IEdgeStore.class).to(edgeStoreClass);
+		} else {
+			bind(Long.class).annotatedWith(Names.named("edgeCacheCapacity")).toInstance(edgeCacheCapacity);
+			bind(IEdgeStore.class).annotatedWith(Names.named(CachingEdgeStore.UNCACHED)).to(edgeStoreClass);
+			bind(IEdgeStore.class).to(CachingEdgeStore.class);
+		}
 		
 		install(new FactoryModuleBuilder()
 			.implement(INode.class,Node.class)
@@ -98,12 +223,21 @@ public class GraphPackService extends AbstractModule implements IService {
 				.build(IClientFactory.class));
 	}
 	
+	/** @return true IFF every store is checkpointed (the mapped edge store is, through its mapped adjacency) */
+	boolean durableStores() {
+		return ICheckpointable.class.isAssignableFrom(clientStoreClass)
+				&& ICheckpointable.class.isAssignableFrom(nodeStoreClass)
+				&& MappedEdgeStore.class.isAssignableFrom(edgeStoreClass);
+	}
+	
 	public void start(){
 		connectionManager.export(serviceName,local);
 	}
 	
 	public void shutdown(){
+		incomingEdgeSender.close();
 		connectionManager.unexport();
+		writeAheadLog.close();
 	}
 
 	@Override
@@ -120,4 +254,24 @@ public class GraphPackService extends AbstractModule implements IService {
 	public IClient client(String clientName) {
 		return local.client(clientName);
 	}
+
+	@Override
+	public Collection<String> clientNames() {
+		return local.clientNames();
+	}
+
+	@Override
+	public void addEdges(List<EdgeTuple> edges) {
+		local.addEdges(edges);
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		local.addIncomingEdges(edges);
+	}
+
+	@Override
+	public boolean traverse(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+		return local.traverse(batch, options, consumer);
+	}
 }
@@ -15,6 +15,9 @@
  ******************************************************************************/
 package graphpack;
 
+import java.util.Collection;
+import java.util.List;
+
 //import graphpack.remote.IRemotableClient;
 
 public interface IClient /*extends IScope,IRemotableClient*/ {
@@ -22,5 +25,12 @@ public interface IClient /*extends IScope,IRemotableClient*/ {
 	IService connect(String targetService);
 	void createNode(String nodeName);
 	INode node(String nodeName);	
+	/** @return a live view of the names of the nodes of this client */
+	Collection<String> nodeNames();
+	/**
+	 * adds a batch of edges whose sources are nodes of this client, grouped by source node
+	 * (edges of the same source keep their relative order), missing nodes of this client (sources or targets) are created
+	 */
+	void addEdges(List<EdgeTuple> edges);
 	
 }
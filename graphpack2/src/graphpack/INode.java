@@ -17,9 +17,11 @@ package graphpack;
 
 
 import graphpack.Edge.Payload;
+import graphpack.matching.IResultConsumer;
 import graphpack.matching.Matcher;
 import graphpack.matching.ResultSet;
 import graphpack.taskprocessing.ITask;
+import graphpack.traversal.TraversalOptions;
 
 //import java.io.Serializable;
 import java.util.List;
@@ -27,9 +29,24 @@ import java.util.List;
 public interface INode/* extends Serializable */{
 	String test();
 	List<Edge> getOutgoingEdges();
+	/** @return the outgoing edges that may be selected by {@code selector} (a superset is allowed), in order */
+	List<Edge> getOutgoingEdges(EdgeSelector selector);
 	void addOutgoingEdge(NodeLocation target, Payload payload);
+	/** appends the edges in order, the source of every tuple must be this node */
+	void addOutgoingEdges(List<EdgeTuple> edges);
+	/** @return the edges whose target is this node, in the order they were added (see {@link Edge#incoming}) */
+	List<Edge> getIncomingEdges();
+	/** records edges added to other nodes whose target is this node, called by their sources */
+	void addIncomingEdges(List<SerializableEdge> edges);
 	ResultSet traverse(String path, Object... params);
 	ResultSet traverse(Matcher matcher);
+	/** streams results to {@code consumer} as they are matched, @return false IFF the consumer stopped the traversal */
+	boolean traverse(IResultConsumer consumer, String path, Object... params);
+	boolean traverse(Matcher matcher, IResultConsumer consumer);
+	/** traverses within the bounds of {@code options}, the results are {@link ResultSet#isTruncated() truncated} if a bound tripped */
+	ResultSet traverse(TraversalOptions options, String path, Object... params);
+	/** @return false IFF the consumer stopped the traversal or a bound of {@code options} tripped */
+	boolean traverse(Matcher matcher, TraversalOptions options, IResultConsumer consumer);
 	NodeLocation location();
 	void addTask(String taskName, Class<? extends ITask> task);
 	void callTask(String taskName, Object... params);
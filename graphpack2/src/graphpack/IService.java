@@ -15,8 +15,34 @@
  ******************************************************************************/
 package graphpack;
 
+import graphpack.matching.IResultConsumer;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.Collection;
+import java.util.List;
+
 public interface IService {
 	String test();
 	void createClient(String clientName);
 	IClient client(String clientName);	
+	/** @return a live view of the names of the clients of this service */
+	Collection<String> clientNames();
+	/**
+	 * adds a batch of edges whose sources are nodes of this service (see {@link IClient#addEdges(List)}),
+	 * missing clients and nodes of this service are created
+	 * @see graphpack.loading.EdgeLoader
+	 */
+	void addEdges(List<EdgeTuple> edges);
+	/**
+	 * records a batch of edges whose targets are nodes of this service in their targets' reverse adjacency
+	 * (see {@link INode#addIncomingEdges(List)}), missing clients and nodes of this service are created
+	 */
+	void addIncomingEdges(List<SerializableEdge> edges);
+	/**
+	 * continues every (node, matcher) pair of {@code batch} at this service as a single traversal within the bounds of
+	 * {@code options}, feeding {@code consumer} as results are matched (pairs at missing nodes match nothing)
+	 * @return true IFF the traversal completed
+	 */
+	boolean traverse(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer);
 }
@@ -28,6 +28,7 @@ public final class NodeLocation implements Serializable {
 	final String serviceName; //should be unique across the network
 	final String clientName; //should unique for every service
 	final String nodeName; //should unique for every client of every service	
+	private transient int hash;//cached, locations are hashed on every visit of a traversal
 	public NodeLocation(String serviceName, String clientName, String nodeName) {		
 		this.serviceName = serviceName;
 		this.clientName = clientName;
@@ -86,8 +87,12 @@ public final class NodeLocation implements Serializable {
 
 	@Override
 	public int hashCode() {
-		System.out.println("at least some hash "+this);
-		
+		int $ = hash;
+		if ($ == 0) hash = $ = computeHashCode();
+		return $;
+	}
+
+	private int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result
@@ -101,8 +106,6 @@ public final class NodeLocation implements Serializable {
 
 	@Override
 	public boolean equals(Object obj) {
-		System.out.println("checking "+this+" vs "+obj);
-		
 		if (this == obj)
 			return true;
 		if (obj == null)
@@ -110,6 +113,8 @@ public final class NodeLocation implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		NodeLocation other = (NodeLocation) obj;
+		if (hashCode() != other.hashCode())//cheap, spares comparing the names of most unequal locations
+			return false;
 		if (clientName == null) {
 			if (other.clientName != null)
 				return false;
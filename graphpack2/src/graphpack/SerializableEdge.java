@@ -15,9 +15,11 @@
  ******************************************************************************/
 package graphpack;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 import graphpack.Edge.Payload;
+import graphpack.codec.PayloadCodecs;
 
 public class SerializableEdge implements Serializable {
 	private static final long serialVersionUID = -876475734147966205L;
@@ -74,4 +76,30 @@ public class SerializableEdge implements Serializable {
 				"-"+num+"->" +
 				((target == null)?"null":target);
 	}
+	
+	//payloads sent to remote services are written by the payload codecs
+	Object writeReplace() throws ObjectStreamException {
+		return new Serialized(this);
+	}
+	
+	/*** static ***/
+	
+	private static final class Serialized implements Serializable {
+		private static final long serialVersionUID = 6390787209713325108L;
+		
+		final NodeLocation source, target;
+		final long num;
+		final byte[] payload;
+		
+		Serialized(SerializableEdge e) {
+			this.source = e.source;
+			this.target = e.target;
+			this.num = e.num;
+			this.payload = PayloadCodecs.toBytes(e.payload);
+		}
+		
+		Object readResolve() throws ObjectStreamException {
+			return new SerializableEdge(source, target, num, PayloadCodecs.fromBytes(payload));
+		}
+	}
 }
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.codec;
+
+import graphpack.Edge.Payload;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the payloads of a single class, codecs are registered with {@link PayloadCodecs} under an id that is
+ * written before every payload (so every service reading the payloads must register the same codecs).
+ * @author amitport
+ * @see PayloadSchema
+ */
+public interface IPayloadCodec<P extends Payload> {
+	/** @return the (exact) class of the payloads of this codec */
+	Class<P> type();
+	void write(P payload, DataOutput out) throws IOException;
+	P read(DataInput in) throws IOException;
+}
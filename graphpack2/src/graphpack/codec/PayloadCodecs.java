@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.codec;
+
+import graphpack.Edge.Payload;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+/**
+ * The registry of payload codecs, used wherever payloads are written: edge stores, the write-ahead log,
+ * bulk load files and edges sent to remote services.
+ * <p>
+ * An encoded payload is a varint codec id followed by the codec's bytes. The empty payload is just id {@value #EMPTY_ID},
+ * payloads of classes without a codec are java serialized (id {@value #SERIALIZED_ID}).
+ * Registration is static (java deserialization of remote edges can't be injected), so codecs should be registered
+ * before a service starts, with the same ids on every service.
+ * @author amitport
+ */
+public final class PayloadCodecs {
+	public final static int EMPTY_ID = 0, SERIALIZED_ID = 1;
+	/** ids below this one are reserved */
+	public final static int FIRST_ID = 16;
+	/** larger ids could be mistaken for the header of a java serialized payload, see {@link #fromBytes(byte[])} */
+	public final static int MAX_ID = (1 << 13) - 1;
+
+	private final static ConcurrentMap<Integer,IPayloadCodec<?>> byId = new ConcurrentHashMap<Integer,IPayloadCodec<?>>();
+	private final static ConcurrentMap<Class<?>,Integer> ids = new ConcurrentHashMap<Class<?>,Integer>();
+
+	private PayloadCodecs() {}
+
+	/** registers {@code codec} under {@code id}, registering the same codec class again under the same id does nothing */
+	public static synchronized void register(int id, IPayloadCodec<?> codec) {
+		if (id < FIRST_ID || id > MAX_ID) throw new IllegalArgumentException("codec id out of range " + id);
+		IPayloadCodec<?> other = byId.get(id);
+		if (other != null) {
+			if (other.getClass() == codec.getClass() && other.type() == codec.type()) return;
+			throw new IllegalArgumentException("codec id " + id + " is taken by " + other);
+		}
+		Integer otherId = ids.get(codec.type());
+		if (otherId != null) throw new IllegalArgumentException(codec.type().getName() + " already has codec " + otherId);
+		byId.put(id, codec);
+		ids.put(codec.type(), id);
+	}
+
+	/** @return the schema of {@code payload}'s class or {@code null} if it isn't encoded by a schema */
+	@SuppressWarnings("unchecked")
+	public static PayloadSchema<Payload> schema(Object payload) {
+		Integer id = ids.get(payload.getClass());
+		if (id == null) return null;
+		IPayloadCodec<?> $ = byId.get(id);
+		return ($ instanceof PayloadSchema) ? (PayloadSchema<Payload>) $ : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void write(DataOutput out, Payload payload) throws IOException {
+		if (payload == null || payload == Payload.EMPTY) {
+			Varints.writeUnsigned(out, EMPTY_ID);
+			return;
+		}
+		Integer id = ids.get(payload.getClass());
+		if (id == null) {
+			Varints.writeUnsigned(out, SERIALIZED_ID);
+			Varints.writeBytes(out, PayloadSchema.serialize(payload));
+			return;
+		}
+		Varints.writeUnsigned(out, id);
+		((IPayloadCodec<Payload>) byId.get(id)).write(payload, out);
+	}
+
+	public static Payload read(DataInput in) throws IOException {
+		int id = Varints.readUnsignedInt(in);
+		if (id == EMPTY_ID) return Payload.EMPTY;
+		if (id == SERIALIZED_ID) return (Payload) PayloadSchema.deserialize(Varints.readBytes(in));
+		IPayloadCodec<?> codec = byId.get(id);
+		if (codec == null) throw new IOException("no payload codec " + id);
+		return codec.read(in);
+	}
+
+	public static byte[] toBytes(Payload payload) {
+		ByteArrayDataOutput $ = ByteStreams.newDataOutput();
+		try {
+			write($, payload);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return $.toByteArray();
+	}
+
+	/** @return the payload encoded in {@code bytes}, which may also be a (plain) java serialized payload of an older store */
+	public static Payload fromBytes(byte[] bytes) {
+		try {
+			if (bytes.length > 1 && (short) ((bytes[0] << 8) | (bytes[1] & 0xFF)) == ObjectStreamConstants.STREAM_MAGIC) {
+				return (Payload) PayloadSchema.deserialize(bytes);
+			}
+			return read(ByteStreams.newDataInput(bytes));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
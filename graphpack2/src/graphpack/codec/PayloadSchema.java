@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.codec;
+
+import graphpack.Edge.Payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A codec for payloads described by a table of named fields.
+ * <p>
+ * The schema reads and creates payloads through {@link #get(Payload, int)} and {@link #create(Object[])} (no
+ * reflection), predicates read fields through it as well (see {@link graphpack.matching.Value.Property}).
+ * A payload is written as its number of fields followed by each value, tagged with its kind: booleans and nulls
+ * take a byte, integers are zig-zag varints, strings are length prefixed UTF-8 and any other value is java serialized.
+ * Since values are tagged, fields may be appended to a schema: payloads written with fewer fields read the new ones
+ * as {@code null} and extra fields are skipped.
+ * @author amitport
+ */
+public abstract class PayloadSchema<P extends Payload> implements IPayloadCodec<P> {
+	final static byte NULL = 0, FALSE = 1, TRUE = 2, INT = 3, LONG = 4, DOUBLE = 5, FLOAT = 6, STRING = 7, OBJECT = 8;
+
+	final Class<P> type;
+	final String[] fields;
+
+	protected PayloadSchema(Class<P> type, String... fields) {
+		this.type = type;
+		this.fields = fields.clone();
+	}
+
+	/** @return the value of field number {@code field} of {@code payload} */
+	public abstract Object get(P payload, int field);
+
+	/** @return a payload with {@code values} (by field number, missing fields are {@code null}) */
+	protected abstract P create(Object[] values);
+
+	@Override
+	public Class<P> type() {return type;}
+
+	public int size() {return fields.length;}
+
+	public String field(int field) {return fields[field];}
+
+	/** @return the number of {@code name} or -1 if it isn't a field of this schema */
+	public int field(String name) {
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] == name || fields[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public void write(P payload, DataOutput out) throws IOException {
+		Varints.writeUnsigned(out, fields.length);
+		for (int i = 0; i < fields.length; i++) writeValue(out, get(payload, i));
+	}
+
+	@Override
+	public P read(DataInput in) throws IOException {
+		Object[] values = new Object[fields.length];
+		int written = Varints.readUnsignedInt(in);
+		for (int i = 0; i < written; i++) {
+			Object value = readValue(in);
+			if (i < values.length) values[i] = value;
+		}
+		return create(values);
+	}
+
+	@Override
+	public String toString() {
+		return type.getSimpleName() + Arrays.toString(fields);
+	}
+
+	/*** static ***/
+
+	public static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte(((Boolean) value) ? TRUE : FALSE);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			Varints.writeSigned(out, (Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			Varints.writeSigned(out, (Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			Varints.writeString(out, (String) value);
+		} else if (value instanceof Serializable) {
+			out.writeByte(OBJECT);
+			Varints.writeBytes(out, serialize(value));
+		} else {
+			throw new IOException("can't encode " + value.getClass().getName());
+		}
+	}
+
+	public static Object readValue(DataInput in) throws IOException {
+		byte kind = in.readByte();
+		switch (kind) {
+		case NULL: return null;
+		case FALSE: return Boolean.FALSE;
+		case TRUE: return Boolean.TRUE;
+		case INT: return (int) Varints.readSigned(in);
+		case LONG: return Varints.readSigned(in);
+		case DOUBLE: return in.readDouble();
+		case FLOAT: return in.readFloat();
+		case STRING: return Varints.readString(in);
+		case OBJECT: return deserialize(Varints.readBytes(in));
+		default: throw new IOException("unknown value kind " + kind);
+		}
+	}
+
+	static byte[] serialize(Object value) throws IOException {
+		ByteArrayOutputStream $ = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream($);
+		out.writeObject(value);
+		out.close();
+		return $.toByteArray();
+	}
+
+	static Object deserialize(byte[] bytes) throws IOException {
+		try {
+			return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.toString());
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Variable length integers (7 bits per byte, least significant group first), zig-zag encoding of signed
+ * values and length prefixed UTF-8 strings
+ * @author amitport
+ */
+public final class Varints {
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private Varints() {}
+
+	public static void writeUnsigned(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	public static long readUnsigned(DataInput in) throws IOException {
+		long $ = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			$ |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return $;
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/** small negative values are written as small as small positive ones */
+	public static void writeSigned(DataOutput out, long value) throws IOException {
+		writeUnsigned(out, (value << 1) ^ (value >> 63));
+	}
+
+	public static long readSigned(DataInput in) throws IOException {
+		long zigzag = readUnsigned(in);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	public static int readUnsignedInt(DataInput in) throws IOException {
+		long $ = readUnsigned(in);
+		if ($ > Integer.MAX_VALUE) throw new IOException("varint out of range " + $);
+		return (int) $;
+	}
+
+	public static void writeString(DataOutput out, String s) throws IOException {
+		writeBytes(out, s.getBytes(UTF8));
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		return new String(readBytes(in), UTF8);
+	}
+
+	public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+		writeUnsigned(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public static byte[] readBytes(DataInput in) throws IOException {
+		byte[] $ = new byte[readUnsignedInt(in)];
+		in.readFully($);
+		return $;
+	}
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.EdgeTuple;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Reads edges written by {@link BinaryEdgeWriter}, which is much cheaper to parse than text
+ * and keeps arbitrary payloads
+ * @author amitport
+ */
+public class BinaryEdgeReader extends AbstractIterator<EdgeTuple> implements Closeable {
+	final DataInputStream in;
+
+	public BinaryEdgeReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+		int magic = this.in.readInt();
+		if (magic != BinaryEdgeWriter.MAGIC) throw new IOException("not an edge file (magic " + Integer.toHexString(magic) + ")");
+	}
+
+	@Override
+	protected EdgeTuple computeNext() {
+		try {
+			byte b = in.readByte();
+			if (b == BinaryEdgeWriter.END) return endOfData();
+			if (b != BinaryEdgeWriter.EDGE) throw new IOException("corrupt edge file (record " + b + ")");
+			return EdgeTuple.read(in);
+		} catch (EOFException e) {
+			throw new RuntimeException("truncated edge file", e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
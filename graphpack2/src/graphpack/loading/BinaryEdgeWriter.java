@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.EdgeTuple;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes edges in the binary format read by {@link BinaryEdgeReader}:
+ * a magic number, then every edge (see {@link EdgeTuple#write(java.io.DataOutput)}) preceded by a 1 byte,
+ * and a 0 byte at the end (so truncated files are detected)
+ * @author amitport
+ */
+public class BinaryEdgeWriter implements Closeable {
+	final static int MAGIC = 0x47504532;//GPE2, payloads are encoded by the payload codecs since version 2
+	final static byte EDGE = 1, END = 0;
+
+	final DataOutputStream out;
+	long count;
+
+	public BinaryEdgeWriter(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.out.writeInt(MAGIC);
+	}
+
+	public void write(EdgeTuple edge) throws IOException {
+		out.writeByte(EDGE);
+		edge.write(out);
+		count++;
+	}
+
+	/** @return the number of edges written */
+	public long writeAll(Iterator<EdgeTuple> edges) throws IOException {
+		long $ = 0;
+		while (edges.hasNext()) {
+			write(edges.next());
+			$++;
+		}
+		return $;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.writeByte(END);
+		out.close();
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.Edge.Payload;
+import graphpack.EdgeTuple;
+import graphpack.NodeLocation;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Reads edges from delimited text, one edge per line: {@code source,target[,payload]}.
+ * Empty lines and lines starting with {@code #} are skipped, fields are trimmed.
+ * <p>
+ * How a field becomes a {@link NodeLocation} (or a {@link Payload}) is up to the given functions,
+ * {@link #inClient(String, String)} reads node names of a single client.
+ * Lines with a payload field are rejected when no payload function is given.
+ * @author amitport
+ */
+public class CsvEdgeReader extends AbstractIterator<EdgeTuple> implements Closeable {
+	final BufferedReader in;
+	final char separator;
+	final Function<String,NodeLocation> locations;
+	final Function<String,Payload> payloads;//may be null
+	int line;
+
+	/** reads {@code source,target} node names of a single client */
+	public CsvEdgeReader(Reader in, String serviceName, String clientName) {
+		this(in, ',', inClient(serviceName, clientName), null);
+	}
+
+	public CsvEdgeReader(Reader in, char separator, Function<String,NodeLocation> locations, Function<String,Payload> payloads) {
+		this.in = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+		this.separator = separator;
+		this.locations = locations;
+		this.payloads = payloads;
+	}
+
+	@Override
+	protected EdgeTuple computeNext() {
+		String s;
+		try {
+			do {
+				s = in.readLine();
+				line++;
+				if (s == null) return endOfData();
+				s = s.trim();
+			} while (s.length() == 0 || s.charAt(0) == '#');
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		int first = s.indexOf(separator);
+		if (first < 0) throw new IllegalArgumentException("line " + line + ": expected source" + separator + "target");
+		int second = s.indexOf(separator, first + 1);
+		NodeLocation source = locations.apply(s.substring(0, first).trim());
+		NodeLocation target = locations.apply(((second < 0) ? s.substring(first + 1) : s.substring(first + 1, second)).trim());
+		Payload payload = Payload.EMPTY;
+		if (second >= 0) {
+			if (payloads == null) throw new IllegalArgumentException("line " + line + ": unexpected payload");
+			payload = payloads.apply(s.substring(second + 1).trim());
+		}
+		return new EdgeTuple(source, target, payload);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/*** static ***/
+
+	/** @return a function that maps node names to locations in {@code serviceName.clientName} */
+	public static Function<String,NodeLocation> inClient(final String serviceName, final String clientName) {
+		return new Function<String,NodeLocation>() {
+			@Override
+			public NodeLocation apply(String nodeName) {
+				return new NodeLocation(serviceName, clientName, nodeName);
+			}
+		};
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.EdgeTuple;
+import graphpack.IService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams edges into a (possibly remote) service in large batches, one {@link IService#addEdges(List)} call
+ * (a single round trip) per batch. The service sorts every batch by source node and hands each node its edges at once.
+ * <p>
+ * Batches are independent: a failure leaves the batches that were already sent loaded.
+ * @author amitport
+ */
+public class EdgeLoader {
+	public final static int DEFAULT_BATCH_SIZE = 1 << 16;
+
+	final IService service;
+	final int batchSize;
+
+	public EdgeLoader(IService service) {
+		this(service, DEFAULT_BATCH_SIZE);
+	}
+
+	public EdgeLoader(IService service, int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("batch size " + batchSize);
+		this.service = service;
+		this.batchSize = batchSize;
+	}
+
+	/** @return the number of edges loaded */
+	public long load(Iterator<EdgeTuple> edges) {
+		long $ = 0;
+		List<EdgeTuple> batch = new ArrayList<EdgeTuple>(batchSize);
+		while (edges.hasNext()) {
+			batch.add(edges.next());
+			if (batch.size() == batchSize) {
+				service.addEdges(batch);
+				$ += batch.size();
+				batch = new ArrayList<EdgeTuple>(batchSize);//the service may hold on to the sent batch
+			}
+		}
+		if (!batch.isEmpty()) {
+			service.addEdges(batch);
+			$ += batch.size();
+		}
+		return $;
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.Varints;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Loads a snapshot written by {@link SnapshotWriter} into a service, possibly with another name: edges between
+ * nodes of the snapshot's service are redirected to the loading service.
+ * <p>
+ * Clients and nodes are created first (existing ones are reused), then the edges of every node are appended
+ * with a single {@link INode#addOutgoingEdges(List)}. Only the dictionaries, degrees and targets are kept in memory
+ * while loading, payloads are decoded as their edges are added.
+ * @author amitport
+ */
+public class SnapshotReader {
+	final IService service;
+
+	public SnapshotReader(IService service) {
+		this.service = service;
+	}
+
+	/** loads the snapshot in {@code in} (which is left open) @return the number of edges added */
+	public long read(InputStream in) throws IOException {
+		int magic = new DataInputStream(in).readInt();
+		if (magic != SnapshotWriter.MAGIC) throw new IOException("not a snapshot (magic " + Integer.toHexString(magic) + ")");
+		Inflater inflater = new Inflater();
+		try {
+			return read(new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, inflater, 1 << 16), 1 << 16)));
+		} catch (EOFException e) {
+			throw new IOException("truncated snapshot");
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private long read(DataInputStream in) throws IOException {
+		String snapshotService = Varints.readString(in);
+		IClient[] clients = new IClient[Varints.readUnsignedInt(in)];
+		for (int c = 0; c < clients.length; c++) clients[c] = clientOrCreate(Varints.readString(in));
+
+		INode[] nodes = new INode[Varints.readUnsignedInt(in)];
+		for (int i = 0; i < nodes.length; i++) {
+			IClient client = clients[Varints.readUnsignedInt(in)];
+			nodes[i] = nodeOrCreate(client, Varints.readString(in));
+		}
+
+		int[] degrees = new int[nodes.length];
+		long edges = 0;
+		for (int i = 0; i < degrees.length; i++) edges += degrees[i] = Varints.readUnsignedInt(in);
+		if (edges > Integer.MAX_VALUE) throw new IOException("snapshot too large " + edges);
+
+		int[] targets = new int[(int) edges];
+		for (int e = 0; e < targets.length; e++) targets[e] = Varints.readUnsignedInt(in);
+
+		NodeLocation[] locations = new NodeLocation[nodes.length + Varints.readUnsignedInt(in)];
+		for (int i = 0; i < nodes.length; i++) locations[i] = nodes[i].location();
+		for (int i = nodes.length; i < locations.length; i++) {
+			String serviceName = Varints.readString(in), clientName = Varints.readString(in), nodeName = Varints.readString(in);
+			if (serviceName.equals(snapshotService)) {
+				//a node created while the snapshot was written
+				locations[i] = nodeOrCreate(clientOrCreate(clientName), nodeName).location();
+			} else {
+				locations[i] = new NodeLocation(serviceName, clientName, nodeName);
+			}
+		}
+
+		int e = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			if (degrees[i] == 0) continue;
+			List<EdgeTuple> outgoing = new ArrayList<EdgeTuple>(degrees[i]);
+			NodeLocation source = locations[i];
+			for (int j = 0; j < degrees[i]; j++, e++) {
+				int target = targets[e];
+				if (target >= locations.length) throw new IOException("unknown target " + target);
+				outgoing.add(new EdgeTuple(source, locations[target], PayloadCodecs.read(in)));
+			}
+			nodes[i].addOutgoingEdges(outgoing);
+		}
+		if (in.readByte() != SnapshotWriter.END || in.read() != -1) throw new IOException("corrupt snapshot");
+		return edges;
+	}
+
+	private IClient clientOrCreate(String clientName) {
+		IClient $ = service.client(clientName);
+		if ($ == null) {
+			service.createClient(clientName);
+			$ = service.client(clientName);
+		}
+		return $;
+	}
+
+	private static INode nodeOrCreate(IClient client, String nodeName) {
+		INode $ = client.node(nodeName);
+		if ($ == null) {
+			client.createNode(nodeName);
+			$ = client.node(nodeName);
+		}
+		return $;
+	}
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.loading;
+
+import graphpack.Edge;
+import graphpack.IClient;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.Varints;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the clients, nodes and edges of a service as a snapshot, read back by {@link SnapshotReader}.
+ * <p>
+ * A snapshot is a magic number followed by a deflated stream of columns:
+ * <ol>
+ * <li>the service name and the client dictionary (names)</li>
+ * <li>the node dictionary - for every node, its client (index) and name, nodes are numbered in this order</li>
+ * <li>the out-degree of every node (CSR offsets)</li>
+ * <li>the target of every edge, grouped by source in node order - a node number, or a number past the last node
+ * for targets found in the remote dictionary</li>
+ * <li>the remote dictionary - locations of targets that aren't in the node dictionary (other services)</li>
+ * <li>the payload of every edge (see {@link PayloadCodecs}), and an end mark</li>
+ * </ol>
+ * All numbers are varints. The service may be modified while it is written: every node contributes the edges it
+ * had when it was first read, nodes created later are missing (edges to them are kept, as remote edges).
+ * @author amitport
+ */
+public class SnapshotWriter {
+	final static int MAGIC = 0x47505331;//GPS1
+	final static byte END = 0x7F;
+
+	final IService service;
+
+	public SnapshotWriter(IService service) {
+		this.service = service;
+	}
+
+	/** writes a snapshot to {@code out} (which is left open) @return the number of edges written */
+	public long write(OutputStream out) throws IOException {
+		new DataOutputStream(out).writeInt(MAGIC);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+			long $ = write(data);
+			data.flush();
+			deflated.finish();
+			return $;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private long write(DataOutputStream out) throws IOException {
+		List<String> clients = new ArrayList<String>(service.clientNames());
+		List<INode> nodes = new ArrayList<INode>();
+		List<Integer> nodeClients = new ArrayList<Integer>();
+		for (int c = 0; c < clients.size(); c++) {
+			IClient client = service.client(clients.get(c));
+			for (String name : client.nodeNames()) {
+				INode node = client.node(name);
+				if (node == null) continue;
+				nodes.add(node);
+				nodeClients.add(c);
+			}
+		}
+		String serviceName = nodes.isEmpty() ? "" : nodes.get(0).location().getServiceName();
+		Varints.writeString(out, serviceName);
+		Varints.writeUnsigned(out, clients.size());
+		for (String client : clients) Varints.writeString(out, client);
+
+		Map<NodeLocation,Integer> ids = new HashMap<NodeLocation,Integer>();
+		Varints.writeUnsigned(out, nodes.size());
+		for (int i = 0; i < nodes.size(); i++) {
+			NodeLocation location = nodes.get(i).location();
+			ids.put(location, i);
+			Varints.writeUnsigned(out, nodeClients.get(i));
+			Varints.writeString(out, location.getNodeName());
+		}
+
+		int[] degrees = new int[nodes.size()];
+		long edges = 0;
+		for (int i = 0; i < degrees.length; i++) {
+			degrees[i] = nodes.get(i).getOutgoingEdges().size();
+			edges += degrees[i];
+			Varints.writeUnsigned(out, degrees[i]);
+		}
+
+		//edge lists only grow, so the first degree edges of a node are the same on every read
+		Map<NodeLocation,Integer> remote = new LinkedHashMap<NodeLocation,Integer>();
+		for (int i = 0; i < degrees.length; i++) {
+			List<Edge> outgoing = nodes.get(i).getOutgoingEdges();
+			for (int j = 0; j < degrees[i]; j++) {
+				NodeLocation target = outgoing.get(j).serializableEdge.target;
+				Integer id = ids.get(target);
+				if (id == null) {
+					id = remote.get(target);
+					if (id == null) remote.put(target, id = nodes.size() + remote.size());
+				}
+				Varints.writeUnsigned(out, id);
+			}
+		}
+
+		Varints.writeUnsigned(out, remote.size());
+		for (NodeLocation target : remote.keySet()) {
+			Varints.writeString(out, target.getServiceName());
+			Varints.writeString(out, target.getClientName());
+			Varints.writeString(out, target.getNodeName());
+		}
+
+		for (int i = 0; i < degrees.length; i++) {
+			List<Edge> outgoing = nodes.get(i).getOutgoingEdges();
+			for (int j = 0; j < degrees[i]; j++) {
+				PayloadCodecs.write(out, outgoing.get(j).serializableEdge.payload);
+			}
+		}
+		out.writeByte(END);
+		return edges;
+	}
+}
@@ -15,13 +15,25 @@
  ******************************************************************************/
 package graphpack.local;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 
+import graphpack.ClientLocation;
+import graphpack.EdgeTuple;
 import graphpack.IClient;
 import graphpack.INode;
 import graphpack.IService;
+import graphpack.NodeLocation;
 import graphpack.local.persistence.INodeStore;
+import graphpack.local.persistence.IWriteAheadLog;
+import graphpack.local.persistence.Mutation;
 import graphpack.remote.IConnectionManager;
 
 public class Client implements IClient {
@@ -31,13 +43,16 @@ public class Client implements IClient {
 	INodeStore nodeStore;
 	INodeFactory nodeFactory;
 	IConnectionManager connectionManager;
+	IWriteAheadLog writeAheadLog;
 	@Inject
-	public Client(@Assisted("serviceName") String serviceName, @Assisted("clientName") String clientName, INodeStore nodeStore, INodeFactory nodeFactory, IConnectionManager connectionManager) {
+	public Client(@Assisted("serviceName") String serviceName, @Assisted("clientName") String clientName, INodeStore nodeStore, INodeFactory nodeFactory, IConnectionManager connectionManager, IWriteAheadLog writeAheadLog) {
 		this.serviceName = serviceName;
 		this.clientName = clientName;
 		this.nodeStore = nodeStore;
 		this.nodeFactory = nodeFactory;
 		this.connectionManager = connectionManager;
+		this.writeAheadLog = writeAheadLog;
+		nodeStore.open(new ClientLocation(serviceName, clientName));
 	}
 	@Override
 	public String test() {
@@ -49,15 +64,60 @@ public class Client implements IClient {
 	}
 	@Override
 	public void createNode(String nodeName) {
-		if (nodeStore.contains(clientName)){
-			throw new RuntimeException("client already exists");
+		if (nodeStore.contains(nodeName)){
+			throw new RuntimeException("node already exists");
+		}
+		long lsn = writeAheadLog.log(new Mutation.CreateNode(clientName, nodeName));
+		try {
+			nodeStore.put(nodeName, nodeFactory.create(serviceName,clientName,nodeName));
+		} finally {
+			writeAheadLog.applied(lsn);
 		}
-		nodeStore.put(nodeName, nodeFactory.create(serviceName,clientName,nodeName));
 	}
 	@Override
 	public INode node(String nodeName) {
 		return nodeStore.get(nodeName);
 	}
+
+	@Override
+	public Collection<String> nodeNames() {
+		return nodeStore.names();
+	}
+
+	@Override
+	public void addEdges(List<EdgeTuple> edges) {
+		List<EdgeTuple> sorted = new ArrayList<EdgeTuple>(edges);
+		Collections.sort(sorted, EdgeTuple.BY_SOURCE);//stable, keeps the order of each source's edges
+		//targets are located as edges are added, so create every missing node of this client first
+		Set<String> checked = new HashSet<String>();
+		for (EdgeTuple e : sorted) {
+			NodeLocation target = e.getTarget();
+			if (serviceName.equals(target.getServiceName()) && clientName.equals(target.getClientName())
+					&& checked.add(target.getNodeName())) {
+				nodeOrCreate(target.getNodeName());
+			}
+		}
+		int from = 0;
+		while (from < sorted.size()) {
+			NodeLocation source = sorted.get(from).getSource();
+			if (!serviceName.equals(source.getServiceName()) || !clientName.equals(source.getClientName())) {
+				throw new IllegalArgumentException(sorted.get(from) + " is not an edge of " + this);
+			}
+			int to = from + 1;
+			while (to < sorted.size() && sorted.get(to).getSource().getNodeName().equals(source.getNodeName())) to++;
+			nodeOrCreate(source.getNodeName()).addOutgoingEdges(sorted.subList(from, to));
+			from = to;
+		}
+	}
+
+	private synchronized INode nodeOrCreate(String nodeName) {
+		INode $ = nodeStore.get(nodeName);
+		if ($ == null) {
+			createNode(nodeName);
+			$ = nodeStore.get(nodeName);
+		}
+		return $;
+	}
 	
 	@Override
 	public String toString() {
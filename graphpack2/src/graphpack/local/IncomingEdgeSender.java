@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local;
+
+import graphpack.SerializableEdge;
+import graphpack.remote.IConnectionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * Ships incoming edges to the services of their (remote) targets in batches, a batch per target service and
+ * source client, sent {@link #FLUSH_DELAY} ms after its first edge was queued or once it has {@link #BATCH_SIZE} edges.
+ * <p>
+ * A batch that fails is queued again and retried every {@link #RETRY_DELAY} ms, which is safe as targets ignore
+ * incoming edges they already have. {@link #flush()} sends everything that is queued, the service flushes before
+ * it checkpoints its write-ahead log.
+ * @author amitport
+ */
+@Singleton
+public class IncomingEdgeSender {
+	public final static int BATCH_SIZE = 1024;
+	/** in ms */
+	public final static long FLUSH_DELAY = 10, RETRY_DELAY = 1000;
+
+	final String serviceName;
+	final IConnectionManager connectionManager;
+	private final ScheduledExecutorService scheduler;
+	private Table<String,String,List<SerializableEdge>> pending = HashBasedTable.create();//target service, source client
+	private boolean scheduled;
+
+	@Inject
+	public IncomingEdgeSender(@Named("serviceName") String serviceName, IConnectionManager connectionManager) {
+		this.serviceName = serviceName;
+		this.connectionManager = connectionManager;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat(serviceName + "-incoming-%d").build());
+	}
+
+	/** queues {@code edges}, whose sources are nodes of this service and whose targets are nodes of other services */
+	public void send(List<SerializableEdge> edges) {
+		boolean full = false, closed;
+		synchronized (this) {
+			for (SerializableEdge e : edges) {
+				full |= queue(e.target.getServiceName(), e.source.getClientName(), e) >= BATCH_SIZE;
+			}
+			closed = scheduler.isShutdown();
+			if (closed) {
+				//sent below
+			} else if (full) {
+				scheduler.execute(flusher);
+			} else if (!scheduled) {
+				scheduled = true;
+				scheduler.schedule(flusher, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (closed) flush();
+	}
+
+	/** @return the number of edges queued for the batch {@code e} was added to */
+	private int queue(String targetService, String sourceClient, SerializableEdge e) {
+		List<SerializableEdge> batch = pending.get(targetService, sourceClient);
+		if (batch == null) pending.put(targetService, sourceClient, batch = new ArrayList<SerializableEdge>());
+		batch.add(e);
+		return batch.size();
+	}
+
+	/**
+	 * sends every queued batch, batches that fail stay queued
+	 * @throws RuntimeException the first failure (after the other batches were sent)
+	 */
+	public void flush() {
+		Table<String,String,List<SerializableEdge>> batches;
+		synchronized (this) {
+			if (pending.isEmpty()) return;
+			batches = pending;
+			pending = HashBasedTable.create();
+		}
+		RuntimeException failure = null;
+		for (Table.Cell<String,String,List<SerializableEdge>> batch : batches.cellSet()) {
+			try {
+				connectionManager.connect(serviceName, batch.getColumnKey(), batch.getRowKey()).addIncomingEdges(batch.getValue());
+			} catch (RuntimeException e) {
+				if (failure == null) failure = e;
+				synchronized (this) {
+					for (SerializableEdge edge : batch.getValue()) queue(batch.getRowKey(), batch.getColumnKey(), edge);
+				}
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	/** stops the timer and sends what it can of the queued batches (edges it can't send stay queued), later edges are sent right away */
+	public void close() {
+		scheduler.shutdown();
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			//their targets are unreachable
+		}
+	}
+
+	private final Runnable flusher = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (IncomingEdgeSender.this) {
+				scheduled = false;
+			}
+			try {
+				flush();
+			} catch (RuntimeException e) {
+				synchronized (IncomingEdgeSender.this) {
+					if (scheduled || scheduler.isShutdown()) return;
+					scheduled = true;
+					scheduler.schedule(this, RETRY_DELAY, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+	};
+}
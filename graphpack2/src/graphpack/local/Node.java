@@ -17,17 +17,30 @@ package graphpack.local;
 
 import graphpack.Edge;
 import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
 import graphpack.Extensions;
 import graphpack.INode;
+import graphpack.INodeLocator;
 import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
 import graphpack.local.persistence.IEdgeStore;
+import graphpack.local.persistence.IWriteAheadLog;
+import graphpack.local.persistence.Mutation;
+import graphpack.matching.IResultConsumer;
 import graphpack.matching.Matcher;
 import graphpack.matching.ResultSet;
 import graphpack.parsing.java.IParser;
 import graphpack.taskprocessing.ITask;
 import graphpack.taskprocessing.ITaskManager;
+import graphpack.traversal.ITraversalEngine;
+import graphpack.traversal.TraversalOptions;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
@@ -40,8 +53,16 @@ public class Node implements INode {
 	IParser parser;
 	NodeLocation location;
 	ITaskManager taskManager;
+	ITraversalEngine traversalEngine;
+	IWriteAheadLog writeAheadLog;
+	INodeLocator locator;
+	IncomingEdgeSender incomingEdgeSender;
+	/** records the incoming edges of remote targets synchronously, a call per target */
+	public Node(@Nullable Extensions extensions, String serviceName, String clientName, String nodeName, IEdgeStore edgeStore, IParser parser,ITaskManager taskManager, ITraversalEngine traversalEngine, IWriteAheadLog writeAheadLog, INodeLocator locator){
+		this(extensions, serviceName, clientName, nodeName, edgeStore, parser, taskManager, traversalEngine, writeAheadLog, locator, null);
+	}
 	@Inject
-	public Node(@Nullable Extensions extensions, @Assisted("serviceName") String serviceName, @Assisted("clientName") String clientName, @Assisted("nodeName") String nodeName, IEdgeStore edgeStore, IParser parser,ITaskManager taskManager){
+	public Node(@Nullable Extensions extensions, @Assisted("serviceName") String serviceName, @Assisted("clientName") String clientName, @Assisted("nodeName") String nodeName, IEdgeStore edgeStore, IParser parser,ITaskManager taskManager, ITraversalEngine traversalEngine, IWriteAheadLog writeAheadLog, INodeLocator locator, @Nullable IncomingEdgeSender incomingEdgeSender){
 		this.extensions = extensions;
 		this.serviceName = serviceName;
 		this.clientName = clientName;
@@ -50,6 +71,11 @@ public class Node implements INode {
 		this.parser = parser;
 		this.location = new NodeLocation(serviceName,clientName,nodeName);
 		this.taskManager = taskManager;
+		this.traversalEngine = traversalEngine;
+		this.writeAheadLog = writeAheadLog;
+		this.locator = locator;
+		this.incomingEdgeSender = incomingEdgeSender;
+		edgeStore.open(location);
 	}
 	
 	@Override
@@ -79,33 +105,162 @@ public class Node implements INode {
 		return edgeStore.getOutgoingEdges();
 	}
 
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		return selector.isAll() ? edgeStore.getOutgoingEdges() : edgeStore.getOutgoingEdges(selector);
+	}
+
+	/** @return the number of outgoing edges, without reading them */
+	public int outgoingCount() {
+		return edgeStore.outgoingCount();
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		return edgeStore.getIncomingEdges();
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		for (SerializableEdge e : edges) {
+			if (!location.equals(e.target)) throw new IllegalArgumentException(e + " is not an edge to " + location);
+		}
+		if (edges.isEmpty()) return;
+		List<SerializableEdge> remote = writeAheadLog.isEnabled() ? fromOtherServices(edges) : null;
+		if (remote == null || remote.isEmpty()) {
+			edgeStore.addIncomingEdges(edges);
+			return;
+		}
+		long lsn = writeAheadLog.log(new Mutation.AddIncomingEdges(location, remote));//so a restart doesn't lose edges of remote sources
+		try {
+			edgeStore.addIncomingEdges(edges);
+		} finally {
+			writeAheadLog.applied(lsn);
+		}
+	}
+
+	/** @return the edges whose sources are not of this service (the others are logged by their sources, see {@link Mutation.AddEdge}) */
+	private List<SerializableEdge> fromOtherServices(List<SerializableEdge> edges) {
+		List<SerializableEdge> $ = new ArrayList<SerializableEdge>(edges.size());
+		for (SerializableEdge e : edges) {
+			if (!serviceName.equals(e.source.getServiceName())) $.add(e);
+		}
+		return $;
+	}
+
 	@Override
 	public void addOutgoingEdge(NodeLocation target, Payload payload) {
-		edgeStore.addOutgoingEdge(serviceName,clientName,nodeName,target,payload);
+		long num;
+		if (!writeAheadLog.isEnabled()) {
+			num = edgeStore.addOutgoingEdge(serviceName,clientName,nodeName,target,payload);
+		} else {
+			long lsn;
+			synchronized (this) {//the edge's ordinal must match its position in the store
+				lsn = writeAheadLog.log(new Mutation.AddEdge(location, edgeStore.outgoingCount(), target, payload));
+				try {
+					num = edgeStore.addOutgoingEdge(serviceName,clientName,nodeName,target,payload);
+				} catch (RuntimeException e) {
+					writeAheadLog.applied(lsn);
+					throw e;
+				}
+			}
+			writeAheadLog.applied(lsn);//waits for the log outside the lock, so concurrent additions share a group commit
+		}
+		addedOutgoing(Collections.singletonList(new SerializableEdge(location, target, num, payload)));
 	}
 
 	@Override
-	public ResultSet traverse(Matcher matcher) {
-		if (matcher == null) return null;
-		System.out.println("yey" + matcher);
-		ResultSet $ = new ResultSet();
-		for (Edge e : getOutgoingEdges()) {
-			Matcher newMatcher = matcher.cont(e.serializableEdge);
-			if (newMatcher.canTake()) {
-				ResultSet rs = newMatcher.take();
-				$ = ResultSet.union($,rs);
+	public void addOutgoingEdges(List<EdgeTuple> edges) {
+		for (EdgeTuple e : edges) {
+			if (!location.equals(e.getSource())) throw new IllegalArgumentException(e + " is not an edge of " + location);
+		}
+		if (edges.isEmpty()) return;
+		long num;
+		if (!writeAheadLog.isEnabled()) {
+			num = edgeStore.addOutgoingEdges(serviceName,clientName,nodeName,edges);
+		} else {
+			long lsn;
+			synchronized (this) {
+				lsn = writeAheadLog.log(new Mutation.AddEdges(location, edgeStore.outgoingCount(), edges));
+				try {
+					num = edgeStore.addOutgoingEdges(serviceName,clientName,nodeName,edges);
+				} catch (RuntimeException e) {
+					writeAheadLog.applied(lsn);
+					throw e;
+				}
 			}
-			if (newMatcher.canCont()) {
-				$ = ResultSet.union($,e.target.traverse(newMatcher));
+			writeAheadLog.applied(lsn);
+		}
+		List<SerializableEdge> added = new ArrayList<SerializableEdge>(edges.size());
+		for (EdgeTuple e : edges) added.add(new SerializableEdge(location, e.getTarget(), num++, e.getPayload()));
+		addedOutgoing(added);
+	}
+
+	/**
+	 * records the just added outgoing edges in the reverse adjacency of their targets, targets of this service right
+	 * away (a single call per target, located by the {@link INodeLocator}) and remote targets through the
+	 * {@link IncomingEdgeSender}
+	 */
+	private void addedOutgoing(List<SerializableEdge> added) {
+		if (added.size() == 1) {
+			SerializableEdge e = added.get(0);
+			if (isSent(e)) incomingEdgeSender.send(added);
+			else locator.locate(serviceName, clientName, e.target).addIncomingEdges(added);
+			return;
+		}
+		Map<NodeLocation,List<SerializableEdge>> byTarget = new LinkedHashMap<NodeLocation,List<SerializableEdge>>();
+		List<SerializableEdge> sent = new ArrayList<SerializableEdge>();
+		for (SerializableEdge e : added) {
+			if (isSent(e)) {
+				sent.add(e);
+				continue;
 			}
+			List<SerializableEdge> edges = byTarget.get(e.target);
+			if (edges == null) byTarget.put(e.target, edges = new ArrayList<SerializableEdge>());
+			edges.add(e);
 		}
-		return $;
+		for (Map.Entry<NodeLocation,List<SerializableEdge>> entry : byTarget.entrySet()) {
+			locator.locate(serviceName, clientName, entry.getKey()).addIncomingEdges(entry.getValue());
+		}
+		if (!sent.isEmpty()) incomingEdgeSender.send(sent);
+	}
+
+	/** @return true IFF the incoming edge of {@code e} is left to the sender (its target is remote) */
+	private boolean isSent(SerializableEdge e) {
+		return incomingEdgeSender != null && !serviceName.equals(e.target.getServiceName());
+	}
+
+	@Override
+	public ResultSet traverse(Matcher matcher) {
+		return traversalEngine.traverse(this, matcher);
 	}
 
 	@Override
 	public ResultSet traverse(String path, Object... params) {
 		return traverse(parser.parsePath(path, params));
 	}
+
+	@Override
+	public boolean traverse(Matcher matcher, IResultConsumer consumer) {
+		return traversalEngine.traverse(this, matcher, consumer);
+	}
+
+	@Override
+	public boolean traverse(IResultConsumer consumer, String path, Object... params) {
+		return traverse(parser.parsePath(path, params), consumer);
+	}
+
+	@Override
+	public boolean traverse(Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+		return traversalEngine.traverse(this, matcher, options, consumer);
+	}
+
+	@Override
+	public ResultSet traverse(TraversalOptions options, String path, Object... params) {
+		ResultSet $ = new ResultSet();
+		if (!traverse(parser.parsePath(path, params), options, new IResultConsumer.Collector($))) $.setTruncated(true);
+		return $;
+	}
 	
 //	public Object writeReplace() throws ObjectStreamException 
 //	{return location();}
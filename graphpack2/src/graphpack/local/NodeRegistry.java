@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local;
+
+import graphpack.INode;
+import graphpack.NodeLocation;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.inject.Singleton;
+
+/**
+ * Dense int ids for the local nodes of a service.
+ * Names (i.e. locations) are mapped to ids once, at the API boundary, from then on a node is found by indexing
+ * an array with its id - no hashing, no string comparisons and no boxing.
+ * <p>
+ * Nodes are registered by whoever locates them first (see {@link graphpack.CommonNodeLocator}), so the registered
+ * node is always the one kept by the node store.
+ * @author amitport
+ */
+@Singleton
+public class NodeRegistry {
+	private final ConcurrentMap<NodeLocation,Integer> ids = new ConcurrentHashMap<NodeLocation,Integer>();
+	private volatile INode[] nodes = new INode[64];
+	private volatile int size;
+
+	/** @return the id of {@code node}, assigned on its first registration */
+	public synchronized int register(INode node) {
+		NodeLocation location = node.location();
+		Integer $ = ids.get(location);
+		if ($ != null) return $;
+		INode[] nodes = this.nodes;
+		if (size == nodes.length) this.nodes = nodes = Arrays.copyOf(nodes, size * 2);
+		nodes[size] = node;
+		ids.put(location, size);
+		return size++;
+	}
+
+	/** @return the id of the node at {@code location} or -1 if it isn't registered */
+	public int id(NodeLocation location) {
+		Integer $ = ids.get(location);
+		return ($ == null) ? -1 : $;
+	}
+
+	/** @return the node with {@code id} */
+	public INode node(int id) {
+		if (id < 0 || id >= size) throw new IndexOutOfBoundsException("no node " + id);
+		return nodes[id];//size was read first, the array it refers to is at least that long
+	}
+
+	/** @return the node at {@code location} or {@code null} if it isn't registered */
+	public INode node(NodeLocation location) {
+		int id = id(location);
+		return (id < 0) ? null : node(id);
+	}
+
+	/** @return the number of registered nodes (ids are {@code 0..size-1}) */
+	public int size() {
+		return size;
+	}
+}
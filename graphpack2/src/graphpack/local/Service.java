@@ -15,10 +15,30 @@
  ******************************************************************************/
 package graphpack.local;
 
+import graphpack.EdgeTuple;
 import graphpack.IClient;
+import graphpack.INode;
 import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
 import graphpack.local.persistence.IClientStore;
+import graphpack.local.persistence.IWriteAheadLog;
+import graphpack.local.persistence.Mutation;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
 import graphpack.remote.IConnectionManager;
+import graphpack.traversal.ITraversalEngine;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
@@ -29,15 +49,21 @@ public class Service implements IService {
 	IConnectionManager connectionManager;
 	IClientStore clientStore;
 	IClientFactory clientFactory;
+	IWriteAheadLog writeAheadLog;
+	ITraversalEngine traversalEngine;
 	@Inject
 	public Service(@Named("serviceName") String serviceName,
 					IConnectionManager connectionManager,
 					IClientStore clientStore,
-					IClientFactory clientFactory){
+					IClientFactory clientFactory,
+					IWriteAheadLog writeAheadLog,
+					ITraversalEngine traversalEngine){
 		this.serviceName = serviceName;
 		this.connectionManager = connectionManager;
 		this.clientStore = clientStore;
 		this.clientFactory = clientFactory;
+		this.writeAheadLog = writeAheadLog;
+		this.traversalEngine = traversalEngine;
 	}
 	
 	@Override
@@ -48,12 +74,101 @@ public class Service implements IService {
 	@Override
 	public IClient client(String clientName){ return clientStore.get(clientName);}
 
+	@Override
+	public Collection<String> clientNames() {
+		return clientStore.names();
+	}
+
+	@Override
+	public void addEdges(List<EdgeTuple> edges) {
+		List<EdgeTuple> sorted = new ArrayList<EdgeTuple>(edges);
+		Collections.sort(sorted, EdgeTuple.BY_SOURCE);
+		//targets in other clients of this service must exist before any client adds its edges
+		Set<NodeLocation> checked = new HashSet<NodeLocation>();
+		for (EdgeTuple e : sorted) {
+			NodeLocation target = e.getTarget();
+			if (serviceName.equals(target.getServiceName()) && checked.add(target)) {
+				IClient client = clientOrCreate(target.getClientName());
+				synchronized (client) {//as the client does when it creates missing nodes
+					if (client.node(target.getNodeName()) == null) client.createNode(target.getNodeName());
+				}
+			}
+		}
+		int from = 0;
+		while (from < sorted.size()) {
+			NodeLocation source = sorted.get(from).getSource();
+			if (!serviceName.equals(source.getServiceName())) {
+				throw new IllegalArgumentException(sorted.get(from) + " is not an edge of " + serviceName);
+			}
+			int to = from + 1;
+			while (to < sorted.size() && sorted.get(to).getSource().getClientName().equals(source.getClientName())) to++;
+			clientOrCreate(source.getClientName()).addEdges(sorted.subList(from, to));
+			from = to;
+		}
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		Map<NodeLocation,List<SerializableEdge>> byTarget = new LinkedHashMap<NodeLocation,List<SerializableEdge>>();
+		for (SerializableEdge e : edges) {
+			if (!serviceName.equals(e.target.getServiceName())) throw new IllegalArgumentException(e + " is not an edge to " + serviceName);
+			List<SerializableEdge> incoming = byTarget.get(e.target);
+			if (incoming == null) byTarget.put(e.target, incoming = new ArrayList<SerializableEdge>());
+			incoming.add(e);
+		}
+		for (Map.Entry<NodeLocation,List<SerializableEdge>> entry : byTarget.entrySet()) {
+			NodeLocation target = entry.getKey();
+			IClient client = clientOrCreate(target.getClientName());
+			INode node;
+			synchronized (client) {
+				node = client.node(target.getNodeName());
+				if (node == null) {
+					client.createNode(target.getNodeName());
+					node = client.node(target.getNodeName());
+				}
+			}
+			node.addIncomingEdges(entry.getValue());
+		}
+	}
+
+	@Override
+	public boolean traverse(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+		if (!serviceName.equals(batch.getServiceName())) {
+			throw new IllegalArgumentException(batch + " is not a batch of " + serviceName);
+		}
+		List<INode> starts = new ArrayList<INode>(batch.size());
+		List<Matcher> matchers = new ArrayList<Matcher>(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			NodeLocation location = batch.location(i);
+			IClient client = clientStore.get(location.getClientName());
+			INode node = (client == null) ? null : client.node(location.getNodeName());
+			if (node == null) continue;
+			starts.add(node);
+			matchers.add(batch.matcher(i));
+		}
+		return traversalEngine.traverse(starts, matchers, options, consumer);
+	}
+
+	private synchronized IClient clientOrCreate(String clientName) {
+		IClient $ = clientStore.get(clientName);
+		if ($ == null) {
+			createClient(clientName);
+			$ = clientStore.get(clientName);
+		}
+		return $;
+	}
+
 	@Override
 	public void createClient(String clientName) {
 		if (clientStore.contains(clientName)){
 			throw new RuntimeException("client already exists");
 		}
-		IClient $ = clientFactory.create(serviceName, clientName);
-		clientStore.put(clientName, $);
+		long lsn = writeAheadLog.log(new Mutation.CreateClient(clientName));
+		try {
+			IClient $ = clientFactory.create(serviceName, clientName);
+			clientStore.put(clientName, $);
+		} finally {
+			writeAheadLog.applied(lsn);
+		}
 	}
 }
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Keeps the outgoing edges read from another edge store in the service's {@link EdgeListCache}.
+ * <p>
+ * Lists are materialized when they are cached, so hot nodes of a disk store are read (and their edges decoded) once
+ * until they are evicted or until an edge is added to them. A selector is answered with the cached list when there
+ * is one (a superset is allowed), otherwise the store answers it (through its index, if it has one) and the cache
+ * is left to the reads of all the edges. Incoming edges aren't cached.
+ * @author amitport
+ */
+public class CachingEdgeStore implements IEdgeStore {
+	public final static String UNCACHED = "uncached";
+
+	final IEdgeStore store;
+	final EdgeListCache cache;
+	NodeLocation owner;
+	private long version;//guarded by this, counts additions so a list read before one is never cached after it
+
+	@Inject
+	public CachingEdgeStore(@Named(UNCACHED) IEdgeStore store, EdgeListCache cache) {
+		this.store = store;
+		this.cache = cache;
+	}
+
+	@Override
+	public void open(NodeLocation owner) {
+		this.owner = owner;
+		store.open(owner);
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges() {
+		List<Edge> $ = cache.get(owner);
+		if ($ != null) return $;
+		long version;
+		synchronized (this) {
+			version = this.version;
+		}
+		List<Edge> edges = store.getOutgoingEdges();
+		$ = Collections.unmodifiableList(Arrays.asList(edges.toArray(new Edge[edges.size()])));
+		synchronized (this) {
+			if (version == this.version) cache.put(owner, $, $.size() + 1);
+		}
+		return $;
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		List<Edge> $ = cache.get(owner);
+		return ($ != null) ? $ : store.getOutgoingEdges(selector);
+	}
+
+	@Override
+	public int outgoingCount() {
+		return store.outgoingCount();
+	}
+
+	@Override
+	public long addOutgoingEdge(String sourceService, String sourceClient, String sourceNode, NodeLocation target, Payload payload) {
+		long $ = store.addOutgoingEdge(sourceService, sourceClient, sourceNode, target, payload);
+		invalidate();
+		return $;
+	}
+
+	@Override
+	public long addOutgoingEdges(String sourceService, String sourceClient, String sourceNode, List<EdgeTuple> edges) {
+		long $ = store.addOutgoingEdges(sourceService, sourceClient, sourceNode, edges);
+		invalidate();
+		return $;
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		return store.getIncomingEdges();
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		store.addIncomingEdges(edges);
+	}
+
+	private synchronized void invalidate() {
+		version++;
+		cache.invalidate(owner);
+	}
+}
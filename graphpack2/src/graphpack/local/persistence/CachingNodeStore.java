@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.ClientLocation;
+import graphpack.INode;
+import graphpack.NodeLocation;
+
+import java.util.Collection;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Keeps the nodes found in another node store in the service's {@link NodeCache}, for stores that hydrate
+ * (or look up) nodes on every {@link #get(String)}
+ * @author amitport
+ */
+public class CachingNodeStore implements INodeStore {
+	public final static String UNCACHED = "uncached";
+
+	final INodeStore store;
+	final NodeCache cache;
+	ClientLocation owner;
+
+	@Inject
+	public CachingNodeStore(@Named(UNCACHED) INodeStore store, NodeCache cache) {
+		this.store = store;
+		this.cache = cache;
+	}
+
+	@Override
+	public void open(ClientLocation owner) {
+		this.owner = owner;
+		store.open(owner);
+	}
+
+	@Override
+	public boolean contains(String nodeName) {
+		return store.contains(nodeName);
+	}
+
+	@Override
+	public void put(String nodeName, INode node) {
+		store.put(nodeName, node);
+		cache.invalidate(location(nodeName));
+	}
+
+	@Override
+	public INode get(String nodeName) {
+		NodeLocation location = location(nodeName);
+		INode $ = cache.get(location);
+		if ($ == null && ($ = store.get(nodeName)) != null) cache.put(location, $, 1);
+		return $;
+	}
+
+	@Override
+	public Collection<String> names() {
+		return store.names();
+	}
+
+	private NodeLocation location(String nodeName) {
+		return new NodeLocation(owner.getServiceName(), owner.getClientName(), nodeName);
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A size bounded cache with CLOCK (second chance) eviction.
+ * <p>
+ * Every entry has a weight, the total weight never exceeds the capacity. Hits are lock free: they only set the
+ * entry's reference bit, so a small set of hot entries (hub nodes) is read concurrently without contention.
+ * Insertions and invalidations take a lock and advance the clock hand, an entry referenced since the hand last
+ * passed it gets a second chance, others are evicted.
+ * @author amitport
+ */
+public class ClockCache<K,V> {
+	private final ConcurrentMap<K,Entry<K,V>> map = new ConcurrentHashMap<K,Entry<K,V>>();
+	private final Queue<Entry<K,V>> clock = new ArrayDeque<Entry<K,V>>();//guarded by itself, the head is the hand
+	private final long capacity;
+	private long weight;//guarded by clock
+	private int removed;//entries still on the clock after they were dropped, guarded by clock
+
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+
+	public ClockCache(long capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("negative capacity " + capacity);
+		this.capacity = capacity;
+	}
+
+	/** @return the value cached for {@code key} or {@code null} (a miss) */
+	public V get(K key) {
+		Entry<K,V> $ = map.get(key);
+		if ($ == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		if (!$.referenced) $.referenced = true;//avoids writing a shared line on every hit
+		hits.incrementAndGet();
+		return $.value;
+	}
+
+	/** caches {@code value} (replacing any previous value), values heavier than the capacity aren't cached */
+	public void put(K key, V value, long weight) {
+		if (weight < 0) throw new IllegalArgumentException("negative weight " + weight);
+		if (weight > capacity) {
+			invalidate(key);
+			return;
+		}
+		Entry<K,V> e = new Entry<K,V>(key, value, weight);
+		synchronized (clock) {
+			Entry<K,V> old = map.put(key, e);
+			if (old != null) remove(old);
+			clock.add(e);
+			this.weight += weight;
+			while (this.weight > capacity) {
+				Entry<K,V> victim = clock.poll();
+				if (victim.removed) {
+					removed--;
+					continue;
+				}
+				if (victim.referenced) {
+					victim.referenced = false;
+					clock.add(victim);
+				} else {
+					map.remove(victim.key, victim);
+					remove(victim);
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/** drops the value cached for {@code key}, if any */
+	public void invalidate(K key) {
+		synchronized (clock) {
+			Entry<K,V> old = map.remove(key);
+			if (old != null) remove(old);
+		}
+	}
+
+	/** drops the values cached for the keys {@code predicate} accepts */
+	public void invalidateAll(Predicate<? super K> predicate) {
+		synchronized (clock) {
+			for (Iterator<Entry<K,V>> i = map.values().iterator(); i.hasNext();) {
+				Entry<K,V> e = i.next();
+				if (!predicate.apply(e.key)) continue;
+				i.remove();
+				remove(e);
+			}
+		}
+	}
+
+	/** drops all the cached values */
+	public void invalidateAll() {
+		synchronized (clock) {
+			map.clear();
+			clock.clear();
+			weight = 0;
+			removed = 0;
+		}
+	}
+
+	//removed entries stay on the clock until the hand reaches them, or until they are most of it
+	private void remove(Entry<K,V> e) {
+		e.removed = true;
+		weight -= e.weight;
+		if (++removed > 64 && removed > clock.size() / 2) {
+			for (int i = clock.size(); i > 0; i--) {
+				Entry<K,V> next = clock.poll();
+				if (!next.removed) clock.add(next);
+			}
+			removed = 0;
+		}
+	}
+
+	public long getCapacity() {return capacity;}
+
+	/** @return a snapshot of the counters of this cache */
+	public Metrics metrics() {
+		synchronized (clock) {
+			return new Metrics(hits.get(), misses.get(), evictions.get(), map.size(), weight);
+		}
+	}
+
+	/*** static ***/
+
+	private static final class Entry<K,V> {
+		final K key;
+		final V value;
+		final long weight;
+		volatile boolean referenced;
+		boolean removed;//guarded by the clock
+
+		Entry(K key, V value, long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * hit, miss and eviction counts (since the cache was created) and the current size and weight of a cache
+	 * @author amitport
+	 */
+	public static final class Metrics {
+		public final long hits, misses, evictions;
+		public final int size;
+		public final long weight;
+
+		Metrics(long hits, long misses, long evictions, int size, long weight) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+			this.weight = weight;
+		}
+
+		/** @return the ratio of lookups that hit, or 0 if there were none */
+		public double hitRate() {
+			long lookups = hits + misses;
+			return (lookups == 0) ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return "{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", size=" + size + ", weight=" + weight + "}";
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Extensions;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+import javax.annotation.Nullable;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * The directory in which the persistent stores of a service keep their files,
+ * taken from the {@value #EXTENSION} extension (a {@link File} or a path) or {@code data/<serviceName>} by default
+ * @author amitport
+ */
+@Singleton
+public class DataDirectory {
+	public final static String EXTENSION = "dataDirectory";
+
+	final File root;
+
+	@Inject
+	public DataDirectory(@Named("serviceName") String serviceName, @Nullable Extensions extensions) {
+		Object configured = (extensions == null) ? null : extensions.get(EXTENSION);
+		if (configured instanceof File) this.root = (File) configured;
+		else if (configured != null) this.root = new File(configured.toString());
+		else this.root = new File("data", encode(serviceName));
+	}
+
+	public File getRoot() {return root;}
+
+	/** @return the (existing) directory at {@code path} under the root, path elements are encoded to be valid file names */
+	public File dir(String... path) {
+		File $ = root;
+		for (String p : path) $ = new File($, encode(p));
+		if (!$.isDirectory() && !$.mkdirs()) throw new RuntimeException("can't create " + $);
+		return $;
+	}
+
+	static String encode(String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
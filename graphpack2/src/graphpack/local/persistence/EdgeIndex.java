@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeSelector.Condition;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the outgoing edges of a single node, from edge type and from the values of chosen
+ * payload fields to edge ordinals (numeric field values are also kept sorted, for range lookups).
+ * <p>
+ * Edges are added by a single writer at a time, readers never block: a reader that saw {@code size} edges
+ * only uses the ordinals below it.
+ * @author amitport
+ */
+public final class EdgeIndex {
+	final String[] fields;
+	final ConcurrentMap<String,Postings> byType = new ConcurrentHashMap<String,Postings>();
+	final ConcurrentMap<Object,Postings>[] byValue;//by field
+	final ConcurrentNavigableMap<Double,Postings>[] byNumber;//by field, shares the postings of byValue
+
+	public EdgeIndex(String... fields) {
+		this.fields = fields.clone();
+		//generic arrays can't be created, every slot is set to a map of the declared type right below
+		@SuppressWarnings({"unchecked", "rawtypes"}) ConcurrentMap<Object,Postings>[] byValue = new ConcurrentMap[fields.length];
+		@SuppressWarnings({"unchecked", "rawtypes"}) ConcurrentNavigableMap<Double,Postings>[] byNumber = new ConcurrentNavigableMap[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			byValue[i] = new ConcurrentHashMap<Object,Postings>();
+			byNumber[i] = new ConcurrentSkipListMap<Double,Postings>();
+		}
+		this.byValue = byValue;
+		this.byNumber = byNumber;
+	}
+
+	/** indexes edge {@code ordinal}, ordinals must be added in increasing order */
+	public void add(int ordinal, Payload payload) {
+		String type = EdgeSelector.typeOf(payload);
+		if (type != null) postings(byType, type).add(ordinal);
+		for (int i = 0; i < fields.length; i++) {
+			Object value = EdgeSelector.normalize(EdgeSelector.field(payload, fields[i]));
+			if (value == null) continue;
+			Postings p = byValue[i].get(value);
+			if (p == null) {
+				byValue[i].put(value, p = new Postings());
+				if (value instanceof Double) byNumber[i].put((Double) value, p);
+			}
+			p.add(ordinal);
+		}
+	}
+
+	/**
+	 * @return the ordinals (ascending and below {@code size}) of the edges that may be selected by {@code selector},
+	 * or {@code null} if no index narrows it down
+	 */
+	public int[] candidates(EdgeSelector selector, int size) {
+		int[] $ = null;
+		if (selector.getTypes() != null) {
+			$ = union(byType, selector.getTypes(), size);
+		}
+		List<Condition> conditions = selector.getConditions();
+		for (int i = 0; i < fields.length; i++) {
+			int[] c = candidates(i, conditions, size);
+			if (c != null && ($ == null || c.length < $.length)) $ = c;
+		}
+		return $;
+	}
+
+	/** @return the candidates of the conditions on field {@code i} or {@code null} if there are none */
+	private int[] candidates(int i, List<Condition> conditions, int size) {
+		Double low = null, high = null;
+		boolean lowInclusive = true, highInclusive = true;
+		for (Condition c : conditions) {
+			if (!c.getField().equals(fields[i])) continue;
+			Object value = c.getValue();
+			switch (c.getOp()) {
+			case EQ:
+				Postings p = byValue[i].get(value);
+				return (p == null) ? new int[0] : p.below(size);
+			case GT:
+			case GE:
+				boolean inclusive = c.getOp() == EdgeSelector.Op.GE;
+				if (low == null || (Double) value > low) {
+					low = (Double) value;
+					lowInclusive = inclusive;
+				} else if (low.equals(value)) {
+					lowInclusive &= inclusive;
+				}
+				break;
+			default://LT, LE
+				inclusive = c.getOp() == EdgeSelector.Op.LE;
+				if (high == null || (Double) value < high) {
+					high = (Double) value;
+					highInclusive = inclusive;
+				} else if (high.equals(value)) {
+					highInclusive &= inclusive;
+				}
+			}
+		}
+		if (low == null && high == null) return null;
+		ConcurrentNavigableMap<Double,Postings> range = byNumber[i];
+		if (low != null && high != null) {
+			if (low > high || (low.equals(high) && !(lowInclusive && highInclusive))) return new int[0];
+			range = range.subMap(low, lowInclusive, high, highInclusive);
+		} else if (low != null) {
+			range = range.tailMap(low, lowInclusive);
+		} else {
+			range = range.headMap(high, highInclusive);
+		}
+		return union(range.values(), size);
+	}
+
+	private static int[] union(ConcurrentMap<String,Postings> map, Collection<String> keys, int size) {
+		if (keys.size() == 1) {
+			Postings p = map.get(keys.iterator().next());
+			return (p == null) ? new int[0] : p.below(size);
+		}
+		Postings[] ps = new Postings[keys.size()];
+		int n = 0;
+		for (String key : keys) {
+			Postings p = map.get(key);
+			if (p != null) ps[n++] = p;
+		}
+		return union(Arrays.asList(ps).subList(0, n), size);
+	}
+
+	/** every edge has a single type and value per field, so postings of different keys never overlap */
+	private static int[] union(Collection<Postings> postings, int size) {
+		int[][] parts = new int[postings.size()][];
+		int total = 0, n = 0;
+		for (Postings p : postings) {
+			if (n == parts.length) break;//the map grew while we iterated
+			total += (parts[n++] = p.below(size)).length;
+		}
+		int[] $ = new int[total];
+		int at = 0;
+		for (int k = 0; k < n; k++) {
+			System.arraycopy(parts[k], 0, $, at, parts[k].length);
+			at += parts[k].length;
+		}
+		if (n > 1) Arrays.sort($);
+		return $;
+	}
+
+	private static <K> Postings postings(ConcurrentMap<K,Postings> map, K key) {
+		Postings $ = map.get(key);
+		if ($ == null) map.put(key, $ = new Postings());
+		return $;
+	}
+
+	/*** static ***/
+
+	/**
+	 * an ascending list of ordinals, grown by copying so readers need no lock
+	 * @author amitport
+	 */
+	static final class Postings {
+		private volatile int[] ordinals = new int[2];
+		private volatile int size;
+
+		void add(int ordinal) {
+			int[] ordinals = this.ordinals;
+			if (size == ordinals.length) this.ordinals = ordinals = Arrays.copyOf(ordinals, size * 2);
+			ordinals[size] = ordinal;
+			size++;
+		}
+
+		/** @return the ordinals below {@code limit} */
+		int[] below(int limit) {
+			int size = this.size;//read size first, the array it refers to is at least that long
+			int[] ordinals = this.ordinals;
+			int n = size;
+			while (n > 0 && ordinals[n - 1] >= limit) n--;
+			return Arrays.copyOf(ordinals, n);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge;
+import graphpack.NodeLocation;
+
+import java.util.List;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * The outgoing edges of the nodes of a service, shared by all the {@link CachingEdgeStore}s.
+ * A list weighs as many edges as it has (plus one, so empty lists count too).
+ * @author amitport
+ */
+@Singleton
+public class EdgeListCache extends ClockCache<NodeLocation,List<Edge>> {
+	@Inject
+	public EdgeListCache(@Named("edgeCacheCapacity") long capacity) {
+		super(capacity);
+	}
+}
@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Extensions;
+import graphpack.IService;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * A write-ahead log kept in segment files ({@code wal/<n>.log}) of the service's {@link DataDirectory}.
+ * <p>
+ * Records ({@code length, crc32, mutation}) are appended to an in-memory batch, a single writer thread writes
+ * (and, depending on the {@link Fsync} policy, forces) whole batches, so concurrent mutations share a single
+ * fsync (group commit). With {@link Fsync#ALWAYS} a mutation is acknowledged once the batch holding it was forced,
+ * with {@link Fsync#INTERVAL} batches are forced periodically and with {@link Fsync#NEVER} the OS decides.
+ * <p>
+ * A checkpoint waits for the mutations in progress, starts a new segment, forces the registered stores and then
+ * deletes the older segments. Recovery replays all the segments in order and stops at the first torn record.
+ * The log is truncated only when the stores are durable themselves (e.g. the mapped stores, the service binds {@value #DURABLE_STORES}),
+ * otherwise the log is the only copy of the graph and a checkpoint just forces it.
+ * @author amitport
+ */
+@Singleton
+public class FileWriteAheadLog implements IWriteAheadLog {
+	/** extension names */
+	public final static String FSYNC = "walFsync", FSYNC_INTERVAL = "walFsyncInterval", CHECKPOINT_INTERVAL = "walCheckpointInterval";
+	public final static long DEFAULT_FSYNC_INTERVAL = 100;
+	/** bound to true IFF all the stores are durable (checkpointed), so checkpoints may truncate the log */
+	public final static String DURABLE_STORES = "durableStores";
+
+	public static enum Fsync {
+		/** every mutation waits until it is on the disk */
+		ALWAYS,
+		/** batches are forced every {@value FileWriteAheadLog#FSYNC_INTERVAL} milliseconds */
+		INTERVAL,
+		/** batches are written but never forced */
+		NEVER
+	}
+
+	final File dir;
+	final Fsync fsync;
+	final long fsyncInterval, checkpointInterval;
+	final boolean durableStores;
+	final List<ICheckpointable> stores = new CopyOnWriteArrayList<ICheckpointable>();
+	/* mutations in progress hold the read lock, checkpoints take the write lock */
+	final ReadWriteLock inProgress = new ReentrantReadWriteLock();
+
+	private final Object batchLock = new Object();
+	private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+	private long lastLsn, writtenLsn, durableLsn;
+	private boolean replaying, closed;
+	private RuntimeException failure;//of the writer thread
+
+	private final Object ioLock = new Object();
+	private int segment;
+	private FileChannel channel;
+
+	final Thread writer;
+	final ScheduledExecutorService scheduler;
+
+	@Inject
+	public FileWriteAheadLog(DataDirectory directory, @Nullable Extensions extensions, @Named(DURABLE_STORES) Boolean durableStores) {
+		this(directory.dir("wal"),
+				Fsync.valueOf(String.valueOf(get(extensions, FSYNC, Fsync.ALWAYS))),
+				Long.parseLong(String.valueOf(get(extensions, FSYNC_INTERVAL, DEFAULT_FSYNC_INTERVAL))),
+				Long.parseLong(String.valueOf(get(extensions, CHECKPOINT_INTERVAL, 0))),
+				durableStores);
+	}
+
+	public FileWriteAheadLog(File dir, Fsync fsync, long fsyncInterval, long checkpointInterval, boolean durableStores) {
+		this.dir = dir;
+		this.fsync = fsync;
+		this.fsyncInterval = fsyncInterval;
+		this.writer = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("wal-writer-%d").build()
+				.newThread(new Runnable() {
+					@Override
+					public void run() {
+						writeLoop();
+					}
+				});
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("wal-scheduler-%d").build());
+		this.checkpointInterval = checkpointInterval;
+		this.durableStores = durableStores;
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new RuntimeException("can't create " + dir);
+	}
+
+	private static Object get(Extensions extensions, String name, Object defaultValue) {
+		Object $ = (extensions == null) ? null : extensions.get(name);
+		return ($ == null) ? defaultValue : $;
+	}
+
+	@Override
+	public boolean isEnabled() {return true;}
+
+	@Override
+	public long log(Mutation mutation) {
+		byte[] record = encode(mutation);
+		inProgress.readLock().lock();
+		synchronized (batchLock) {
+			if (replaying) return 0;
+			if (closed) {
+				inProgress.readLock().unlock();
+				throw new IllegalStateException("write-ahead log is closed");
+			}
+			batch.write(record, 0, record.length);
+			batchLock.notifyAll();
+			return ++lastLsn;
+		}
+	}
+
+	@Override
+	public void applied(long lsn) {
+		inProgress.readLock().unlock();
+		if (lsn == 0 || fsync != Fsync.ALWAYS) return;
+		synchronized (batchLock) {
+			while (durableLsn < lsn) {
+				if (failure != null) throw failure;
+				if (closed) throw new IllegalStateException("write-ahead log closed before " + lsn + " was forced");
+				try {
+					batchLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/** the writer thread: writes every batch once it is non empty, forces it if needed */
+	void writeLoop() {
+		while (true) {
+			byte[] bytes;
+			long lsn;
+			synchronized (batchLock) {
+				while (batch.size() == 0 && !closed) {
+					try {
+						batchLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (batch.size() == 0) return;//closed
+				bytes = batch.toByteArray();
+				batch.reset();
+				lsn = lastLsn;
+			}
+			try {
+				synchronized (ioLock) {
+					write(bytes);
+					if (fsync == Fsync.ALWAYS) forceChannel();
+				}
+			} catch (RuntimeException e) {
+				synchronized (batchLock) {
+					failure = e;
+					batchLock.notifyAll();
+				}
+				return;
+			}
+			synchronized (batchLock) {
+				writtenLsn = lsn;
+				if (fsync == Fsync.ALWAYS) durableLsn = lsn;
+				batchLock.notifyAll();
+			}
+		}
+	}
+
+	/** forces what was written so far */
+	void force() {
+		long lsn;
+		synchronized (batchLock) {
+			lsn = writtenLsn;
+		}
+		synchronized (ioLock) {
+			forceChannel();
+		}
+		synchronized (batchLock) {
+			if (durableLsn < lsn) durableLsn = lsn;
+		}
+	}
+
+	/** waits until everything logged so far was written by the writer thread */
+	private void drain() {
+		synchronized (batchLock) {
+			while (writtenLsn < lastLsn && writer.isAlive() && failure == null) {
+				try {
+					batchLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void register(ICheckpointable store) {
+		stores.add(store);
+	}
+
+	@Override
+	public void recover(IService service) {
+		Set<Integer> segments = segments();
+		synchronized (batchLock) {
+			replaying = true;
+		}
+		try {
+			for (int s : segments) {
+				for (Mutation m : read(s)) m.replay(service);
+			}
+		} finally {
+			synchronized (batchLock) {
+				replaying = false;
+			}
+		}
+		synchronized (ioLock) {
+			segment = segments.isEmpty() ? 0 : ((TreeSet<Integer>) segments).last() + 1;
+			open(segment);
+		}
+		writer.start();
+		//background work starts only once the log is recovered
+		if (fsync == Fsync.INTERVAL) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					force();
+				}
+			}, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+		}
+		if (checkpointInterval > 0 && durableStores) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					checkpoint();
+				}
+			}, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void checkpoint() {
+		if (!durableStores) {//truncating would lose the mutations that only the log holds
+			drain();
+			force();
+			return;
+		}
+		int current;
+		inProgress.writeLock().lock();
+		try {
+			drain();
+			synchronized (ioLock) {
+				forceChannel();
+				close(channel);
+				current = ++segment;
+				open(current);
+			}
+		} finally {
+			inProgress.writeLock().unlock();
+		}
+		for (ICheckpointable store : stores) store.force();
+		for (int s : segments()) {
+			if (s < current) file(s).delete();
+		}
+	}
+
+	@Override
+	public void close() {
+		drain();
+		synchronized (batchLock) {
+			closed = true;
+			batchLock.notifyAll();
+		}
+		scheduler.shutdown();
+		synchronized (ioLock) {
+			if (channel != null) {
+				forceChannel();
+				close(channel);
+				channel = null;
+			}
+		}
+	}
+
+	private File file(int segment) {
+		return new File(dir, segment + ".log");
+	}
+
+	/** @return the numbers of the existing segments, in order */
+	private Set<Integer> segments() {
+		TreeSet<Integer> $ = new TreeSet<Integer>();
+		String[] names = dir.list();
+		if (names == null) return $;
+		for (String name : names) {
+			if (!name.endsWith(".log")) continue;
+			try {
+				$.add(Integer.parseInt(name.substring(0, name.length() - 4)));
+			} catch (NumberFormatException e) {
+				//not a segment
+			}
+		}
+		return $;
+	}
+
+	/** @return the mutations of {@code segment}, a torn record (and whatever follows it) is cut off */
+	private List<Mutation> read(int segment) {
+		List<Mutation> $ = new ArrayList<Mutation>();
+		try {
+			RandomAccessFile f = new RandomAccessFile(file(segment), "rw");
+			try {
+				long good = 0;
+				while (good + 8 <= f.length()) {
+					f.seek(good);
+					int length = f.readInt();
+					int crc = f.readInt();
+					if (length < 0 || good + 8 + length > f.length()) break;
+					byte[] bytes = new byte[length];
+					f.readFully(bytes);
+					CRC32 check = new CRC32();
+					check.update(bytes);
+					if ((int) check.getValue() != crc) break;
+					$.add(Mutation.read(new DataInputStream(new ByteArrayInputStream(bytes))));
+					good += 8 + length;
+				}
+				if (good < f.length()) f.setLength(good);
+			} finally {
+				f.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return $;
+	}
+
+	private static byte[] encode(Mutation mutation) {
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(body);
+			mutation.write(out);
+			out.close();
+			CRC32 crc = new CRC32();
+			crc.update(body.toByteArray());
+			ByteArrayOutputStream $ = new ByteArrayOutputStream(body.size() + 8);
+			DataOutputStream record = new DataOutputStream($);
+			record.writeInt(body.size());
+			record.writeInt((int) crc.getValue());
+			body.writeTo(record);
+			record.close();
+			return $.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void open(int segment) {
+		try {
+			RandomAccessFile f = new RandomAccessFile(file(segment), "rw");
+			f.seek(f.length());
+			channel = f.getChannel();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void write(byte[] bytes) {
+		try {
+			ByteBuffer b = ByteBuffer.wrap(bytes);
+			while (b.hasRemaining()) channel.write(b);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void forceChannel() {
+		try {
+			if (channel != null) channel.force(false);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void close(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -17,9 +17,13 @@ package graphpack.local.persistence;
 
 import graphpack.IClient;
 
+import java.util.Collection;
+
 public interface IClientStore {
 	boolean contains(String clientName);
 	void put(String clientName,IClient client);
 	IClient get(String clientName);
+	/** @return a live view of the names of the stored clients */
+	Collection<String> names();
 	
 }
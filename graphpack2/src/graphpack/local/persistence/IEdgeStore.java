@@ -17,14 +17,39 @@ package graphpack.local.persistence;
 
 import graphpack.Edge;
 import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
 import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
 
 import java.util.List;
 
 public interface IEdgeStore {
 
+	/** called once, by the node that owns this store, before any other call */
+	void open(NodeLocation owner);
+
 	List<Edge> getOutgoingEdges();
 
-	void addOutgoingEdge(String sourceService, String sourceClient, String sourceNode, NodeLocation target, Payload payload);
+	/** @return the outgoing edges that may be selected by {@code selector} (possibly all of them), in order */
+	List<Edge> getOutgoingEdges(EdgeSelector selector);
+
+	/** @return the number of outgoing edges (the num of the next added edge), without reading the edges */
+	int outgoingCount();
+
+	/** @return the num of the added edge (its index among the owner's outgoing edges) */
+	long addOutgoingEdge(String sourceService, String sourceClient, String sourceNode, NodeLocation target, Payload payload);
+
+	/** appends the targets and payloads of {@code edges} in order (their sources are the owner) @return the num of the first edge */
+	long addOutgoingEdges(String sourceService, String sourceClient, String sourceNode, List<EdgeTuple> edges);
+
+	/** @return the edges whose target is the owner (the reverse adjacency), in order, as {@link Edge#incoming} edges */
+	List<Edge> getIncomingEdges();
+
+	/**
+	 * appends {@code edges} (whose target is the owner) to the reverse adjacency,
+	 * an edge whose source and num were already added is ignored
+	 */
+	void addIncomingEdges(List<SerializableEdge> edges);
 
 }
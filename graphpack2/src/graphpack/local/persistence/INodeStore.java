@@ -15,10 +15,17 @@
  ******************************************************************************/
 package graphpack.local.persistence;
 
+import graphpack.ClientLocation;
 import graphpack.INode;
 
+import java.util.Collection;
+
 public interface INodeStore {
+	/** called once, by the client that owns this store, before any other call */
+	void open(ClientLocation owner);
 	boolean contains(String nodeName);
-	void put(String nodeName,INode client);
+	void put(String nodeName,INode node);
 	INode get(String nodeName);
+	/** @return a live view of the names of the stored nodes */
+	Collection<String> names();
 }
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.IService;
+
+/**
+ * Makes graph mutations durable: every mutation is logged before it is applied to the stores,
+ * the log is replayed into the stores when the service starts and truncated by checkpoints
+ * (once the stores themselves are durable).
+ * <p>
+ * A mutation is {@link #log logged}, applied and then reported {@link #applied}, which (depending on the log's
+ * policy) waits until the mutation is durable:
+ * <pre>
+ * long lsn = wal.log(mutation);
+ * try {
+ *     //apply the mutation
+ * } finally {
+ *     wal.applied(lsn);
+ * }
+ * </pre>
+ * @author amitport
+ */
+public interface IWriteAheadLog {
+	/** @return false IFF mutations are not logged at all (so callers may skip preparing them) */
+	boolean isEnabled();
+
+	/** appends {@code mutation}, @return its log sequence number */
+	long log(Mutation mutation);
+
+	/** the mutation logged as {@code lsn} was applied to the stores, returns once it is durable */
+	void applied(long lsn);
+
+	/** {@code store} is forced to the disk on every checkpoint, before the log is truncated */
+	void register(ICheckpointable store);
+
+	/** replays the log into {@code service}, must be called before any mutation is logged */
+	void recover(IService service);
+
+	/** forces all the registered stores and truncates the log (only if the stores are durable, otherwise the log is forced) */
+	void checkpoint();
+
+	void close();
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.NodeLocation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * An {@link OffHeapAdjacency} whose columns, node table and payloads are memory mapped segment files,
+ * so the graph survives restarts without being rebuilt and reads go straight to the (OS cached) files.
+ * <p>
+ * All writes are appends. A small mapped state file records how much of every file is valid and which
+ * generation is current; a compaction writes the new base's files, forces them, and only then switches the
+ * generation (a single aligned long), so a crash leaves either the old or the new generation.
+ * On restart the node table is read and the delta's per node chains are rebuilt (the base is used as is).
+ * Changes are left to the OS to write back, call {@link #force()} to write them to the disk.
+ * @author amitport
+ */
+@Singleton
+public class MappedAdjacency extends OffHeapAdjacency implements ICheckpointable {
+	final static long MAGIC = 0x47504d4150414a31L;
+	/* state file layout */
+	final static int MAGIC_AT = 0, GENERATION_AT = 8, SLOTS_AT = 16, SLOT_SIZE = 24,//2 slots of (nodes, edges, delta size)
+			PAYLOADS_SIZE_AT = 64, LOCATIONS_COUNT_AT = 72, LOCATIONS_SIZE_AT = 80, STATE_SIZE = 4096;
+
+	@Inject
+	public MappedAdjacency(DataDirectory directory, IWriteAheadLog writeAheadLog) {
+		this(directory.dir("adjacency"), DEFAULT_MIN_DELTA);
+		writeAheadLog.register(this);
+	}
+
+	public MappedAdjacency(File dir, int minDelta) {
+		super(minDelta, new MappedStorage(dir));
+		MappedStorage storage = (MappedStorage) this.storage;
+		if (storage.state.getLong(MAGIC_AT) != MAGIC) {
+			initEmpty();
+			storage.writeSlot(0, 0, 0, 0);
+			storage.state.putLong(GENERATION_AT, 0);
+			storage.state.putLong(MAGIC_AT, MAGIC);
+			storage.state.force();
+		} else {
+			restore(storage);
+		}
+		storage.deleteOtherGenerations(generation);
+	}
+
+	private void restore(MappedStorage storage) {
+		generation = (int) storage.state.getLong(GENERATION_AT);
+		int slot = SLOTS_AT + (generation % 2) * SLOT_SIZE;
+		int baseNodes = (int) storage.state.getLong(slot);
+		long baseEdges = storage.state.getLong(slot + 8);
+		int deltaSize = (int) storage.state.getLong(slot + 16);
+
+		long count = storage.state.getLong(LOCATIONS_COUNT_AT);
+		storage.locations.setSize(storage.state.getLong(LOCATIONS_SIZE_AT));
+		for (long i = 0, pos = 0; i < count; i++, pos = storage.locations.skipBytes(pos)) {
+			addLocation(decode(storage.locations.getBytes(pos)));
+		}
+		payloads.setSize(storage.state.getLong(PAYLOADS_SIZE_AT));
+		base = new Base(storage, generation, baseNodes, baseEdges).filled();
+		delta = new Delta(storage, generation).filled(deltaSize);
+	}
+
+	/** the reverse adjacency is mapped as well, in a sub directory */
+	@Override
+	OffHeapAdjacency newIncoming() {
+		File dir = new File(((MappedStorage) storage).dir, "incoming");
+		if (!dir.isDirectory() && !dir.mkdirs()) throw new RuntimeException("can't create " + dir);
+		return new MappedAdjacency(dir, minDelta);
+	}
+
+	/** writes all changes to the disk */
+	@Override
+	public void force() {
+		OffHeapAdjacency incoming = incomingIfUsed();
+		if (incoming != null) ((MappedAdjacency) incoming).force();
+		lock.readLock().lock();
+		try {
+			MappedStorage storage = (MappedStorage) this.storage;
+			for (OffHeapBuffer b : delta.columns()) ((MappedBuffer) b).force();
+			((MappedBuffer) payloads).force();
+			storage.locations.force();
+			storage.state.force();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	static byte[] encode(NodeLocation location) {
+		try {
+			ByteArrayOutputStream $ = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream($);
+			out.writeUTF(location.getServiceName());
+			out.writeUTF(location.getClientName());
+			out.writeUTF(location.getNodeName());
+			out.close();
+			return $.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static NodeLocation decode(byte[] bytes) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			return new NodeLocation(in.readUTF(), in.readUTF(), in.readUTF());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*** static ***/
+
+	/**
+	 * keeps every column in mapped files of the adjacency's directory and the state file up to date
+	 * @author amitport
+	 */
+	static class MappedStorage extends Storage {
+		/** segments of mapped files are never smaller than 1MB (files are sparse, so this costs no disk space) */
+		final static int MIN_SEGMENT_BITS = 20;
+
+		final File dir;
+		final MappedBuffer state;
+		final MappedBuffer locations;
+
+		MappedStorage(File dir) {
+			this.dir = dir;
+			this.state = new MappedBuffer(dir, "state", 12);
+			state.setSize(STATE_SIZE);
+			this.locations = new MappedBuffer(dir, "locations", 22);
+		}
+
+		@Override
+		OffHeapBuffer buffer(String column, int generation, int segmentBits) {
+			return new MappedBuffer(dir, prefix(column, generation), Math.max(MIN_SEGMENT_BITS, segmentBits));
+		}
+
+		static String prefix(String column, int generation) {
+			return (generation < 0) ? column : column + "." + generation;
+		}
+
+		@Override
+		void locationAdded(OffHeapAdjacency adjacency, int id, NodeLocation location) {
+			locations.appendBytes(encode(location));
+			state.putLong(LOCATIONS_SIZE_AT, locations.size());
+			state.putLong(LOCATIONS_COUNT_AT, id + 1);
+		}
+
+		@Override
+		void edgeAdded(OffHeapAdjacency adjacency) {
+			state.putLong(PAYLOADS_SIZE_AT, adjacency.payloads.size());
+			state.putLong(SLOTS_AT + (adjacency.generation % 2) * SLOT_SIZE + 16, adjacency.delta.size);
+		}
+
+		@Override
+		void compacted(OffHeapAdjacency adjacency, Base oldBase, Delta oldDelta) {
+			Base base = adjacency.base;
+			for (OffHeapBuffer b : base.columns()) ((MappedBuffer) b).force();
+			((MappedBuffer) adjacency.payloads).force();
+			locations.force();
+			writeSlot(base.generation, base.nodes, base.edges, 0);
+			state.force();
+			state.putLong(GENERATION_AT, base.generation);
+			state.force();
+			deleteOtherGenerations(base.generation);
+		}
+
+		void writeSlot(int generation, int nodes, long edges, int deltaSize) {
+			int slot = SLOTS_AT + (generation % 2) * SLOT_SIZE;
+			state.putLong(slot, nodes);
+			state.putLong(slot + 8, edges);
+			state.putLong(slot + 16, deltaSize);
+		}
+
+		/** removes files left by other generations (replaced or never completed) */
+		void deleteOtherGenerations(int generation) {
+			File[] files = dir.listFiles();
+			if (files == null) return;
+			String current = "." + generation + "-";
+			for (File f : files) {
+				String name = f.getName();
+				int dot = name.indexOf('.');
+				if (dot < 0 || !name.endsWith(".seg") || name.indexOf('-') < dot) continue;
+				if (!name.substring(dot).startsWith(current)) f.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link OffHeapBuffer} whose segments are memory mapped files named {@code <prefix>-<index>.seg}.
+ * Segment files are created with their full length (sparse where the file system allows it),
+ * existing files are mapped as they are, so reopening a buffer makes its content available again.
+ * @author amitport
+ */
+class MappedBuffer extends OffHeapBuffer {
+	final File dir;
+	final String prefix;
+	private final List<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+
+	MappedBuffer(File dir, String prefix, int segmentBits) {
+		super(segmentBits);
+		this.dir = dir;
+		this.prefix = prefix;
+	}
+
+	@Override
+	protected ByteBuffer allocate(int index) {
+		try {
+			RandomAccessFile file = new RandomAccessFile(new File(dir, prefix + "-" + index + ".seg"), "rw");
+			try {
+				if (file.length() < (1L << segmentBits)) file.setLength(1L << segmentBits);
+				MappedByteBuffer $ = file.getChannel().map(MapMode.READ_WRITE, 0, 1L << segmentBits);
+				mapped.add($);
+				return $;
+			} finally {
+				file.close();//the mapping stays valid
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** writes all changes to the disk */
+	void force() {
+		for (MappedByteBuffer b : mapped) b.force();
+	}
+}
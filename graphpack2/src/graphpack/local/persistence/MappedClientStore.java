@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.IClient;
+import graphpack.local.IClientFactory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Keeps the client names of a service in an append-only file, clients are recreated (by the client factory)
+ * the first time they are asked for after a restart
+ * @author amitport
+ */
+public class MappedClientStore implements IClientStore, ICheckpointable {
+	final String serviceName;
+	final IClientFactory clientFactory;
+	final ConcurrentMap<String,IClient> clients = new ConcurrentHashMap<String,IClient>();
+	final Set<String> persisted = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	final NameLog log;
+
+	@Inject
+	public MappedClientStore(@Named("serviceName") String serviceName, DataDirectory directory, IClientFactory clientFactory,
+			IWriteAheadLog writeAheadLog) {
+		this.serviceName = serviceName;
+		this.clientFactory = clientFactory;
+		this.log = new NameLog(new File(directory.dir(), "clients.log"));
+		persisted.addAll(log.names());
+		writeAheadLog.register(this);
+	}
+
+	@Override
+	public void force() {
+		log.force();
+	}
+
+	@Override
+	public boolean contains(String clientName) {
+		return persisted.contains(clientName);
+	}
+
+	@Override
+	public void put(String clientName, IClient client) {
+		clients.put(clientName, client);
+		if (persisted.add(clientName)) log.append(clientName);
+	}
+
+	@Override
+	public IClient get(String clientName) {
+		IClient $ = clients.get(clientName);
+		if ($ != null || !persisted.contains(clientName)) return $;
+		$ = clientFactory.create(serviceName, clientName);
+		IClient other = clients.putIfAbsent(clientName, $);
+		return (other == null) ? $ : other;
+	}
+
+	@Override
+	public Collection<String> names() {
+		return Collections.unmodifiableSet(persisted);
+	}
+}
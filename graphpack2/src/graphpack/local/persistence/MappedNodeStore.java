@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.ClientLocation;
+import graphpack.INode;
+import graphpack.local.INodeFactory;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.inject.Inject;
+
+/**
+ * Keeps the node names of a client in an append-only file, nodes are recreated (by the node factory)
+ * the first time they are asked for after a restart, their edges are kept by the edge store
+ * @author amitport
+ */
+public class MappedNodeStore implements INodeStore, ICheckpointable {
+	final DataDirectory directory;
+	final INodeFactory nodeFactory;
+	final IWriteAheadLog writeAheadLog;
+	final ConcurrentMap<String,INode> nodes = new ConcurrentHashMap<String,INode>();
+	final Set<String> persisted = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	ClientLocation owner;
+	NameLog log;
+
+	@Inject
+	public MappedNodeStore(DataDirectory directory, INodeFactory nodeFactory, IWriteAheadLog writeAheadLog) {
+		this.directory = directory;
+		this.nodeFactory = nodeFactory;
+		this.writeAheadLog = writeAheadLog;
+	}
+
+	@Override
+	public void open(ClientLocation owner) {
+		this.owner = owner;
+		this.log = new NameLog(new File(directory.dir("clients", owner.getClientName()), "nodes.log"));
+		persisted.addAll(log.names());
+		writeAheadLog.register(this);
+	}
+
+	@Override
+	public void force() {
+		log.force();
+	}
+
+	@Override
+	public boolean contains(String nodeName) {
+		return persisted.contains(nodeName);
+	}
+
+	@Override
+	public void put(String nodeName, INode node) {
+		nodes.put(nodeName, node);
+		if (persisted.add(nodeName)) log.append(nodeName);
+	}
+
+	@Override
+	public INode get(String nodeName) {
+		INode $ = nodes.get(nodeName);
+		if ($ != null || !persisted.contains(nodeName)) return $;
+		$ = nodeFactory.create(owner.getServiceName(), owner.getClientName(), nodeName);
+		INode other = nodes.putIfAbsent(nodeName, $);
+		return (other == null) ? $ : other;
+	}
+
+	@Override
+	public Collection<String> names() {
+		return Collections.unmodifiableSet(persisted);
+	}
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.IClient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the clients of a service in memory
+ * @author amitport
+ */
+public class MemoryClientStore implements IClientStore {
+	final ConcurrentMap<String,IClient> clients = new ConcurrentHashMap<String,IClient>();
+
+	@Override
+	public boolean contains(String clientName) {
+		return clients.containsKey(clientName);
+	}
+
+	@Override
+	public void put(String clientName, IClient client) {
+		clients.put(clientName, client);
+	}
+
+	@Override
+	public IClient get(String clientName) {
+		return clients.get(clientName);
+	}
+
+	@Override
+	public Collection<String> names() {
+		return Collections.unmodifiableSet(clients.keySet());
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.Extensions;
+import graphpack.INodeLocator;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Splitter;
+import com.google.inject.Inject;
+
+/**
+ * Keeps the outgoing (and incoming) edges of a node in memory.
+ * Edges are appended to an array that is only ever grown by copying, so {@link #getOutgoingEdges()}
+ * returns a snapshot without copying and readers never block writers.
+ * Edge targets (and the sources of incoming edges) are located when the edge is added (so they must already exist).
+ * <p>
+ * Once a node has {@link #INDEX_THRESHOLD} edges they are also indexed by type and by the payload fields named
+ * by the {@value #INDEX_FIELDS} extension (a comma separated string or a collection of names), see {@link EdgeIndex}.
+ * @author amitport
+ */
+public class MemoryEdgeStore implements IEdgeStore {
+	public final static String INDEX_FIELDS = "edgeIndexFields";
+	/** smaller nodes are always scanned */
+	public final static int INDEX_THRESHOLD = 64;
+
+	final INodeLocator locator;
+	final String[] indexFields;
+	private volatile Edge[] edges = new Edge[4];
+	private volatile int size;
+	private volatile EdgeIndex index;
+	private volatile Edge[] incoming = new Edge[0];
+	private volatile int incomingSize;
+	private final Set<SerializableEdge> incomingKeys = new HashSet<SerializableEdge>();//by (source, num), guarded by incomingLock
+	private final Object incomingLock = new Object();
+	NodeLocation owner;
+
+	public MemoryEdgeStore(INodeLocator locator) {
+		this(locator, null);
+	}
+
+	@Inject
+	public MemoryEdgeStore(INodeLocator locator, @Nullable Extensions extensions) {
+		this.locator = locator;
+		this.indexFields = indexFields(extensions);
+	}
+
+	private static String[] indexFields(Extensions extensions) {
+		Object configured = (extensions == null) ? null : extensions.get(INDEX_FIELDS);
+		if (configured == null) return new String[0];
+		Iterable<?> names = (configured instanceof Iterable) ? (Iterable<?>) configured
+				: Splitter.on(',').trimResults().omitEmptyStrings().split(configured.toString());
+		List<String> $ = new ArrayList<String>();
+		for (Object name : names) $.add(name.toString());
+		return $.toArray(new String[$.size()]);
+	}
+
+	@Override
+	public void open(NodeLocation owner) {
+		this.owner = owner;
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges() {
+		int size = this.size;//read size first, the array it refers to is at least that long
+		return Collections.unmodifiableList(Arrays.asList(edges).subList(0, size));
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		int size = this.size;
+		Edge[] edges = this.edges;
+		EdgeIndex index = this.index;
+		int[] candidates = (index == null) ? null : index.candidates(selector, size);
+		if (candidates == null) return Collections.unmodifiableList(Arrays.asList(edges).subList(0, size));
+		Edge[] $ = new Edge[candidates.length];
+		for (int i = 0; i < $.length; i++) $[i] = edges[candidates[i]];
+		return Collections.unmodifiableList(Arrays.asList($));
+	}
+
+	@Override
+	public int outgoingCount() {
+		return size;
+	}
+
+	@Override
+	public synchronized long addOutgoingEdge(String sourceService, String sourceClient, String sourceNode, NodeLocation target, Payload payload) {
+		Edge e = new Edge(new NodeLocation(sourceService, sourceClient, sourceNode),
+				locator.locate(sourceService, sourceClient, target), size, payload);
+		Edge[] edges = this.edges;
+		if (size == edges.length) this.edges = edges = Arrays.copyOf(edges, size * 2);
+		edges[size] = e;
+		indexed(size);
+		return size++;
+	}
+
+	@Override
+	public synchronized long addOutgoingEdges(String sourceService, String sourceClient, String sourceNode, List<EdgeTuple> tuples) {
+		NodeLocation source = new NodeLocation(sourceService, sourceClient, sourceNode);
+		Edge[] edges = this.edges;
+		int first = this.size, size = first, newSize = size + tuples.size();
+		if (newSize > edges.length) this.edges = edges = Arrays.copyOf(edges, Math.max(newSize, size * 2));
+		for (EdgeTuple t : tuples) {
+			edges[size] = new Edge(source, locator.locate(sourceService, sourceClient, t.getTarget()), size, t.getPayload());
+			indexed(size);
+			size++;
+		}
+		this.size = size;//publishes the whole batch at once
+		return first;
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		int size = this.incomingSize;
+		return Collections.unmodifiableList(Arrays.asList(incoming).subList(0, size));
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> added) {
+		synchronized (incomingLock) {
+			Edge[] incoming = this.incoming;
+			int size = this.incomingSize, newSize = size + added.size();
+			if (newSize > incoming.length) this.incoming = incoming = Arrays.copyOf(incoming, Math.max(newSize, size * 2));
+			for (SerializableEdge e : added) {
+				if (!incomingKeys.add(e)) continue;//already added
+				incoming[size++] = Edge.incoming(locator.locate(owner.getServiceName(), owner.getClientName(), e.source), e);
+			}
+			this.incomingSize = size;
+		}
+	}
+
+	/** indexes edge {@code i} (which is about to be published), builds the index once the node is large enough */
+	private void indexed(int i) {
+		EdgeIndex index = this.index;
+		if (index != null) {
+			index.add(i, edges[i].serializableEdge.payload);
+		} else if (i + 1 >= INDEX_THRESHOLD) {
+			index = new EdgeIndex(indexFields);
+			for (int j = 0; j <= i; j++) index.add(j, edges[j].serializableEdge.payload);
+			this.index = index;
+		}
+	}
+}
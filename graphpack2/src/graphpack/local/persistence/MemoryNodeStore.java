@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.ClientLocation;
+import graphpack.INode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the nodes of a client in memory
+ * @author amitport
+ */
+public class MemoryNodeStore implements INodeStore {
+	final ConcurrentMap<String,INode> nodes = new ConcurrentHashMap<String,INode>();
+
+	@Override
+	public void open(ClientLocation owner) {}
+
+	@Override
+	public boolean contains(String nodeName) {
+		return nodes.containsKey(nodeName);
+	}
+
+	@Override
+	public void put(String nodeName, INode node) {
+		nodes.put(nodeName, node);
+	}
+
+	@Override
+	public INode get(String nodeName) {
+		return nodes.get(nodeName);
+	}
+
+	@Override
+	public Collection<String> names() {
+		return Collections.unmodifiableSet(nodes.keySet());
+	}
+}
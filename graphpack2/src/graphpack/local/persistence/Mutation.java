@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge.Payload;
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.codec.PayloadCodecs;
+import graphpack.local.Node;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A logged change of the graph, replaying a mutation that was already applied has no effect
+ * @author amitport
+ */
+public abstract class Mutation {
+	final static byte CREATE_CLIENT = 1, CREATE_NODE = 2, ADD_EDGE = 3, ADD_EDGES = 4, ADD_INCOMING_EDGES = 5;
+
+	abstract void write(DataOutput out) throws IOException;
+
+	/** applies this mutation to {@code service} unless it was already applied */
+	public abstract void replay(IService service);
+
+	static Mutation read(DataInput in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case CREATE_CLIENT:
+			return new CreateClient(in.readUTF());
+		case CREATE_NODE:
+			return new CreateNode(in.readUTF(), in.readUTF());
+		case ADD_EDGE:
+			return new AddEdge(EdgeTuple.readLocation(in), in.readLong(), EdgeTuple.readLocation(in), PayloadCodecs.read(in));
+		case ADD_EDGES:
+			NodeLocation source = EdgeTuple.readLocation(in);
+			long num = in.readLong();
+			int size = in.readInt();
+			List<EdgeTuple> edges = new ArrayList<EdgeTuple>(size);
+			for (int i = 0; i < size; i++) {
+				edges.add(new EdgeTuple(source, EdgeTuple.readLocation(in), PayloadCodecs.read(in)));
+			}
+			return new AddEdges(source, num, edges);
+		case ADD_INCOMING_EDGES:
+			NodeLocation target = EdgeTuple.readLocation(in);
+			int count = in.readInt();
+			List<SerializableEdge> incoming = new ArrayList<SerializableEdge>(count);
+			for (int i = 0; i < count; i++) {
+				NodeLocation from = EdgeTuple.readLocation(in);
+				incoming.add(new SerializableEdge(from, target, in.readLong(), PayloadCodecs.read(in)));
+			}
+			return new AddIncomingEdges(target, incoming);
+		default:
+			throw new IOException("unknown mutation " + type);
+		}
+	}
+
+	/*** static ***/
+
+	/** @return the number of {@code node}'s outgoing edges, counted by its store if it's a local node */
+	static int outgoingCount(INode node) {
+		return (node instanceof Node) ? ((Node) node).outgoingCount() : node.getOutgoingEdges().size();
+	}
+
+	/**
+	 * adds {@code e} to the incoming edges of its target if the target is of the same service, incoming edges of
+	 * local sources aren't logged (see {@link AddIncomingEdges}) so they are rebuilt when their sources' edges are replayed
+	 * (adding an incoming edge again has no effect)
+	 */
+	static void addLocalIncoming(IService service, SerializableEdge e) {
+		if (!e.source.getServiceName().equals(e.target.getServiceName())) return;
+		IClient client = service.client(e.target.getClientName());
+		INode target = (client == null) ? null : client.node(e.target.getNodeName());
+		if (target != null) target.addIncomingEdges(Collections.singletonList(e));
+	}
+
+	public static class CreateClient extends Mutation {
+		final String clientName;
+		public CreateClient(String clientName) {
+			this.clientName = clientName;
+		}
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeByte(CREATE_CLIENT);
+			out.writeUTF(clientName);
+		}
+		@Override
+		public void replay(IService service) {
+			if (service.client(clientName) == null) service.createClient(clientName);
+		}
+		@Override
+		public String toString() {
+			return "createClient " + clientName;
+		}
+	}
+
+	public static class CreateNode extends Mutation {
+		final String clientName, nodeName;
+		public CreateNode(String clientName, String nodeName) {
+			this.clientName = clientName;
+			this.nodeName = nodeName;
+		}
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeByte(CREATE_NODE);
+			out.writeUTF(clientName);
+			out.writeUTF(nodeName);
+		}
+		@Override
+		public void replay(IService service) {
+			IClient client = service.client(clientName);
+			if (client.node(nodeName) == null) client.createNode(nodeName);
+		}
+		@Override
+		public String toString() {
+			return "createNode " + clientName + "." + nodeName;
+		}
+	}
+
+	/**
+	 * carries the ordinal of the edge among its source's edges, so replaying it again is detected
+	 * @author amitport
+	 */
+	public static class AddEdge extends Mutation {
+		final NodeLocation source;
+		final long num;
+		final NodeLocation target;
+		final Payload payload;
+		public AddEdge(NodeLocation source, long num, NodeLocation target, Payload payload) {
+			this.source = source;
+			this.num = num;
+			this.target = target;
+			this.payload = payload;
+		}
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeByte(ADD_EDGE);
+			EdgeTuple.writeLocation(out, source);
+			out.writeLong(num);
+			EdgeTuple.writeLocation(out, target);
+			PayloadCodecs.write(out, payload);
+		}
+		@Override
+		public void replay(IService service) {
+			INode node = service.client(source.getClientName()).node(source.getNodeName());
+			int size = outgoingCount(node);
+			if (size > num) {//already applied, but its incoming edge may not be
+				addLocalIncoming(service, new SerializableEdge(source, target, num, payload));
+				return;
+			}
+			if (size < num) throw new IllegalStateException(source + " has " + size + " edges, can't replay edge " + num);
+			node.addOutgoingEdge(target, payload);
+		}
+		@Override
+		public String toString() {
+			return "addEdge " + source + "-" + num + "->" + target;
+		}
+	}
+
+	/**
+	 * a batch of edges of a single source, its first edge has ordinal {@code num}.
+	 * Replaying it adds only the edges that are missing (a batch may have been partially applied)
+	 * @author amitport
+	 */
+	public static class AddEdges extends Mutation {
+		final NodeLocation source;
+		final long num;
+		final List<EdgeTuple> edges;
+		public AddEdges(NodeLocation source, long num, List<EdgeTuple> edges) {
+			this.source = source;
+			this.num = num;
+			this.edges = edges;
+		}
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeByte(ADD_EDGES);
+			EdgeTuple.writeLocation(out, source);
+			out.writeLong(num);
+			out.writeInt(edges.size());
+			for (EdgeTuple e : edges) {
+				EdgeTuple.writeLocation(out, e.getTarget());
+				PayloadCodecs.write(out, e.getPayload());
+			}
+		}
+		@Override
+		public void replay(IService service) {
+			INode node = service.client(source.getClientName()).node(source.getNodeName());
+			int size = outgoingCount(node);
+			if (size < num) throw new IllegalStateException(source + " has " + size + " edges, can't replay edge " + num);
+			int applied = (int) Math.min(size - num, edges.size());
+			for (int i = 0; i < applied; i++) {
+				EdgeTuple e = edges.get(i);
+				addLocalIncoming(service, new SerializableEdge(source, e.getTarget(), num + i, e.getPayload()));
+			}
+			if (applied < edges.size()) node.addOutgoingEdges(edges.subList(applied, edges.size()));
+		}
+		@Override
+		public String toString() {
+			return "addEdges " + source + "-" + num + "..." + (num + edges.size() - 1);
+		}
+	}
+
+	/**
+	 * incoming edges of a single target whose sources are of other services (sent by the services of their sources),
+	 * replaying it again has no effect as the edge stores ignore incoming edges they already have
+	 * @author amitport
+	 */
+	public static class AddIncomingEdges extends Mutation {
+		final NodeLocation target;
+		final List<SerializableEdge> edges;
+		public AddIncomingEdges(NodeLocation target, List<SerializableEdge> edges) {
+			this.target = target;
+			this.edges = edges;
+		}
+		@Override
+		void write(DataOutput out) throws IOException {
+			out.writeByte(ADD_INCOMING_EDGES);
+			EdgeTuple.writeLocation(out, target);
+			out.writeInt(edges.size());
+			for (SerializableEdge e : edges) {
+				EdgeTuple.writeLocation(out, e.source);
+				out.writeLong(e.num);
+				PayloadCodecs.write(out, e.payload);
+			}
+		}
+		@Override
+		public void replay(IService service) {
+			service.client(target.getClientName()).node(target.getNodeName()).addIncomingEdges(edges);
+		}
+		@Override
+		public String toString() {
+			return "addIncomingEdges " + edges.size() + "->" + target;
+		}
+	}
+}
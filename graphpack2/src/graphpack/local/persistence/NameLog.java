@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only file of names, a partially written last name (e.g. after a crash) is dropped when the log is opened
+ * @author amitport
+ */
+final class NameLog {
+	final RandomAccessFile file;
+	final List<String> names = new ArrayList<String>();
+
+	NameLog(File f) {
+		try {
+			this.file = new RandomAccessFile(f, "rw");
+			long good = 0;
+			try {
+				while (good < file.length()) {
+					String name = file.readUTF();
+					names.add(name);
+					good = file.getFilePointer();
+				}
+			} catch (EOFException e) {
+				file.setLength(good);
+			}
+			file.seek(good);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** @return the names read when this log was opened */
+	List<String> names() {
+		return names;
+	}
+
+	synchronized void force() {
+		try {
+			file.getFD().sync();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	synchronized void append(String name) {
+		try {
+			file.writeUTF(name);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.IService;
+
+/**
+ * Logs nothing, mutations are as durable as the stores make them (the default)
+ * @author amitport
+ */
+public class NoWriteAheadLog implements IWriteAheadLog {
+	@Override
+	public boolean isEnabled() {return false;}
+
+	@Override
+	public long log(Mutation mutation) {return 0;}
+
+	@Override
+	public void applied(long lsn) {}
+
+	@Override
+	public void register(ICheckpointable store) {}
+
+	@Override
+	public void recover(IService service) {}
+
+	@Override
+	public void checkpoint() {}
+
+	@Override
+	public void close() {}
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.INode;
+import graphpack.NodeLocation;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * The nodes of a service found by the {@link CachingNodeStore}s, every node weighs one
+ * @author amitport
+ */
+@Singleton
+public class NodeCache extends ClockCache<NodeLocation,INode> {
+	@Inject
+	public NodeCache(@Named("nodeCacheCapacity") long capacity) {
+		super(capacity);
+	}
+}
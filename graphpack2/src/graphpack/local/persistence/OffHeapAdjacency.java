@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge.Payload;
+import graphpack.EdgeTuple;
+import graphpack.INode;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.codec.PayloadCodecs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * The outgoing edges of all the nodes of a service, kept off-heap in compressed sparse row form.
+ * <p>
+ * Every node location (source or target) gets a dense int id. Edges are kept in two parts:
+ * <ul>
+ * <li>a base CSR - per node offsets into columns of target ids, edge nums and payload offsets</li>
+ * <li>an append-only delta - edges added since the base was built, chained per source node</li>
+ * </ul>
+ * Once the delta grows large relative to the base both are merged into a new base ({@link #compact()}),
+ * every base (and its delta) is a new generation.
+ * Payloads are encoded (see {@link PayloadCodecs}) into an append-only blob shared by both parts (empty payloads take no space).
+ * <p>
+ * Readers take a {@link Snapshot} of a node's edges, snapshots stay valid after later additions and compactions.
+ * <p>
+ * The reverse adjacency is a second adjacency ({@link #incoming()}) whose lists are kept by target: there the
+ * "target" column holds the sources of the edges and the nums are those of the edges among their source's edges.
+ * <p>
+ * Where the columns are kept is up to a {@link Storage} (direct memory by default, see {@link MappedAdjacency}).
+ * @author amitport
+ */
+@Singleton
+public class OffHeapAdjacency {
+	/** the delta is merged into the base once it is larger than this and than a quarter of the base */
+	public final static int DEFAULT_MIN_DELTA = 1 << 16;
+	final static long NO_PAYLOAD = -1;
+
+	final int minDelta;
+	final Storage storage;
+	final ReadWriteLock lock = new ReentrantReadWriteLock();
+	final ConcurrentMap<NodeLocation,Integer> ids = new ConcurrentHashMap<NodeLocation,Integer>();
+	private volatile NodeLocation[] locations = new NodeLocation[16];
+	private volatile INode[] resolved = new INode[16];//by location id, see resolve
+	int nodes;
+	final OffHeapBuffer payloads;
+	int generation;
+	Base base;
+	Delta delta;
+	private OffHeapAdjacency incoming;
+	/* the (source id, num) keys of the edges of every target of a reverse adjacency that got edges since it was
+	 * opened, loaded from the target's list on first use, guarded by the write lock */
+	private final Map<Integer,Set<Long>> incomingKeys = new HashMap<Integer,Set<Long>>();
+
+	@Inject
+	public OffHeapAdjacency() {
+		this(DEFAULT_MIN_DELTA);
+	}
+
+	public OffHeapAdjacency(int minDelta) {
+		this(minDelta, new Storage());
+		initEmpty();
+	}
+
+	OffHeapAdjacency(int minDelta, Storage storage) {
+		this.minDelta = minDelta;
+		this.storage = storage;
+		this.payloads = storage.buffer("payloads", -1, 22);//4MB segments, shared by all generations
+	}
+
+	/** starts with no edges (subclasses may restore their state instead) */
+	void initEmpty() {
+		base = new Base(storage, 0);
+		delta = new Delta(storage, 0);
+	}
+
+	/** @return the id of {@code location} (assigned on first use) */
+	public int id(NodeLocation location) {
+		Integer $ = ids.get(location);
+		if ($ != null) return $;
+		lock.writeLock().lock();
+		try {
+			$ = ids.get(location);
+			if ($ != null) return $;
+			$ = addLocation(location);
+			storage.locationAdded(this, $, location);
+			return $;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** assigns the next id to {@code location} */
+	int addLocation(NodeLocation location) {
+		NodeLocation[] locations = this.locations;
+		if (nodes == locations.length) this.locations = locations = Arrays.copyOf(locations, nodes * 2);
+		locations[nodes] = location;
+		ids.put(location, nodes);
+		return nodes++;
+	}
+
+	public NodeLocation location(int id) {
+		return locations[id];
+	}
+
+	/** @return the node {@link #resolve resolved} for {@code id} or {@code null} */
+	public INode resolved(int id) {
+		INode[] resolved = this.resolved;
+		return (id < resolved.length) ? resolved[id] : null;
+	}
+
+	/**
+	 * caches the node at location {@code id}, so reading an edge needs no lookup by name.
+	 * Racing writers may lose an entry, which is then simply resolved again
+	 */
+	public void resolve(int id, INode node) {
+		INode[] resolved = this.resolved;
+		if (id >= resolved.length) this.resolved = resolved = Arrays.copyOf(resolved, Math.max(id + 1, resolved.length * 2));
+		resolved[id] = node;
+	}
+
+	/** appends an edge from {@code source} to {@code target}, @return the edge's num (its index among the source's edges) */
+	public long add(int source, NodeLocation target, Payload payload) {
+		int targetId = id(target);
+		byte[] bytes = (payload == null || payload == Payload.EMPTY) ? null : PayloadCodecs.toBytes(payload);
+		lock.writeLock().lock();
+		try {
+			long $ = base.count(source) + delta.count(source);
+			delta.add(source, targetId, $, (bytes == null) ? NO_PAYLOAD : payloads.appendBytes(bytes));
+			storage.edgeAdded(this);
+			if (delta.size > minDelta && delta.size > base.edges / 4) compactLocked();
+			return $;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * appends the targets and payloads of {@code edges} to {@code source}'s edges under a single lock
+	 * (targets are resolved and payloads serialized before the lock is taken),
+	 * @return the num of the first edge
+	 */
+	public long addAll(int source, List<EdgeTuple> edges) {
+		int[] targetIds = new int[edges.size()];
+		byte[][] bytes = new byte[edges.size()][];
+		for (int i = 0; i < targetIds.length; i++) {
+			EdgeTuple e = edges.get(i);
+			targetIds[i] = id(e.getTarget());
+			if (e.getPayload() != Payload.EMPTY) bytes[i] = PayloadCodecs.toBytes(e.getPayload());
+		}
+		lock.writeLock().lock();
+		try {
+			long $ = base.count(source) + delta.count(source);
+			for (int i = 0; i < targetIds.length; i++) {
+				delta.add(source, targetIds[i], $ + i, (bytes[i] == null) ? NO_PAYLOAD : payloads.appendBytes(bytes[i]));
+			}
+			storage.edgeAdded(this);
+			if (delta.size > minDelta && delta.size > base.edges / 4) compactLocked();
+			return $;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * appends {@code edges} (incoming edges of {@code target}, with their nums) to {@code target}'s list,
+	 * skipping edges whose source and num are already there (looked up in a per target hash set, not in the list)
+	 */
+	public void addIncoming(int target, List<SerializableEdge> edges) {
+		int[] sourceIds = new int[edges.size()];
+		byte[][] bytes = new byte[edges.size()][];
+		for (int i = 0; i < sourceIds.length; i++) {
+			SerializableEdge e = edges.get(i);
+			if (e.num < 0 || e.num > Integer.MAX_VALUE) throw new IllegalArgumentException("bad edge num " + e.num);
+			sourceIds[i] = id(e.source);
+			if (e.payload != null && e.payload != Payload.EMPTY) bytes[i] = PayloadCodecs.toBytes(e.payload);
+		}
+		lock.writeLock().lock();
+		try {
+			Set<Long> present = presentLocked(target);
+			for (int i = 0; i < sourceIds.length; i++) {
+				if (!present.add(key(sourceIds[i], edges.get(i).num))) continue;//already added
+				delta.add(target, sourceIds[i], edges.get(i).num, (bytes[i] == null) ? NO_PAYLOAD : payloads.appendBytes(bytes[i]));
+			}
+			storage.edgeAdded(this);
+			if (delta.size > minDelta && delta.size > base.edges / 4) compactLocked();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** @return the keys (see {@link #key}) of the edges of {@code target} */
+	private Set<Long> presentLocked(int target) {
+		Set<Long> $ = incomingKeys.get(target);
+		if ($ == null) {
+			$ = new HashSet<Long>();
+			Snapshot snapshot = new Snapshot(base, target, delta);
+			for (int i = 0; i < snapshot.size(); i++) $.add(key(snapshot.targetId(i), snapshot.num(i)));
+			incomingKeys.put(target, $);
+		}
+		return $;
+	}
+
+	/** @return the reverse adjacency of this adjacency (created on first use) */
+	public synchronized OffHeapAdjacency incoming() {
+		if (incoming == null) incoming = newIncoming();
+		return incoming;
+	}
+
+	/** @return the reverse adjacency {@link #incoming()} returns, kept the same way as this one */
+	OffHeapAdjacency newIncoming() {
+		return new OffHeapAdjacency(minDelta);
+	}
+
+	/** @return the reverse adjacency if it was already used, or {@code null} */
+	synchronized OffHeapAdjacency incomingIfUsed() {
+		return incoming;
+	}
+
+	/** @return the edges of {@code source} as of now */
+	public Snapshot snapshot(int source) {
+		lock.readLock().lock();
+		try {
+			return new Snapshot(base, source, delta);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return the number of {@code source}'s edges (without a snapshot of them) */
+	public int count(int source) {
+		lock.readLock().lock();
+		try {
+			return (int) (base.count(source) + delta.count(source));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** merges the delta into a new base */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			compactLocked();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void compactLocked() {
+		if (delta.size == 0) return;
+		Base oldBase = base;
+		Delta oldDelta = delta;
+		generation++;
+		base = new Base(storage, generation, oldBase, oldDelta, nodes);
+		delta = new Delta(storage, generation);
+		storage.compacted(this, oldBase, oldDelta);
+	}
+
+	public long edgeCount() {
+		lock.readLock().lock();
+		try {
+			return base.edges + delta.size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return the off-heap bytes held (including the free space of partially used segments) */
+	public long offHeapBytes() {
+		lock.readLock().lock();
+		try {
+			return base.offHeapBytes() + delta.offHeapBytes() + payloads.capacity();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	Payload payload(long offset) {
+		if (offset == NO_PAYLOAD) return Payload.EMPTY;
+		return PayloadCodecs.fromBytes(payloads.getBytes(offset));
+	}
+
+	/*** static ***/
+
+	/** @return {@code source} and {@code num} (an index of a list of edges, so it fits in an int) in a single long */
+	private static long key(int source, long num) {
+		return ((long) source << 32) | num;
+	}
+
+	/**
+	 * allocates the columns of an adjacency and is told about every change (all calls are made under the write lock)
+	 * @author amitport
+	 */
+	static class Storage {
+		/** @return the (empty) buffer of {@code column} of {@code generation} (-1 for columns shared by all generations) */
+		OffHeapBuffer buffer(String column, int generation, int segmentBits) {
+			return new OffHeapBuffer(segmentBits);
+		}
+		void locationAdded(OffHeapAdjacency adjacency, int id, NodeLocation location) {}
+		void edgeAdded(OffHeapAdjacency adjacency) {}
+		/** the base and delta of the previous generation were replaced (but may still be read by snapshots) */
+		void compacted(OffHeapAdjacency adjacency, Base oldBase, Delta oldDelta) {}
+	}
+
+	/**
+	 * an immutable CSR: the edges of node {@code i} are at {@code [offsets[i], offsets[i+1])} of the edge columns
+	 * @author amitport
+	 */
+	static final class Base {
+		final int generation;
+		final int nodes;
+		final long edges;
+		final OffHeapBuffer offsets;//long per node + 1
+		final OffHeapBuffer targets;//int per edge
+		final OffHeapBuffer nums;//long per edge
+		final OffHeapBuffer payloads;//long per edge
+
+		/** an empty base */
+		Base(Storage storage, int generation) {
+			this(storage, generation, 0, 0);
+			offsets.appendLong(0);
+		}
+
+		/** a base of {@code generation} whose columns are already filled (e.g. persisted) */
+		Base(Storage storage, int generation, int nodes, long edges) {
+			this.generation = generation;
+			this.nodes = nodes;
+			this.edges = edges;
+			this.offsets = storage.buffer("offsets", generation, OffHeapBuffer.segmentBitsFor((nodes + 1) * 8L));
+			this.targets = storage.buffer("targets", generation, OffHeapBuffer.segmentBitsFor(edges * 4));
+			this.nums = storage.buffer("nums", generation, OffHeapBuffer.segmentBitsFor(edges * 8));
+			this.payloads = storage.buffer("payloadOffsets", generation, OffHeapBuffer.segmentBitsFor(edges * 8));
+		}
+
+		/** merges {@code old} with {@code delta} */
+		Base(Storage storage, int generation, Base old, Delta delta, int nodes) {
+			this(storage, generation, nodes, old.edges + delta.size);
+			targets.ensure(edges * 4);
+			nums.ensure(edges * 8);
+			payloads.ensure(edges * 8);
+			long at = 0;
+			offsets.appendLong(0);
+			for (int n = 0; n < nodes; n++) {
+				for (long i = old.from(n), to = old.to(n); i < to; i++, at++) {
+					targets.putInt(at * 4, old.targets.getInt(i * 4));
+					nums.putLong(at * 8, old.nums.getLong(i * 8));
+					payloads.putLong(at * 8, old.payloads.getLong(i * 8));
+				}
+				for (int r : delta.records(n)) {
+					targets.putInt(at * 4, delta.targets.getInt(r * 4L));
+					nums.putLong(at * 8, delta.nums.getLong(r * 8L));
+					payloads.putLong(at * 8, delta.payloads.getLong(r * 8L));
+					at++;
+				}
+				offsets.appendLong(at);
+			}
+			targets.setSize(edges * 4);
+			nums.setSize(edges * 8);
+			payloads.setSize(edges * 8);
+		}
+
+		/** marks all the columns as filled */
+		Base filled() {
+			offsets.setSize((nodes + 1) * 8L);
+			targets.setSize(edges * 4);
+			nums.setSize(edges * 8);
+			payloads.setSize(edges * 8);
+			return this;
+		}
+
+		long from(int node) {
+			return (node < nodes) ? offsets.getLong(node * 8L) : 0;
+		}
+
+		long to(int node) {
+			return (node < nodes) ? offsets.getLong((node + 1) * 8L) : 0;
+		}
+
+		long count(int node) {
+			return to(node) - from(node);
+		}
+
+		OffHeapBuffer[] columns() {
+			return new OffHeapBuffer[]{offsets, targets, nums, payloads};
+		}
+
+		long offHeapBytes() {
+			return offsets.capacity() + targets.capacity() + nums.capacity() + payloads.capacity();
+		}
+	}
+
+	/**
+	 * edges appended since the base was built, each record points to the previous record of the same source
+	 * @author amitport
+	 */
+	static final class Delta {
+		final static int[] NONE = new int[0];
+		final static int SEGMENT_BITS = 16;
+
+		final int generation;
+		final OffHeapBuffer sources;//int per record
+		final OffHeapBuffer targets;//int per record
+		final OffHeapBuffer nums;//long per record
+		final OffHeapBuffer payloads;//long per record
+		final OffHeapBuffer previous;//int per record
+		int size;
+		int[] last = new int[0], counts = new int[0];//by source
+
+		Delta(Storage storage, int generation) {
+			this.generation = generation;
+			this.sources = storage.buffer("deltaSources", generation, SEGMENT_BITS);
+			this.targets = storage.buffer("deltaTargets", generation, SEGMENT_BITS);
+			this.nums = storage.buffer("deltaNums", generation, SEGMENT_BITS);
+			this.payloads = storage.buffer("deltaPayloadOffsets", generation, SEGMENT_BITS);
+			this.previous = storage.buffer("deltaPrevious", generation, SEGMENT_BITS);
+		}
+
+		/** marks the first {@code size} records of the columns as filled (e.g. persisted) and re-chains them */
+		Delta filled(int size) {
+			sources.setSize(size * 4L);
+			targets.setSize(size * 4L);
+			nums.setSize(size * 8L);
+			payloads.setSize(size * 8L);
+			previous.setSize(size * 4L);
+			for (int r = 0; r < size; r++) {
+				int source = sources.getInt(r * 4L);
+				grow(source);
+				last[source] = r;
+				counts[source]++;
+			}
+			this.size = size;
+			return this;
+		}
+
+		void add(int source, int target, long num, long payload) {
+			grow(source);
+			sources.appendInt(source);
+			targets.appendInt(target);
+			nums.appendLong(num);
+			payloads.appendLong(payload);
+			previous.appendInt(last[source]);
+			last[source] = size;
+			counts[source]++;
+			size++;
+		}
+
+		private void grow(int source) {
+			if (source < counts.length) return;
+			int length = Math.max(source + 1, counts.length * 2);
+			int oldLength = last.length;
+			last = Arrays.copyOf(last, length);
+			counts = Arrays.copyOf(counts, length);
+			Arrays.fill(last, oldLength, length, -1);
+		}
+
+		int count(int source) {
+			return (source < counts.length) ? counts[source] : 0;
+		}
+
+		/** @return the records of {@code source} in insertion order */
+		int[] records(int source) {
+			int n = count(source);
+			if (n == 0) return NONE;
+			int[] $ = new int[n];
+			for (int i = n - 1, r = last[source]; i >= 0; i--, r = previous.getInt(r * 4L)) $[i] = r;
+			return $;
+		}
+
+		OffHeapBuffer[] columns() {
+			return new OffHeapBuffer[]{sources, targets, nums, payloads, previous};
+		}
+
+		long offHeapBytes() {
+			return sources.capacity() + targets.capacity() + nums.capacity() + payloads.capacity() + previous.capacity();
+		}
+	}
+
+	/**
+	 * the edges of a single node at some point in time, read straight from the off-heap columns
+	 * @author amitport
+	 */
+	public final class Snapshot {
+		final Base base;
+		final long from;
+		final int baseCount;
+		final Delta delta;
+		final int[] records;
+
+		Snapshot(Base base, int source, Delta delta) {
+			this.base = base;
+			this.from = base.from(source);
+			this.baseCount = (int) base.count(source);
+			this.delta = delta;
+			this.records = delta.records(source);
+		}
+
+		public int size() {
+			return baseCount + records.length;
+		}
+
+		public NodeLocation target(int i) {
+			return location(targetId(i));
+		}
+
+		public int targetId(int i) {
+			if (i < baseCount) return base.targets.getInt((from + i) * 4);
+			return delta.targets.getInt(records[i - baseCount] * 4L);
+		}
+
+		public long num(int i) {
+			if (i < baseCount) return base.nums.getLong((from + i) * 8);
+			return delta.nums.getLong(records[i - baseCount] * 8L);
+		}
+
+		public Payload payload(int i) {
+			if (i < baseCount) return OffHeapAdjacency.this.payload(base.payloads.getLong((from + i) * 8));
+			return OffHeapAdjacency.this.payload(delta.payloads.getLong(records[i - baseCount] * 8L));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A growable, long addressed, off-heap byte array made of direct buffer segments
+ * (a single buffer is limited to 2GB). Values are accessed with absolute reads and writes,
+ * so concurrent readers never interfere; writers must be externally synchronized.
+ * Ints and longs are aligned to their size so they never cross a segment boundary.
+ * Subclasses may back segments by something else than heap allocated memory (see {@link #allocate(int)}).
+ * @author amitport
+ */
+class OffHeapBuffer {
+	/** 64MB segments */
+	final static int DEFAULT_SEGMENT_BITS = 26;
+
+	final int segmentBits;
+	final long segmentMask;
+	private volatile ByteBuffer[] segments = new ByteBuffer[0];
+	private long size;//bytes appended so far
+
+	OffHeapBuffer() {
+		this(DEFAULT_SEGMENT_BITS);
+	}
+
+	OffHeapBuffer(int segmentBits) {
+		this.segmentBits = segmentBits;
+		this.segmentMask = (1L << segmentBits) - 1;
+	}
+
+	/** @return the segment size (in bits) of a buffer that needs no larger segments than {@code capacity} bytes */
+	static int segmentBitsFor(long capacity) {
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(capacity - 1, 1));
+		return Math.max(12, Math.min(DEFAULT_SEGMENT_BITS, bits));
+	}
+
+	/** makes sure bytes up to (not including) {@code capacity} can be written */
+	void ensure(long capacity) {
+		ByteBuffer[] segments = this.segments;
+		long needed = (capacity + segmentMask) >>> segmentBits;
+		if (needed <= segments.length) return;
+		ByteBuffer[] $ = Arrays.copyOf(segments, (int) needed);
+		for (int i = segments.length; i < $.length; i++) {
+			$[i] = allocate(i).order(ByteOrder.nativeOrder());
+		}
+		this.segments = $;
+	}
+
+	/** @return a new segment (of {@code 1 << segmentBits} bytes) */
+	protected ByteBuffer allocate(int index) {
+		return ByteBuffer.allocateDirect(1 << segmentBits);
+	}
+
+	long size() {return size;}
+
+	/** sets the number of bytes appended so far (e.g. when reopening persisted segments) */
+	void setSize(long size) {
+		ensure(size);
+		this.size = size;
+	}
+
+	/** @return the off-heap bytes held */
+	long capacity() {return (long) segments.length << segmentBits;}
+
+	int getInt(long pos) {
+		return segments[(int) (pos >>> segmentBits)].getInt((int) (pos & segmentMask));
+	}
+
+	void putInt(long pos, int value) {
+		segments[(int) (pos >>> segmentBits)].putInt((int) (pos & segmentMask), value);
+	}
+
+	long getLong(long pos) {
+		return segments[(int) (pos >>> segmentBits)].getLong((int) (pos & segmentMask));
+	}
+
+	void putLong(long pos, long value) {
+		segments[(int) (pos >>> segmentBits)].putLong((int) (pos & segmentMask), value);
+	}
+
+	/** @return the position of the appended int */
+	long appendInt(int value) {
+		long $ = size;
+		ensure($ + 4);
+		putInt($, value);
+		size += 4;
+		return $;
+	}
+
+	/** @return the position of the appended long */
+	long appendLong(long value) {
+		long $ = size;
+		ensure($ + 8);
+		putLong($, value);
+		size += 8;
+		return $;
+	}
+
+	/** appends {@code bytes} prefixed by their length, @return the position of the length */
+	long appendBytes(byte[] bytes) {
+		long $ = appendInt(bytes.length);
+		ensure(size + bytes.length);
+		for (int done = 0; done < bytes.length; ) {
+			ByteBuffer segment = segments[(int) (size >>> segmentBits)].duplicate();
+			segment.position((int) (size & segmentMask));
+			int n = Math.min(bytes.length - done, segment.remaining());
+			segment.put(bytes, done, n);
+			done += n;
+			size += n;
+		}
+		size = (size + 3) & ~3L;//keep the next length prefix aligned
+		return $;
+	}
+
+	/** @return the position following the bytes appended at {@code pos} by {@link #appendBytes} */
+	long skipBytes(long pos) {
+		return (pos + 4 + getInt(pos) + 3) & ~3L;
+	}
+
+	/** @return the bytes appended at {@code pos} by {@link #appendBytes} */
+	byte[] getBytes(long pos) {
+		byte[] $ = new byte[getInt(pos)];
+		pos += 4;
+		for (int done = 0; done < $.length; ) {
+			ByteBuffer segment = segments[(int) (pos >>> segmentBits)].duplicate();
+			segment.position((int) (pos & segmentMask));
+			int n = Math.min($.length - done, segment.remaining());
+			segment.get($, done, n);
+			done += n;
+			pos += n;
+		}
+		return $;
+	}
+}
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.local.persistence;
+
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.INode;
+import graphpack.INodeLocator;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.google.inject.Inject;
+
+/**
+ * The outgoing edges of a node, kept in the service wide {@link OffHeapAdjacency} (and its incoming edges, in the
+ * adjacency's {@link OffHeapAdjacency#incoming() reverse adjacency}).
+ * Only the owner's id is held on-heap, {@link Edge} objects are materialized when the returned list is read
+ * (and are not retained). Targets are resolved by their id in the adjacency, located by name only the first time.
+ * @author amitport
+ */
+public class OffHeapEdgeStore implements IEdgeStore {
+	final OffHeapAdjacency adjacency;
+	final INodeLocator locator;
+	private NodeLocation owner;
+	private int ownerId;
+	private OffHeapAdjacency incoming;//the reverse adjacency, opened on first use
+	private int incomingId;
+
+	@Inject
+	public OffHeapEdgeStore(OffHeapAdjacency adjacency, INodeLocator locator) {
+		this.adjacency = adjacency;
+		this.locator = locator;
+	}
+
+	@Override
+	public void open(NodeLocation owner) {
+		this.owner = owner;
+		this.ownerId = adjacency.id(owner);
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges() {
+		return new EdgeList(owner, adjacency.snapshot(ownerId));
+	}
+
+	/** there are no off-heap indexes, every edge is a candidate */
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		return getOutgoingEdges();
+	}
+
+	@Override
+	public int outgoingCount() {
+		return adjacency.count(ownerId);
+	}
+
+	@Override
+	public long addOutgoingEdge(String sourceService, String sourceClient, String sourceNode, NodeLocation target, Payload payload) {
+		return adjacency.add(ownerId, target, payload);
+	}
+
+	@Override
+	public long addOutgoingEdges(String sourceService, String sourceClient, String sourceNode, List<EdgeTuple> edges) {
+		return adjacency.addAll(ownerId, edges);
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		OffHeapAdjacency incoming = incoming();
+		return new IncomingEdgeList(incoming, incoming.snapshot(incomingId));
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		incoming().addIncoming(incomingId, edges);
+	}
+
+	private synchronized OffHeapAdjacency incoming() {
+		if (incoming == null) {
+			OffHeapAdjacency $ = adjacency.incoming();
+			incomingId = $.id(owner);
+			incoming = $;
+		}
+		return incoming;
+	}
+
+	/*** static ***/
+
+	/**
+	 * materializes edges of a snapshot on access
+	 * @author amitport
+	 */
+	class EdgeList extends AbstractList<Edge> implements RandomAccess {
+		final NodeLocation source;
+		final OffHeapAdjacency.Snapshot snapshot;
+		EdgeList(NodeLocation source, OffHeapAdjacency.Snapshot snapshot) {
+			this.source = source;
+			this.snapshot = snapshot;
+		}
+		@Override
+		public Edge get(int i) {
+			if (i < 0 || i >= snapshot.size()) throw new IndexOutOfBoundsException("" + i);
+			int targetId = snapshot.targetId(i);
+			INode target = adjacency.resolved(targetId);
+			if (target == null) {
+				target = locator.locate(source.getServiceName(), source.getClientName(), adjacency.location(targetId));
+				adjacency.resolve(targetId, target);
+			}
+			return new Edge(source, target, snapshot.num(i), snapshot.payload(i));
+		}
+		@Override
+		public int size() {
+			return snapshot.size();
+		}
+	}
+
+	/**
+	 * materializes incoming edges of a snapshot of the reverse adjacency on access
+	 * @author amitport
+	 */
+	class IncomingEdgeList extends AbstractList<Edge> implements RandomAccess {
+		final OffHeapAdjacency incoming;
+		final OffHeapAdjacency.Snapshot snapshot;
+		IncomingEdgeList(OffHeapAdjacency incoming, OffHeapAdjacency.Snapshot snapshot) {
+			this.incoming = incoming;
+			this.snapshot = snapshot;
+		}
+		@Override
+		public Edge get(int i) {
+			if (i < 0 || i >= snapshot.size()) throw new IndexOutOfBoundsException("" + i);
+			int sourceId = snapshot.targetId(i);
+			INode source = incoming.resolved(sourceId);
+			if (source == null) {
+				source = locator.locate(owner.getServiceName(), owner.getClientName(), incoming.location(sourceId));
+				incoming.resolve(sourceId, source);
+			}
+			return Edge.incoming(source, new SerializableEdge(incoming.location(sourceId), owner, snapshot.num(i), snapshot.payload(i)));
+		}
+		@Override
+		public int size() {
+			return snapshot.size();
+		}
+	}
+}
@@ -0,0 +1,459 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.matching;
+
+import graphpack.EdgeSelector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMultiset;
+
+/**
+ * A matcher tree compiled into a flat table.
+ * <p>
+ * Every matcher of the tree gets an instruction ({@code EDGE}, {@code DONE}, {@code FAIL}, {@code OR}, {@code CONS}
+ * or {@code REPEAT}) that points at the instructions of its sub-matchers. The table is immutable and shared by
+ * every state of the traversal, a state is a small tree of {@link Frame}s (see {@link CompiledMatcher}) that
+ * follows exactly the rules of the matcher tree, so both produce the same results with the same multiplicities.
+ * <p>
+ * The part of the pattern that wasn't reached yet is a single {@link Frame#AT} frame (instruction + the results
+ * it was conformed to), so conforming it costs one product per edge instead of a product (and a new matcher)
+ * per edge of the rest of the pattern, its leaves are only materialized when they are reached.
+ * @author amitport
+ */
+public final class Automaton implements Serializable {
+	private static final long serialVersionUID = -3519236357251016227L;
+
+	final static byte EDGE = 0, DONE = 1, FAIL = 2, OR = 3, CONS = 4, REPEAT = 5;
+
+	final byte[] ops;
+	final int[] arg1, arg2;//sub-matchers of OR and CONS (only arg1 for REPEAT)
+	final int[] min, max;//of REPEAT
+	final Object[] operands;//Matcher.Edge for EDGE, ResultSet for DONE
+	/* EDGE and DONE whose results are a single result with only unassigned names, merging them never fails */
+	final boolean[] neutral;
+	final String source;
+
+	private Automaton(Compiler c, String source) {
+		int size = c.ops.size();
+		this.ops = new byte[size];
+		this.arg1 = new int[size];
+		this.arg2 = new int[size];
+		this.min = new int[size];
+		this.max = new int[size];
+		this.neutral = new boolean[size];
+		this.operands = c.operands.toArray();
+		for (int i = 0; i < size; i++) {
+			ops[i] = c.ops.get(i);
+			arg1[i] = c.arg1.get(i);
+			arg2[i] = c.arg2.get(i);
+			min[i] = c.min.get(i);
+			max[i] = c.max.get(i);
+			if (ops[i] == EDGE || ops[i] == DONE) neutral[i] = isNeutral(initial(i));
+		}
+		this.source = source;
+	}
+
+	/** @return {@code matcher} compiled into an automaton, or {@code null} if it contains unknown matchers */
+	public static Automaton compile(Matcher matcher) {
+		Compiler c = new Compiler();
+		if (c.emit(matcher) < 0) return null;
+		return new Automaton(c, matcher.toString());
+	}
+
+	/** @return the initial state of this automaton */
+	public CompiledMatcher start() {
+		return new CompiledMatcher(this, at(0, null, null));
+	}
+
+	/**
+	 * @param conformed the product of the results the matcher at {@code pc} was conformed to, {@code null} if none
+	 * @param previous the same product without the last results, {@code null} if it was conformed at most once
+	 * @return the matcher at {@code pc} conformed to {@code conformed}
+	 */
+	public Frame at(int pc, ResultSet conformed, ResultSet previous) {
+		check(pc);
+		if (ops[pc] == REPEAT) return new Frame(Frame.REPEAT, pc, conformed, previous, null, null, null, min[pc], max[pc]);
+		return new Frame(Frame.AT, pc, conformed, previous, null, null, null, 0, 0);
+	}
+
+	/** @return the repeat at {@code pc} conformed to {@code conformed} (see {@link #at}) with {@code min..max} repetitions left */
+	public Frame repeat(int pc, ResultSet conformed, ResultSet previous, int min, int max) {
+		check(pc);
+		if (ops[pc] != REPEAT) throw new IllegalArgumentException("no repeat at " + pc + " in " + this);
+		return new Frame(Frame.REPEAT, pc, conformed, previous, null, null, null, min, max);
+	}
+
+	private void check(int pc) {
+		if (pc < 0 || pc >= ops.length) throw new IllegalArgumentException("no instruction " + pc + " in " + this);
+	}
+
+	/** @return the results of the EDGE or DONE at {@code pc} before it was conformed to anything */
+	ResultSet initial(int pc) {
+		return (ops[pc] == EDGE) ? ((Matcher.Edge) operands[pc]).rs : (ResultSet) operands[pc];
+	}
+
+	/*** interpreter ***/
+
+	/** @return the kind of matcher {@code f} is right now, {@link Frame#AT} frames are resolved to their instruction */
+	byte kind(Frame f) {
+		if (f.kind != Frame.AT) return f.kind;
+		byte $ = (byte) (f.resolved - 1);
+		if ($ < 0) {
+			int pc = f.pc;
+			switch (ops[pc]) {
+			case EDGE:
+				//an edge conformed while it had no results is finished
+				$ = (f.conformed != null && ((f.previous == null) ? initial(pc).isEmpty()
+						: neutral[pc] ? f.previous.isEmpty() : ResultSet.product(initial(pc), f.previous).isEmpty())) ? FAIL : EDGE;
+				break;
+			case DONE:
+				$ = (f.conformed != null && results(f).isEmpty()) ? FAIL : DONE;
+				break;
+			default:
+				$ = ops[pc];
+			}
+			f.resolved = (byte) ($ + 1);
+		}
+		return $;
+	}
+
+	/** @return the results held by an EDGE or DONE frame */
+	ResultSet results(Frame f) {
+		if (f.kind == Frame.DONE) return f.rs;
+		ResultSet $ = f.results;
+		if ($ == null) {
+			ResultSet initial = initial(f.pc);
+			if (f.conformed == null) $ = initial;
+			else if (neutral[f.pc] && initial.elementSet().iterator().next().values.length == 0) $ = f.conformed;//epsilon
+			else $ = ResultSet.product(initial, f.conformed);
+			f.results = $;
+		}
+		return $;
+	}
+
+	/** @return the first sub-matcher of an OR or a CONS, the repeated matcher of a REPEAT */
+	Frame left(Frame f) {
+		if (f.kind == Frame.OR || f.kind == Frame.CONS) return f.r;
+		Frame $ = f.left;
+		if ($ == null) f.left = $ = at(arg1[f.pc], f.conformed, f.previous);
+		return $;
+	}
+
+	/** @return the second sub-matcher of an OR or a CONS */
+	Frame right(Frame f) {
+		if (f.kind == Frame.OR || f.kind == Frame.CONS) return f.s;
+		Frame $ = f.right;
+		if ($ == null) f.right = $ = at(arg2[f.pc], f.conformed, f.previous);
+		return $;
+	}
+
+	boolean canTake(Frame f) {
+		switch (kind(f)) {
+		case DONE: return true;
+		case OR: return canTake(left(f)) || canTake(right(f));
+		case CONS: return canTake(left(f)) && canTake(right(f));
+		case REPEAT: return f.min <= 0;
+		default: return false;
+		}
+	}
+
+	boolean canCont(Frame f) {
+		switch (kind(f)) {
+		case EDGE: return true;
+		case OR: return canCont(left(f)) || canCont(right(f));
+		case CONS: {
+			Frame r = left(f), s = right(f);
+			boolean rCont = canCont(r), sCont = canCont(s);
+			return (canTake(r) || rCont) && (canTake(s) || sCont) && (rCont || sCont);
+		}
+		case REPEAT: return canCont(left(f)) && f.max >= 1;
+		default: return false;
+		}
+	}
+
+	ResultSet take(Frame f) {
+		switch (kind(f)) {
+		case EDGE:
+		case DONE:
+			return results(f);
+		case OR: {
+			Frame r = left(f), s = right(f);
+			if (!canTake(s)) return take(r);
+			if (!canTake(r)) return take(s);
+			return ResultSet.union(take(r), take(s));
+		}
+		case CONS: return ResultSet.product(take(left(f)), take(right(f)));
+		case REPEAT: return take(left(f));
+		default: return ResultSet.Empty();
+		}
+	}
+
+	Frame conformTo(Frame f, ResultSet rs) {
+		switch (f.kind) {
+		case Frame.AT:
+		case Frame.REPEAT: {
+			if (kind(f) == FAIL) return Frame.FAILED;
+			ResultSet conformed = (f.conformed == null) ? rs : ResultSet.product(f.conformed, rs);
+			return new Frame(f.kind, f.pc, conformed, f.conformed, null, null, null, f.min, f.max);
+		}
+		case Frame.DONE: {
+			ResultSet $ = ResultSet.product(f.rs, rs);
+			return $.isEmpty() ? Frame.FAILED : Frame.done($);
+		}
+		case Frame.OR: return Frame.or(conformTo(f.r, rs), conformTo(f.s, rs));
+		case Frame.CONS: return Frame.cons(conformTo(f.r, rs), conformTo(f.s, rs));
+		default: return f;
+		}
+	}
+
+	Frame cont(Frame f, graphpack.SerializableEdge e, boolean incoming) {
+		switch (kind(f)) {
+		case EDGE: {
+			Matcher.Edge guard = (Matcher.Edge) operands[f.pc];
+			if (incoming != guard.reversed) return Frame.FAILED;
+			ResultSet $ = new ResultSet();
+			EdgeEnvironment env = guard.environment(e);
+			for (Result res : results(f).elementSet()) {
+				Result bound = guard.bind(res, e, incoming, env);
+				if (bound != null) $.add(bound);
+			}
+			return $.isEmpty() ? Frame.FAILED : Frame.done($);
+		}
+		case OR: {
+			if (!canCont(f)) return Frame.FAILED;
+			Frame r = left(f), s = right(f);
+			if (!canCont(r)) return cont(s, e, incoming);
+			if (!canCont(s)) return cont(r, e, incoming);
+			return Frame.or(cont(r, e, incoming), cont(s, e, incoming));
+		}
+		case CONS: {
+			if (!canCont(f)) return Frame.FAILED;
+			Frame r = left(f), s = right(f);
+			if (!canCont(s)) return cont(conformTo(r, take(s)), e, incoming);
+			if (!canCont(r)) return cont(conformTo(s, take(r)), e, incoming);
+			if (canTake(r)) {
+				Frame nextR = cont(r, e, incoming);
+				Frame nextCons = canCont(nextR) ? Frame.cons(nextR, conformTo(s, take(nextR))) : conformTo(s, take(nextR));
+				return Frame.or(nextCons, cont(s, e, incoming));//either r or s takes this edge
+			}
+			Frame nextR = cont(r, e, incoming);
+			if (!canCont(nextR)) return canTake(nextR) ? conformTo(s, take(nextR)) : Frame.FAILED;
+			return Frame.cons(nextR, conformTo(s, take(nextR)));
+		}
+		case REPEAT: {
+			Frame r = left(f);
+			if (!canCont(r)) return Frame.FAILED;
+			if (f.max == 1) return cont(r, e, incoming);
+			Frame nextR = cont(r, e, incoming);
+			Frame again = new Frame(Frame.REPEAT, f.pc, f.conformed, f.previous, null, null, null, f.min - 1, f.max - 1);
+			return Frame.cons(nextR, conformTo(again, take(nextR)));
+		}
+		default:
+			return Frame.FAILED;
+		}
+	}
+
+	EdgeSelector selector(Frame f) {
+		switch (kind(f)) {
+		case EDGE: return ((Matcher.Edge) operands[f.pc]).selector();
+		case OR: {
+			Frame r = left(f), s = right(f);
+			if (!canCont(r)) return selector(s);
+			if (!canCont(s)) return selector(r);
+			return selector(r).or(selector(s));
+		}
+		case CONS: {
+			Frame r = left(f), s = right(f);
+			if (!canCont(s)) return selector(r);
+			if (!canCont(r)) return selector(s);
+			return canTake(r) ? selector(r).or(selector(s)) : selector(r);
+		}
+		case REPEAT: return selector(left(f));
+		default: return EdgeSelector.ALL;
+		}
+	}
+
+	int directions(Frame f) {
+		switch (kind(f)) {
+		case EDGE: return ((Matcher.Edge) operands[f.pc]).directions();
+		case OR: {
+			Frame r = left(f), s = right(f);
+			if (!canCont(r)) return directions(s);
+			if (!canCont(s)) return directions(r);
+			return directions(r) | directions(s);
+		}
+		case CONS: {
+			Frame r = left(f), s = right(f);
+			if (!canCont(s)) return directions(r);
+			if (!canCont(r)) return directions(s);
+			return canTake(r) ? directions(r) | directions(s) : directions(r);
+		}
+		case REPEAT: return directions(left(f));
+		default: return Matcher.OUTGOING;
+		}
+	}
+
+	/** @return a value that is equal for frames that behave the same (see {@link Matcher#stateKey()}) */
+	Object stateKey(Frame f) {
+		switch (kind(f)) {
+		case EDGE: return Arrays.asList(EDGE, f.pc, ImmutableMultiset.copyOf(results(f)));
+		case DONE: return Arrays.asList(DONE, ImmutableMultiset.copyOf(results(f)));
+		case OR:
+		case CONS:
+			return Arrays.asList(kind(f), stateKey(left(f)), stateKey(right(f)));
+		case REPEAT:
+			return Arrays.asList(REPEAT, f.pc, stateKey(left(f)), Matcher.Repeat.minKey(f.min), Matcher.Repeat.maxKey(f.max));
+		default: return FAIL;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/*** static ***/
+
+	private static boolean isNeutral(ResultSet rs) {
+		if (rs.size() != 1) return false;
+		for (Object v : rs.iterator().next().values) {
+			if (v != Result.UNASSIGNED_VALUE) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * a matcher of the compiled tree at some point of the traversal: either a matcher of the table that wasn't
+	 * reached yet ({@link #AT}, {@link #REPEAT}) or one that was created while edges were matched
+	 * @author amitport
+	 */
+	public static final class Frame implements Serializable {
+		private static final long serialVersionUID = 6014744436823497385L;
+
+		/** frame kinds */
+		public final static byte AT = 6, DONE = Automaton.DONE, FAIL = Automaton.FAIL, OR = Automaton.OR,
+				CONS = Automaton.CONS, REPEAT = Automaton.REPEAT;
+		final static Frame FAILED = new Frame(FAIL, 0, null, null, null, null, null, 0, 0);
+
+		final byte kind;
+		final int pc;//AT and REPEAT
+		final ResultSet conformed, previous;//AT and REPEAT
+		final ResultSet rs;//DONE
+		final int min, max;//REPEAT
+		final Frame r, s;//OR and CONS
+		/* computed on demand: the sub-matchers of AT and REPEAT, the resolved kind (+1) of AT and the results of AT */
+		transient Frame left, right;
+		transient byte resolved;
+		transient ResultSet results;
+
+		Frame(byte kind, int pc, ResultSet conformed, ResultSet previous, ResultSet rs, Frame r, Frame s, int min, int max) {
+			this.kind = kind;
+			this.pc = pc;
+			this.conformed = conformed;
+			this.previous = previous;
+			this.rs = rs;
+			this.r = r;
+			this.s = s;
+			this.min = min;
+			this.max = max;
+		}
+
+		public static Frame failed() {
+			return FAILED;
+		}
+
+		public static Frame done(ResultSet rs) {
+			return new Frame(DONE, 0, null, null, rs, null, null, 0, 0);
+		}
+
+		public static Frame or(Frame r, Frame s) {
+			return new Frame(OR, 0, null, null, null, r, s, 0, 0);
+		}
+
+		public static Frame cons(Frame r, Frame s) {
+			return new Frame(CONS, 0, null, null, null, r, s, 0, 0);
+		}
+
+		public byte kind() {return kind;}
+		public int pc() {return pc;}
+		public ResultSet conformed() {return conformed;}
+		public ResultSet previous() {return previous;}
+		public ResultSet results() {return rs;}
+		public int min() {return min;}
+		public int max() {return max;}
+		/** @return the sub-matchers of an {@link #OR} or a {@link #CONS} */
+		public Frame left() {return r;}
+		public Frame right() {return s;}
+
+		private Object readResolve() {
+			return (kind == FAIL) ? FAILED : this;
+		}
+	}
+
+	/**
+	 * translates matcher trees into instructions
+	 * @author amitport
+	 */
+	static final class Compiler {
+		final List<Byte> ops = new ArrayList<Byte>();
+		final List<Integer> arg1 = new ArrayList<Integer>(), arg2 = new ArrayList<Integer>();
+		final List<Integer> min = new ArrayList<Integer>(), max = new ArrayList<Integer>();
+		final List<Object> operands = new ArrayList<Object>();
+
+		int add(byte op, Object operand) {
+			ops.add(op);
+			arg1.add(0);
+			arg2.add(0);
+			min.add(0);
+			max.add(0);
+			operands.add(operand);
+			return ops.size() - 1;
+		}
+
+		/** @return the instruction of {@code m} or -1 if {@code m} (or some matcher nested in it) can't be compiled */
+		int emit(Matcher m) {
+			if (m instanceof Matcher.FinishedWithNoResults) return add(FAIL, null);
+			if (m instanceof Matcher.FinishedWithSomeResults) return add(DONE, ((Matcher.FinishedWithSomeResults) m).rs);
+			if (m instanceof Matcher.Edge) return add(EDGE, m);
+			if (m instanceof Matcher.Or || m instanceof Matcher.Cons) {
+				boolean or = m instanceof Matcher.Or;
+				int $ = add(or ? OR : CONS, null);
+				int r = emit(or ? ((Matcher.Or) m).r : ((Matcher.Cons) m).r);
+				if (r < 0) return -1;
+				int s = emit(or ? ((Matcher.Or) m).s : ((Matcher.Cons) m).s);
+				if (s < 0) return -1;
+				arg1.set($, r);
+				arg2.set($, s);
+				return $;
+			}
+			if (m instanceof Matcher.Repeat) {
+				Matcher.Repeat repeat = (Matcher.Repeat) m;
+				int $ = add(REPEAT, null);
+				int r = emit(repeat.r);
+				if (r < 0) return -1;
+				arg1.set($, r);
+				min.set($, repeat.min);
+				max.set($, repeat.max);
+				return $;
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.matching;
+
+import graphpack.EdgeSelector;
+import graphpack.matching.Automaton.Frame;
+
+/**
+ * A matcher that runs on a compiled {@link Automaton}, its state is a tree of {@link Frame}s
+ * (only the part of the pattern that was already reached is expanded)
+ * @author amitport
+ */
+public class CompiledMatcher extends Matcher {
+	private static final long serialVersionUID = -4694251830419012637L;
+
+	final Automaton automaton;
+	final Frame frame;
+	private transient EdgeSelector selector;
+
+	CompiledMatcher(Automaton automaton, Frame frame) {
+		this.automaton = automaton;
+		this.frame = frame;
+	}
+
+	/** @return the state of {@code automaton} described by {@code frame}, the inverse of {@link #getFrame()} (for codecs) */
+	public static CompiledMatcher of(Automaton automaton, Frame frame) {
+		return new CompiledMatcher(automaton, frame);
+	}
+
+	public Automaton getAutomaton() {
+		return automaton;
+	}
+
+	public Frame getFrame() {
+		return frame;
+	}
+
+	@Override
+	public boolean canTake() {return automaton.canTake(frame);}
+
+	@Override
+	public ResultSet take() {return automaton.take(frame);}
+
+	@Override
+	public boolean canCont() {return automaton.canCont(frame);}
+
+	@Override
+	public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {
+		return new CompiledMatcher(automaton, automaton.cont(frame, e, incoming));
+	}
+
+	@Override
+	public Matcher conformTo(ResultSet rs) {
+		return new CompiledMatcher(automaton, automaton.conformTo(frame, rs));
+	}
+
+	@Override
+	public Object stateKey() {
+		return automaton.stateKey(frame);
+	}
+
+	@Override
+	public EdgeSelector selector() {
+		EdgeSelector $ = selector;
+		if ($ == null) selector = $ = automaton.selector(frame);
+		return $;
+	}
+
+	@Override
+	public int directions() {
+		return automaton.directions(frame);
+	}
+
+	@Override
+	public Matcher compile() {
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "<compiled " + automaton + ">";
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.matching;
+
+import graphpack.SerializableEdge;
+import graphpack.parsing.java.IReservedIdentifiers;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The environment a predicate sees while an edge is being matched: the reserved current edge names
+ * ({@code _src}, {@code _edg}, {@code _trg}), the edge and target names about to be bound, and the
+ * rest of the underlying result.
+ * The view is reused for all the results matched against the same edge, so nothing is copied
+ * (or mutated) just to evaluate a predicate.
+ * @author amitport
+ */
+final class EdgeEnvironment extends AbstractMap<String,Object> {
+	final IReservedIdentifiers parser;
+	final SerializableEdge e;
+	final String edgeName, targetName;
+	final Object targetValue;
+	Result base;
+
+	EdgeEnvironment(IReservedIdentifiers parser, SerializableEdge e, String edgeName, String targetName, Object targetValue) {
+		this.parser = parser;
+		this.e = e;
+		this.edgeName = edgeName;
+		this.targetName = targetName;
+		this.targetValue = targetValue;
+	}
+
+	/** @return this environment on top of {@code base} */
+	EdgeEnvironment over(Result base) {
+		this.base = base;
+		return this;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (key == null) return null;
+		if (key.equals(edgeName)) return e;
+		if (key.equals(targetName)) return targetValue;
+		if (key.equals(parser.getCURRENT_EDG_NAME())) return e;
+		if (key.equals(parser.getCURRENT_TRG_NAME())) return e.target;
+		if (key.equals(parser.getCURRENT_SRC_NAME())) return e.source;
+		return (key instanceof String) ? base.get((String) key) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null || ((key instanceof String) && base.containsKey((String) key));
+	}
+
+	/** materializes the whole environment, predicates normally use {@link #get(Object)} only */
+	@Override
+	public Set<Entry<String,Object>> entrySet() {
+		Map<String,Object> $ = new HashMap<String,Object>(base.getMap());
+		$.put(parser.getCURRENT_SRC_NAME(), e.source);
+		$.put(parser.getCURRENT_EDG_NAME(), e);
+		$.put(parser.getCURRENT_TRG_NAME(), e.target);
+		if (edgeName != null) $.put(edgeName, e);
+		if (targetName != null) $.put(targetName, targetValue);
+		return $.entrySet();
+	}
+}
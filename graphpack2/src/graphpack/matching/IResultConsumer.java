@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.matching;
+
+/**
+ * Receives results one by one while a traversal is still running
+ * @author amitport
+ */
+public interface IResultConsumer {
+	/** @return true to keep receiving results, false to stop the traversal */
+	boolean accept(Result r);
+
+	/*** static ***/
+
+	/**
+	 * accumulates every result into a result set
+	 * @author amitport
+	 */
+	public static class Collector implements IResultConsumer {
+		final ResultSet rs;
+		public Collector(ResultSet rs) {
+			this.rs = rs;
+		}
+		@Override
+		public boolean accept(Result r) {
+			rs.add(r);
+			return true;
+		}
+	}
+
+	/**
+	 * passes at most {@code limit} results to an inner consumer and then stops the traversal
+	 * @author amitport
+	 */
+	public static class Limit implements IResultConsumer {
+		final IResultConsumer inner;
+		int remaining;
+		public Limit(int limit, IResultConsumer inner) {
+			this.inner = inner;
+			this.remaining = limit;
+		}
+		@Override
+		public boolean accept(Result r) {
+			if (remaining <= 0) return false;
+			remaining--;
+			return inner.accept(r) && remaining > 0;
+		}
+	}
+
+	/**
+	 * keeps the first result only
+	 * @author amitport
+	 */
+	public static class First implements IResultConsumer {
+		Result first;
+		@Override
+		public boolean accept(Result r) {
+			first = r;
+			return false;
+		}
+		/** @return the first matched result or {@code null} if nothing was matched */
+		public Result get() {
+			return first;
+		}
+	}
+}
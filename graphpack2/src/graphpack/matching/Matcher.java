@@ -15,10 +15,16 @@
  ******************************************************************************/
 package graphpack.matching;
 
+import graphpack.EdgeSelector;
 import graphpack.parsing.java.IReservedIdentifiers;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableMultiset;
 
 /**
  * Responsible on pattern matching a path
@@ -34,15 +40,54 @@ public abstract class Matcher implements Serializable {
 	
 	/** @return true IFF there are some possible edges that can be accepted by this pattern */
 	abstract public boolean canCont();
+	/** 
+	 * matches an (outgoing) edge to the beginning of this pattern
+	 * @return a matcher that is responsible on matching the rest of the pattern
+	 */
+	public final Matcher cont(graphpack.SerializableEdge e) {
+		return cont(e, false);
+	}
 	/** 
 	 * matches an edge to the beginning of this pattern
+	 * @param incoming true IFF {@code e} is followed backwards (from its target to its source)
 	 * @return a matcher that is responsible on matching the rest of the pattern
 	 */
-	abstract public Matcher cont(graphpack.SerializableEdge e);
+	abstract public Matcher cont(graphpack.SerializableEdge e, boolean incoming);
 	
 	/** @return a new Matcher which results can merge with the input results */
 	abstract public Matcher conformTo(ResultSet rs);
 	
+	/**
+	 * @return a value (never {@code null}) that is equal for matchers that accept exactly the same (remaining) paths
+	 * with the same results, it includes the results bound so far
+	 */
+	abstract public Object stateKey();
+	
+	/**
+	 * @return the edges this matcher may consume next (possibly more), so they can be looked up in an index
+	 * instead of matching every outgoing edge
+	 */
+	public EdgeSelector selector() {
+		return EdgeSelector.ALL;
+	}
+	
+	/** edge directions, see {@link #directions()} */
+	public final static int OUTGOING = 1, INCOMING = 2;
+	
+	/** @return the directions ({@link #OUTGOING} and/or {@link #INCOMING}) of the edges this matcher may consume next */
+	public int directions() {
+		return OUTGOING;
+	}
+	
+	/** 
+	 * @return an equivalent matcher (same results) that runs on a compiled {@link Automaton}
+	 * (or this matcher if it contains matchers the automaton doesn't know)
+	 */
+	public Matcher compile() {
+		Automaton $ = Automaton.compile(this);
+		return ($ == null) ? this : $.start();
+	}
+	
 	/*** static ***/
 	
 	/**
@@ -57,12 +102,14 @@ public abstract class Matcher implements Serializable {
 		@Override
 		public boolean canCont(){return false;}
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {return this;}
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {return this;}
 		@Override
 		public Matcher conformTo(ResultSet rs) {return this;}
 		@Override
 		public ResultSet take() {return ResultSet.Empty();}
 		@Override
+		public Object stateKey() {return FinishedWithNoResults.class;}
+		@Override
 		public String toString() {return "<empty>";}
 	}
 
@@ -83,7 +130,7 @@ public abstract class Matcher implements Serializable {
 		@Override
 		public boolean canCont(){return false;}
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {return new FinishedWithNoResults();}
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {return new FinishedWithNoResults();}
 		@Override
 		public Matcher conformTo(ResultSet rs) {
 			ResultSet newRs = ResultSet.product(this.rs, rs);
@@ -92,6 +139,10 @@ public abstract class Matcher implements Serializable {
 		@Override
 		public ResultSet take() {return rs;}
 		@Override
+		public Object stateKey() {
+			return Arrays.asList(FinishedWithSomeResults.class, ImmutableMultiset.copyOf(rs));
+		}
+		@Override
 		public String toString() {
 			return "<epsilon>";}
 	}
@@ -107,11 +158,20 @@ public abstract class Matcher implements Serializable {
 		final String edgeName, edgeType, targetName;
 		final Predicate pred;
 		final IReservedIdentifiers parser;
+		/** true IFF the edge is followed backwards, i.e. from its target to its source ({@code <-[name:type]-target}) */
+		final boolean reversed;
+		private transient EdgeSelector selector;
 		
 		public Edge(IReservedIdentifiers parser,String edgeName, String edgeType, String targetName, Predicate pred){
 			this(parser,null,edgeName,edgeType,targetName,pred);
 		}
+		public Edge(IReservedIdentifiers parser,String edgeName, String edgeType, String targetName, Predicate pred, boolean reversed){
+			this(parser,null,edgeName,edgeType,targetName,pred,reversed);
+		}
 		public Edge(IReservedIdentifiers parser,ResultSet rs, String edgeName, String edgeType, String targetName, Predicate pred){
+			this(parser,rs,edgeName,edgeType,targetName,pred,false);
+		}
+		public Edge(IReservedIdentifiers parser,ResultSet rs, String edgeName, String edgeType, String targetName, Predicate pred, boolean reversed){
 			if (rs != null){
 				this.rs = rs;
 			}else{
@@ -123,69 +183,102 @@ public abstract class Matcher implements Serializable {
 			}
 
 			this.edgeName = edgeName;
-			this.edgeType = edgeType;//TODO
+			this.edgeType = edgeType;
 			this.targetName = targetName;
 			this.pred = pred;
 			this.parser = parser;
+			this.reversed = reversed;
 		}
 		@Override
 		public boolean canTake() {return false;/*since we haven't matched the edge yet*/}
 		@Override
 		public boolean canCont() {return true;/*since we need to match one edge*/}
 		
+		/** @return true IFF {@code o1} conflicts with the value already assigned to {@code name} at {@code res} */
+		private static boolean conflicts(Result res, String name, Object o1){
+			if (name == null) return false;
+			Object o2 = res.get(name);//we know o2 is not null because we've put it in the constructor
+			return o2 != Result.UNASSIGNED_VALUE && !o1.equals(o2);
+		}
+		
+		/** @return the node reached by matching {@code e}, its source when the edge is reversed */
+		graphpack.NodeLocation reached(graphpack.SerializableEdge e) {
+			return reversed ? e.source : e.target;
+		}
+		
+		/** @return the environment predicates see while {@code e} is matched or {@code null} if there is no predicate */
+		EdgeEnvironment environment(graphpack.SerializableEdge e) {
+			return (pred == null) ? null : new EdgeEnvironment(parser,e,edgeName,targetName,reached(e));
+		}
+		
 		/** 
-		 * @return true IFF {@code o1} doesn't conflict with another value with key {@code name} at {@code res}.
-		 * if needed {@code newRes} is updated with the new value {@code o1} */
-		private boolean handleConflict(Result res, String name, Object o1){
-			if (name != null){
-				Object o2 = res.get(name);//we know o2 is not null because we've put it in the constructor
-				if (o2 == Result.UNASSIGNED_VALUE){
-					res.put(name, o1);
-					return true;
-				} else if (!o1.equals(o2)){
-					return false;
-				} else {
-					return true;
-				}
-			} else {
-				return true;				
-			}	
+		 * @param incoming true IFF {@code e} is followed backwards
+		 * @param env the environment returned by {@link #environment} for {@code e}
+		 * @return a copy of {@code res} with the edge and target names bound, or {@code null} if {@code e} doesn't match
+		 */
+		Result bind(Result res, graphpack.SerializableEdge e, boolean incoming, EdgeEnvironment env) {
+			if (   incoming != reversed
+				|| (edgeType!=null && !edgeType.equals(EdgeSelector.typeOf(e.payload)))
+				|| conflicts(res,edgeName,e)
+				|| conflicts(res,targetName,reached(e))
+				|| (pred!=null && !pred.evaluate(env.over(res)))){
+				return null;
+			}
+			Result $ = new Result(res);
+			if (edgeName != null) $.put(edgeName, e);
+			if (targetName != null) $.put(targetName, reached(e));
+			return $;
 		}
 		
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {
-			if (!canCont()) return new FinishedWithNoResults();
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {
+			if (!canCont() || incoming != reversed) return new FinishedWithNoResults();
 			
 			ResultSet $ = new ResultSet();
+			EdgeEnvironment env = environment(e);
 			for (Result res : rs.elementSet()){
-				Result newRes = new Result(res);
-				newRes.put(parser.getCURRENT_SRC_NAME(), e.source);
-				newRes.put(parser.getCURRENT_EDG_NAME(), e);
-				newRes.put(parser.getCURRENT_TRG_NAME(), e.target);
-				if (   handleConflict(newRes,edgeName,e)
-					&& handleConflict(newRes,targetName,e.target)
-					&& (pred==null || pred.evaluate(newRes.getMap()))){
-					newRes.remove(parser.getCURRENT_SRC_NAME());
-					newRes.remove(parser.getCURRENT_EDG_NAME());
-					newRes.remove(parser.getCURRENT_TRG_NAME());
-					$.add(newRes);
-				}			
+				Result newRes = bind(res,e,incoming,env);
+				if (newRes != null) $.add(newRes);
 			}
 			return ($.isEmpty())?new FinishedWithNoResults():new FinishedWithSomeResults($);
 		}
+		/** the edge type and the comparisons of the edge's payload fields with literals (within conjunctions) */
+		@Override
+		public EdgeSelector selector() {
+			EdgeSelector $ = selector;
+			if ($ == null) {
+				$ = (edgeType == null) ? EdgeSelector.ALL : EdgeSelector.ofType(edgeType);
+				if (pred != null) {
+					Set<String> edgeNames = new HashSet<String>();
+					if (edgeName != null) edgeNames.add(edgeName);
+					if (parser != null) edgeNames.add(parser.getCURRENT_EDG_NAME());
+					$ = pred.pushDown($, edgeNames);
+				}
+				selector = $;
+			}
+			return $;
+		}
 		@Override
 		public Matcher conformTo(ResultSet rs){
 			ResultSet newRs = ResultSet.product(this.rs,rs);
 			return ((this.rs.isEmpty())?new FinishedWithNoResults():
-				new Edge(parser,newRs,edgeName,edgeType,targetName,pred));
+				new Edge(parser,newRs,edgeName,edgeType,targetName,pred,reversed));
+		}
+		@Override
+		public int directions() {
+			return reversed ? INCOMING : OUTGOING;
 		}
 		@Override
 		public ResultSet take() {return rs;}
 		@Override
+		public Object stateKey() {
+			return Arrays.asList(Edge.class, edgeName, edgeType, targetName, pred, parser, reversed, ImmutableMultiset.copyOf(rs));
+		}
+		@Override
 		public String toString() {
-			return "-" + ((edgeName!=null||edgeType!=null)?"["+
+			return (reversed ? "<-" : "-") + ((edgeName!=null||edgeType!=null)?"["+
 					((edgeName!=null)?edgeName:"")+":"
-					+((edgeType!=null)?edgeType:"")+ "]":"") + "->" 
+					+((edgeType!=null)?edgeType:"")+ "]":"") + (reversed ? "-" : "->")
 					+ ((targetName!=null)?targetName:"")
 					+ ((pred!=null)?"?"+pred:"");
 		}
@@ -205,11 +298,23 @@ public abstract class Matcher implements Serializable {
 		@Override
 		public boolean canCont() {return r.canCont()||s.canCont();}
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {
 			if (!canCont()) return new FinishedWithNoResults();
-			if (!r.canCont()) return s.cont(e);
-			if (!s.canCont()) return r.cont(e);
-			return new Or(r.cont(e),s.cont(e));
+			if (!r.canCont()) return s.cont(e, incoming);
+			if (!s.canCont()) return r.cont(e, incoming);
+			return new Or(r.cont(e, incoming),s.cont(e, incoming));
+		}
+		@Override
+		public EdgeSelector selector() {
+			if (!r.canCont()) return s.selector();
+			if (!s.canCont()) return r.selector();
+			return r.selector().or(s.selector());
+		}
+		@Override
+		public int directions() {
+			if (!r.canCont()) return s.directions();
+			if (!s.canCont()) return r.directions();
+			return r.directions() | s.directions();
 		}
 		@Override
 		public Matcher conformTo(ResultSet rs){
@@ -222,6 +327,10 @@ public abstract class Matcher implements Serializable {
 			return ResultSet.union(r.take(),s.take());
 		}
 		@Override
+		public Object stateKey() {
+			return Arrays.asList(Or.class, r.stateKey(), s.stateKey());
+		}
+		@Override
 		public String toString() {
 			return "("+r+" or "+s+")";
 		}	
@@ -253,14 +362,14 @@ public abstract class Matcher implements Serializable {
 											&&(s.canTake()||s.canCont())//same for the second matcher
 											&&(r.canCont()||s.canCont()));}//at least one of the matchers must be able to continue
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {
 			if (!canCont()) return new FinishedWithNoResults();
-			if (!s.canCont()) return r.conformTo(s.take()).cont(e);
-			if (!r.canCont()) return s.conformTo(r.take()).cont(e);
+			if (!s.canCont()) return r.conformTo(s.take()).cont(e, incoming);
+			if (!r.canCont()) return s.conformTo(r.take()).cont(e, incoming);
 			
 			if (r.canTake()){//the first had some valid results
 				if (r.canCont()){//but it can also continue
-					Matcher nextR = r.cont(e);
+					Matcher nextR = r.cont(e, incoming);
 					Matcher nextCons;
 					if (!nextR.canCont()){
 						nextCons = s.conformTo(nextR.take());
@@ -268,13 +377,13 @@ public abstract class Matcher implements Serializable {
 						nextCons = new Cons(nextR,s.conformTo(nextR.take()));
 					}
 					if (s.canCont())//the second can also continue -> we've got a path split
-						return new Or(nextCons,s.cont(e));//either the first will takes this match or the second
+						return new Or(nextCons,s.cont(e, incoming));//either the first will takes this match or the second
 					return nextCons; //the second can't continue -> the first takes this match
 				} else {
-					return s.cont(e); //r took what he can -> moving to s
+					return s.cont(e, incoming); //r took what he can -> moving to s
 				}
 			} else  {
-				Matcher nextR = r.cont(e); // r can we continue since we've checked canCont in the start of the function
+				Matcher nextR = r.cont(e, incoming); // r can we continue since we've checked canCont in the start of the function
 				if (!nextR.canCont()){
 					if (!nextR.canTake()) return new FinishedWithNoResults();
 					return s.conformTo(nextR.take());
@@ -283,6 +392,19 @@ public abstract class Matcher implements Serializable {
 				return nextCons;//continue with r
 			}
 		}
+		/** follows {@link #cont}: the edge goes to {@code r}, to {@code s} or (when {@code r} may be done) to either */
+		@Override
+		public EdgeSelector selector() {
+			if (!s.canCont()) return r.selector();
+			if (!r.canCont()) return s.selector();
+			return r.canTake() ? r.selector().or(s.selector()) : r.selector();
+		}
+		@Override
+		public int directions() {
+			if (!s.canCont()) return r.directions();
+			if (!r.canCont()) return s.directions();
+			return r.canTake() ? r.directions() | s.directions() : r.directions();
+		}
 		@Override
 		public Matcher conformTo(ResultSet rs){
 			return new Cons(r.conformTo(rs),s.conformTo(rs));	
@@ -292,6 +414,10 @@ public abstract class Matcher implements Serializable {
 			return ResultSet.product(r.take(),s.take());
 		}
 		@Override
+		public Object stateKey() {
+			return Arrays.asList(Cons.class, r.stateKey(), s.stateKey());
+		}
+		@Override
 		public String toString() {
 			return "("+r.toString()+", "+s.toString()+")";
 		}
@@ -314,21 +440,47 @@ public abstract class Matcher implements Serializable {
 			return r.canCont()&&max>=1;/*the matcher can continue and we've haven't passed our max repeat limit*/ 
 		}
 		@Override
-		public Matcher cont(graphpack.SerializableEdge e) {
+		public Matcher cont(graphpack.SerializableEdge e, boolean incoming) {
 			if (!r.canCont()) return new FinishedWithNoResults();
-			if (max==1/*this is our last repeat*/) return r.cont(e);
-			Matcher nextR = r.cont(e);
+			if (max==1/*this is our last repeat*/) return r.cont(e, incoming);
+			Matcher nextR = r.cont(e, incoming);
 			return new Cons(nextR,new Repeat(r,min-1,max-1).conformTo(nextR.take()));/*let r match his stuff first than see if repeat is needed*/
 		}
 		@Override
+		public EdgeSelector selector() {
+			return r.selector();
+		}
+		@Override
+		public int directions() {
+			return r.directions();
+		}
+		@Override
 		public Matcher conformTo(ResultSet rs){
 			return new Repeat(r.conformTo(rs),min,max);
 		}
 		@Override
 		public ResultSet take() {return r.take();}
+		/** the repetitions left are part of the key, satisfied minimums and unbounded maximums are all the same */
+		@Override
+		public Object stateKey() {
+			return Arrays.asList(Repeat.class, r.stateKey(), minKey(min), maxKey(max));
+		}
 		@Override
 		public String toString() {
 			return "("+r.toString()+")*"+min+".."+max;
 		}
+		
+		/** repeats with more repetitions left than this are considered unbounded by state keys */
+		final static int UNBOUNDED = Integer.MAX_VALUE / 2;
+		
+		/** @return {@code min} as part of a state key, every satisfied minimum is the same */
+		static int minKey(int min) {
+			return Math.max(min, 0);
+		}
+		
+		/** @return {@code max} as part of a state key, so an unbounded repeat has the same key after every repetition */
+		static int maxKey(int max) {
+			return (max > UNBOUNDED) ? -1 : max;
+		}
 	}
 }
@@ -15,7 +15,10 @@
  ******************************************************************************/
 package graphpack.matching;
 
+import graphpack.EdgeSelector;
+
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a check which return a boolean result
@@ -25,6 +28,39 @@ public abstract class Predicate {
 	
 	public abstract <T extends Object> boolean evaluate(Map<String, T> env);
 	
+	/**
+	 * adds to {@code selector} the conditions this predicate implies on the payload fields of the matched edge
+	 * @param edgeNames the names the matched edge goes by
+	 * @return {@code selector} if nothing is implied
+	 */
+	EdgeSelector pushDown(EdgeSelector selector, Set<String> edgeNames) {
+		return selector;
+	}
+	
+	/** @return {@code selector} with {@code lhs op rhs} added, if it compares a field of the matched edge with a literal */
+	static EdgeSelector pushDown(EdgeSelector selector, Set<String> edgeNames, Value lhs, Value rhs, EdgeSelector.Op op) {
+		String field = edgeField(lhs, edgeNames);
+		Object literal = literal(rhs);
+		if (field == null) {
+			field = edgeField(rhs, edgeNames);
+			literal = literal(lhs);
+			op = op.flip();
+		}
+		if (field == null || literal == null) return selector;
+		if (op != EdgeSelector.Op.EQ && !(literal instanceof Number)) return selector;
+		return selector.where(field, op, literal);
+	}
+	
+	private static String edgeField(Value v, Set<String> edgeNames) {
+		if (!(v instanceof Value.Property)) return null;
+		Value.Property p = (Value.Property) v;
+		return (p.propChain.length == 1 && edgeNames.contains(p.entity)) ? p.propChain[0] : null;
+	}
+	
+	private static Object literal(Value v) {
+		return (v instanceof Value.Literal) ? ((Value.Literal) v).value : null;
+	}
+	
 	/*** static ***/
 	
 	public static class Not extends Predicate {
@@ -72,6 +108,11 @@ public abstract class Predicate {
 		public <T extends Object> boolean evaluate(Map<String, T> env) {
 			return lhs.evaluate(env) && rhs.evaluate(env);
 		}
+
+		@Override
+		EdgeSelector pushDown(EdgeSelector selector, Set<String> edgeNames) {
+			return rhs.pushDown(lhs.pushDown(selector, edgeNames), edgeNames);
+		}
 	}
 
 	public static class Or extends BinaryCombinator<Predicate> {
@@ -103,6 +144,11 @@ public abstract class Predicate {
 				return ol.equals(or);
 			}
 		}
+
+		@Override
+		EdgeSelector pushDown(EdgeSelector selector, Set<String> edgeNames) {
+			return pushDown(selector, edgeNames, lhs, rhs, EdgeSelector.Op.EQ);
+		}
 	}
 
 	abstract public static class Comparison extends BinaryCombinator<Value> {
@@ -128,6 +174,15 @@ public abstract class Predicate {
 			return isInCorrectOrder(compare(lhs.get(env), rhs.get(env)));
 		}
 
+		@Override
+		EdgeSelector pushDown(EdgeSelector selector, Set<String> edgeNames) {
+			EdgeSelector.Op $ = ">".equals(op) ? EdgeSelector.Op.GT
+					: ">=".equals(op) ? EdgeSelector.Op.GE
+					: "<".equals(op) ? EdgeSelector.Op.LT
+					: "<=".equals(op) ? EdgeSelector.Op.LE : null;
+			return ($ == null) ? selector : pushDown(selector, edgeNames, lhs, rhs, $);
+		}
+
 		public static class GreaterThan extends Comparison {
 
 			public GreaterThan(Value lhs, Value rhs) {
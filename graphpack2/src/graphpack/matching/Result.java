@@ -17,52 +17,154 @@ package graphpack.matching;
 
 import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
+/**
+ * Named values matched by a path.
+ * Names are mapped to slots by a canonical {@link ResultSchema}, so a result is just a schema reference
+ * and a small value array (with a cached hash code).
+ * @author amitport
+ */
 public class Result implements Serializable {
-	private static final long serialVersionUID = 3087489222402385206L;
+	private static final long serialVersionUID = -1817201856478593034L;
 
-	final public Map<String,Object> map = new HashMap<String,Object>();;
+	ResultSchema schema;
+	Object[] values;
+	private transient int hash;
 	
-	public Result(){}
+	public Result(){
+		this(ResultSchema.EMPTY, new Object[0]);
+	}
 	/**
 	 * copy constructor
 	 * @param res
 	 */
 	public Result(Result res) {
-		map.putAll(res.map);
+		this(res.schema, res.values.clone());
+		this.hash = res.hash;
+	}
+	
+	Result(ResultSchema schema, Object[] values) {
+		this.schema = schema;
+		this.values = values;
+	}
+
+	/** @return a result of {@code schema} holding {@code values} by slot (the array is not copied) */
+	public static Result of(ResultSchema schema, Object[] values) {
+		if (values.length != schema.size()) throw new IllegalArgumentException(values.length + " values for " + schema);
+		return new Result(schema, values);
+	}
+
+	public ResultSchema getSchema() {
+		return schema;
 	}
 
+	/** @return the value at {@code slot} of the schema */
+	public Object get(int slot) {
+		return values[slot];
+	}
+	
 	public Object get(String key){
-		return map.get(key);
+		int slot = schema.slot(key);
+		return (slot < 0) ? null : values[slot];
+	}
+	
+	public boolean containsKey(String key) {
+		return schema.slot(key) >= 0;
 	}
 	
 	public void put(String key, Object value){
-		map.put(key, value);
+		int slot = schema.slot(key);
+		if (slot < 0) {
+			ResultSchema newSchema = schema.with(key);
+			Object[] newValues = new Object[newSchema.size()];
+			for (int i = 0; i < values.length; i++) {
+				newValues[newSchema.slot(schema.name(i))] = values[i];
+			}
+			slot = newSchema.slot(key);
+			schema = newSchema;
+			values = newValues;
+		}
+		values[slot] = value;
+		hash = 0;
 	}
 	
 	public void remove(String key) {
-		map.remove(key);
+		int slot = schema.slot(key);
+		if (slot < 0) return;
+		ResultSchema newSchema = schema.without(key);
+		Object[] newValues = new Object[newSchema.size()];
+		for (int i = 0; i < values.length; i++) {
+			if (i != slot) newValues[newSchema.slot(schema.name(i))] = values[i];
+		}
+		schema = newSchema;
+		values = newValues;
+		hash = 0;
 	}
 	
+	/** @return an unmodifiable map view of this result */
 	public Map<String,Object> getMap(){
-		return Collections.unmodifiableMap(map);
+		return new AbstractMap<String,Object>() {
+			@Override
+			public Object get(Object key) {
+				return (key instanceof String) ? Result.this.get((String) key) : null;
+			}
+			@Override
+			public boolean containsKey(Object key) {
+				return (key instanceof String) && Result.this.containsKey((String) key);
+			}
+			@Override
+			public int size() {
+				return values.length;
+			}
+			@Override
+			public Set<Entry<String,Object>> entrySet() {
+				return new AbstractSet<Entry<String,Object>>() {
+					@Override
+					public int size() {
+						return values.length;
+					}
+					@Override
+					public Iterator<Entry<String,Object>> iterator() {
+						return new Iterator<Entry<String,Object>>() {
+							int i = 0;
+							@Override
+							public boolean hasNext() {return i < values.length;}
+							@Override
+							public Entry<String,Object> next() {
+								if (i >= values.length) throw new NoSuchElementException();
+								Entry<String,Object> $ = new SimpleImmutableEntry<String,Object>(schema.name(i), values[i]);
+								i++;
+								return $;
+							}
+							@Override
+							public void remove() {throw new UnsupportedOperationException();}
+						};
+					}
+				};
+			}
+		};
 	}
 	
 	@Override
 	public String toString(){
-		return map.toString();
+		return getMap().toString();
 	}
 	
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((map == null) ? 0 : map.hashCode());
-		return result;
+		int $ = hash;
+		if ($ == 0) {
+			$ = 31 * schema.hashCode() + Arrays.hashCode(values);
+			hash = $;
+		}
+		return $;
 	}
 
 	@Override
@@ -74,13 +176,9 @@ public class Result implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		Result other = (Result) obj;
-		if (map == null) {
-			if (other.map != null)
-				return false;
-		} else if (!map.equals(other.map)){
-			return false;
-		}
-		return true;
+		return schema == other.schema
+				&& hashCode() == other.hashCode()
+				&& Arrays.equals(values, other.values);
 	}
 	
 	/*** static ***/
@@ -90,32 +188,36 @@ public class Result implements Serializable {
 	 * @return a new merged result or {@code null} if the results have conflicts
 	 */
 	public static Result merge(Result res1, Result res2){
-		Result $ = new Result(res1);
-		for (Entry<String,Object> res2Entry : res2.map.entrySet()){
-			String res2Key = res2Entry.getKey();
-			Object res2Val = res2Entry.getValue();
-			if (!res1.map.containsKey(res2Key)){ 	
-				//$ don't have this key yet -> just add it
-				$.map.put(res2Key, res2Val);     			//->just add it
-			}else {
-				//$ already have this key
-				if (res2Val != UNASSIGNED_VALUE){
-					//and res2 have it assigned
-					Object res1Val = res1.map.get(res2Key);
-					if (res1Val != UNASSIGNED_VALUE){ 			
-						//and $ also have it assigned
-						if (!res1Val.equals(res2Val)){
-							//but not with the same value !! -> fail
-							return null;
-						} //else both res have the same value -> do nothing
-					} else { 
-						//res2Key was not assigned in $ -> assign it now
-						$.map.put(res2Key, res2Val);
-					}
-				} //res2Val is unassigned -> keep whatever we have from res1
+		ResultSchema.Join join = res1.schema.join(res2.schema);
+		Object[] $ = new Object[join.schema.size()];
+		for (int i = 0; i < $.length; i++) {
+			int slot1 = join.from1[i], slot2 = join.from2[i];
+			if (slot2 < 0) {
+				//res2 don't have this key -> keep whatever we have from res1
+				$[i] = res1.values[slot1];
+			} else if (slot1 < 0) {
+				//res1 don't have this key yet -> just add it
+				$[i] = res2.values[slot2];
+			} else {
+				//both have this key
+				Object res1Val = res1.values[slot1];
+				Object res2Val = res2.values[slot2];
+				if (res2Val == UNASSIGNED_VALUE) {
+					//res2Val is unassigned -> keep whatever we have from res1
+					$[i] = res1Val;
+				} else if (res1Val == UNASSIGNED_VALUE) {
+					//res2Key was not assigned in res1 -> assign it now
+					$[i] = res2Val;
+				} else if (!res1Val.equals(res2Val)) {
+					//but not with the same value !! -> fail
+					return null;
+				} else {
+					//both res have the same value
+					$[i] = res1Val;
+				}
 			}
 		}
-		return $;
+		return new Result(join.schema, $);
 	}
 	
 	/* unassigned values (complications are because of serializations) */
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.matching;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The (sorted) variable names of a {@link Result}, each name is mapped to a slot in the result's value array.
+ * Schemas are canonical: there is a single instance for every set of names, so schemas can be compared by
+ * reference and the schemas derived from a schema (by adding, removing or joining names) are computed once.
+ * @author amitport
+ */
+public final class ResultSchema implements Serializable {
+	private static final long serialVersionUID = 4913460528765384025L;
+
+	private final static ConcurrentMap<List<String>,ResultSchema> canonical = new ConcurrentHashMap<List<String>,ResultSchema>();
+	public final static ResultSchema EMPTY = of();
+
+	final String[] names;
+	private final transient int hash;
+	private transient ConcurrentMap<String,ResultSchema> extended;
+	private transient ConcurrentMap<String,ResultSchema> reduced;
+	private transient ConcurrentMap<ResultSchema,Join> joins;
+
+	private ResultSchema(String[] names) {
+		this.names = names;
+		this.hash = Arrays.hashCode(names);
+		this.extended = new ConcurrentHashMap<String,ResultSchema>();
+		this.reduced = new ConcurrentHashMap<String,ResultSchema>();
+		this.joins = new ConcurrentHashMap<ResultSchema,Join>();
+	}
+
+	/** @return the canonical schema of {@code names} */
+	public static ResultSchema of(String... names) {
+		String[] sorted = names.clone();
+		Arrays.sort(sorted);
+		List<String> key = Arrays.asList(sorted);
+		ResultSchema $ = canonical.get(key);
+		if ($ == null) {
+			ResultSchema other = canonical.putIfAbsent(key, $ = new ResultSchema(sorted));
+			if (other != null) $ = other;
+		}
+		return $;
+	}
+
+	public int size() {return names.length;}
+
+	public String name(int slot) {return names[slot];}
+
+	/** @return the slot of {@code name} or -1 if it is not part of this schema */
+	public int slot(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i] == name || names[i].equals(name)) return i;
+		}
+		return -1;
+	}
+
+	/** @return this schema with {@code name} added */
+	ResultSchema with(String name) {
+		ResultSchema $ = extended.get(name);
+		if ($ == null) {
+			String[] newNames = Arrays.copyOf(names, names.length + 1);
+			newNames[names.length] = name;
+			extended.put(name, $ = of(newNames));
+		}
+		return $;
+	}
+
+	/** @return this schema without {@code name} */
+	ResultSchema without(String name) {
+		ResultSchema $ = reduced.get(name);
+		if ($ == null) {
+			String[] newNames = new String[names.length - 1];
+			for (int i = 0, j = 0; i < names.length; i++) {
+				if (!names[i].equals(name)) newNames[j++] = names[i];
+			}
+			reduced.put(name, $ = of(newNames));
+		}
+		return $;
+	}
+
+	/** @return the slot mapping used to merge results of this schema with results of {@code other} */
+	Join join(ResultSchema other) {
+		Join $ = joins.get(other);
+		if ($ == null) joins.put(other, $ = new Join(this, other));
+		return $;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(names);
+	}
+
+	Object readResolve() throws ObjectStreamException {
+		return of(names);
+	}
+
+	/*** static ***/
+
+	/**
+	 * the union of two schemas, for every slot of the union remembers the slot of each input (or -1)
+	 * @author amitport
+	 */
+	static final class Join {
+		final ResultSchema schema;
+		final int[] from1, from2;
+		Join(ResultSchema s1, ResultSchema s2) {
+			ResultSchema union = s1;
+			for (String name : s2.names) {
+				if (union.slot(name) < 0) union = union.with(name);
+			}
+			this.schema = union;
+			this.from1 = new int[union.size()];
+			this.from2 = new int[union.size()];
+			for (int i = 0; i < union.size(); i++) {
+				from1[i] = s1.slot(union.names[i]);
+				from2[i] = s2.slot(union.names[i]);
+			}
+		}
+	}
+}
@@ -16,16 +16,38 @@
 package graphpack.matching;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Multiset;
 
-public class ResultSet implements Serializable {
+/**
+ * A multiset of results.
+ * Result sets returned by {@link #union}, {@link #product} and {@link Matcher#take()} may share structure
+ * with their inputs and should be treated as immutable.
+ * @author amitport
+ */
+public class ResultSet implements Serializable, Iterable<Result> {
 	private static final long serialVersionUID = -6513155130201864844L;
 	
-	final private Multiset<Result> results;
+	private volatile Multiset<Result> results;
+	/* a lazy union (results == null) of left and right, walked without recursion however deep it is */
+	private transient ResultSet left, right;
+	private transient int size;//of a lazy union
+	/* the traversal that produced this set stopped before it completed */
+	private volatile boolean truncated;
 	
 	public ResultSet(){
 		results = HashMultiset.create();
@@ -35,54 +57,228 @@ public class ResultSet implements Serializable {
 		this.results = results;
 	}
 	
+	private ResultSet(ResultSet left, ResultSet right){
+		this.left = left;
+		this.right = right;
+		this.size = left.size() + right.size();
+	}
+	
 	public boolean isEmpty() {
-		return results.isEmpty();
+		Multiset<Result> rs = results;
+		return (rs != null) ? rs.isEmpty() : (size == 0);
+	}
+	
+	public int size() {
+		Multiset<Result> rs = results;
+		return (rs != null) ? rs.size() : size;
+	}
+	
+	/**
+	 * @return true IFF this set holds the partial results of a traversal that was stopped by one of its bounds
+	 * (see {@link graphpack.traversal.TraversalOptions}), sets derived from this one (e.g. by {@link #union}) are not truncated
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+	
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
 	}
 	
 	public void add(Result r) {
-		results.add(r);
+		flat().add(r);
 	}
 	
 	public boolean contains(Result r) {
-		return results.contains(r);
+		for (Multiset<Result> rs : leaves()) {
+			if (rs.contains(r)) return true;
+		}
+		return false;
 	}
 	
 	public Set<Result> elementSet() {
-		return results.elementSet();
+		return flat().elementSet();
+	}
+	
+	/** iterates over all results (duplicates included) */
+	@Override
+	public Iterator<Result> iterator() {
+		Multiset<Result> rs = results;
+		if (rs != null) return rs.iterator();
+		List<Iterator<Result>> $ = new ArrayList<Iterator<Result>>();
+		for (Multiset<Result> leaf : leaves()) $.add(leaf.iterator());
+		return Iterators.concat($.iterator());
+	}
+	
+	/**
+	 * passes all results (duplicates included) to {@code consumer}
+	 * @return false IFF {@code consumer} asked to stop
+	 */
+	public boolean feed(IResultConsumer consumer) {
+		for (Multiset<Result> rs : leaves()) {
+			for (Result r : rs) {
+				if (!consumer.accept(r)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/** copies all results (duplicates included) into {@code target} */
+	void copyTo(Multiset<Result> target) {
+		for (Multiset<Result> rs : leaves()) target.addAll(rs);
+	}
+	
+	/** @return the materialized sets this set is a (lazy) union of, in order */
+	private List<Multiset<Result>> leaves() {
+		Multiset<Result> rs = results;
+		if (rs != null) return Collections.singletonList(rs);
+		List<Multiset<Result>> $ = new ArrayList<Multiset<Result>>();
+		Deque<ResultSet> pending = new ArrayDeque<ResultSet>();
+		pending.push(this);
+		while (!pending.isEmpty()) {
+			ResultSet u = pending.pop();
+			Multiset<Result> leaf = u.results;
+			ResultSet left = u.left, right = u.right;
+			if (leaf == null && (left == null || right == null)) leaf = u.flat();//flattened meanwhile
+			if (leaf != null) {
+				$.add(leaf);
+			} else {
+				pending.push(right);
+				pending.push(left);
+			}
+		}
+		return $;
+	}
+	
+	/** materializes a lazy union (once), @return the backing multiset */
+	private Multiset<Result> flat() {
+		Multiset<Result> rs = results;
+		if (rs != null) return rs;
+		synchronized (this) {
+			if (results == null) {
+				Multiset<Result> $ = HashMultiset.create();
+				copyTo($);
+				results = $;
+				left = right = null;
+			}
+			return results;
+		}
+	}
+	
+	private Object writeReplace() {
+		flat();
+		return this;
 	}
 	
 	@Override
 	public String toString(){
-		return results.toString();
+		return flat().toString();
 	}
 	/*** static ***/
 
 	/**
 	 * Product joins two result sets, entities with the same name are merged
 	 * if either one is unassigned (if only one of them is assigned we take it's value)
-	 * or if they point to the same value (otherwise we disregard the result)
+	 * or if they point to the same value (otherwise we disregard the result).
+	 * <p>
+	 * Results are hash joined on the names shared by all the results of both sets, so only results that
+	 * agree on all of these names (or leave some of them unassigned) are merged.
+	 * When no names are shared this is a plain nested loop cross product.
 	 * @return the merged ResultSet
 	 */
 	public static ResultSet product(ResultSet rs1, ResultSet rs2){
 		ResultSet $ = new ResultSet();
-		for (Result res1 : rs1.results){
-			for (Result res2 : rs2.results){
-				Result r = Result.merge(res1, res2);
-				if (r != null) $.results.add(r);
+		if (rs1.isEmpty() || rs2.isEmpty()) return $;
+		String[] keys = sharedKeys(rs1, rs2);
+		if (keys.length == 0) {
+			for (Multiset.Entry<Result> e1 : rs1.flat().entrySet()){
+				for (Multiset.Entry<Result> e2 : rs2.flat().entrySet()){
+					addMerged($, e1, e2);
+				}
+			}
+			return $;
+		}
+		
+		//build a hash index over rs2, results with some unassigned key must be checked against everything
+		Map<List<Object>,List<Multiset.Entry<Result>>> index = new HashMap<List<Object>,List<Multiset.Entry<Result>>>();
+		List<Multiset.Entry<Result>> wildcards = new ArrayList<Multiset.Entry<Result>>();
+		for (Multiset.Entry<Result> e2 : rs2.flat().entrySet()){
+			List<Object> key = joinKey(e2.getElement(), keys);
+			if (key == null) {
+				wildcards.add(e2);
+			} else {
+				List<Multiset.Entry<Result>> bucket = index.get(key);
+				if (bucket == null) {
+					bucket = new ArrayList<Multiset.Entry<Result>>(1);
+					index.put(key, bucket);
+				}
+				bucket.add(e2);
+			}
+		}
+		
+		for (Multiset.Entry<Result> e1 : rs1.flat().entrySet()){
+			List<Object> key = joinKey(e1.getElement(), keys);
+			if (key == null) {
+				for (Multiset.Entry<Result> e2 : rs2.flat().entrySet()){
+					addMerged($, e1, e2);
+				}
+			} else {
+				List<Multiset.Entry<Result>> bucket = index.get(key);
+				if (bucket != null) {
+					for (Multiset.Entry<Result> e2 : bucket){
+						addMerged($, e1, e2);
+					}
+				}
+				for (Multiset.Entry<Result> e2 : wildcards){
+					addMerged($, e1, e2);
+				}
 			}
 		}
 		return $;		
 	}
+	
+	private static void addMerged(ResultSet $, Multiset.Entry<Result> e1, Multiset.Entry<Result> e2) {
+		Result r = Result.merge(e1.getElement(), e2.getElement());
+		if (r != null) $.results.add(r, e1.getCount() * e2.getCount());
+	}
+	
+	/** @return the names that appear in every result of both sets */
+	private static String[] sharedKeys(ResultSet rs1, ResultSet rs2) {
+		Set<String> $ = null;
+		for (Result r : rs1.flat().elementSet()) {
+			if ($ == null) {
+				$ = new HashSet<String>(r.getMap().keySet());
+			} else {
+				$.retainAll(r.getMap().keySet());
+			}
+			if ($.isEmpty()) return new String[0];
+		}
+		for (Result r : rs2.flat().elementSet()) {
+			$.retainAll(r.getMap().keySet());
+			if ($.isEmpty()) return new String[0];
+		}
+		return $.toArray(new String[$.size()]);
+	}
+	
+	/** @return the values of {@code keys} in {@code r} or {@code null} if some of them are unassigned */
+	private static List<Object> joinKey(Result r, String[] keys) {
+		Object[] $ = new Object[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			$[i] = r.get(keys[i]);
+			if ($[i] == Result.UNASSIGNED_VALUE) return null;
+		}
+		return Arrays.asList($);
+	}
 
 	/**
-	 * Union of all the results in both input result sets
-	 * @return the unified result set
+	 * Union of all the results in both input result sets.
+	 * The inputs are shared rather than copied, so a chain of unions costs a constant per union
+	 * and its results are copied at most once (when the chain is first materialized)
+	 * @return the unified result set, always a new set (adding to it copies the inputs first, they never change)
 	 */
 	public static ResultSet union(ResultSet rs1, ResultSet rs2){
-		ResultSet $ = new ResultSet();
-		$.results.addAll(rs1.results);
-		$.results.addAll(rs2.results);
-		return $;
+		if (rs1.isEmpty() && rs2.isEmpty()) return new ResultSet();
+		return new ResultSet(rs1, rs2);
 	}
 	
 	public static ResultSet Empty() {
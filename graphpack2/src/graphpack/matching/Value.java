@@ -15,7 +15,10 @@
  ******************************************************************************/
 package graphpack.matching;
 
+import graphpack.Edge.Payload;
 import graphpack.SerializableEdge;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.PayloadSchema;
 
 import java.util.Map;
 
@@ -48,12 +51,13 @@ public abstract class Value {
 	
 	/**
 	 * Property values expect to find a certain entity in the environment
-	 * which have a field of a certain property key. this field is read using reflection
+	 * which have a field of a certain property key. this field is read through the schema of a payload
+	 * (see {@link graphpack.codec.PayloadSchema}) or using reflection
 	 * @author amitport
 	 */
 	public static class Property extends Value {
-		private Object entity;
-		private String[] propChain;
+		final Object entity;
+		final String[] propChain;
 		public Property(Object entity, String[] propChain) {
 			this.entity = entity;
 			this.propChain = propChain;
@@ -74,6 +78,12 @@ public abstract class Value {
 				}
 				//TODO $ instanceof NodeLocation --> get node properties
 				for (int i = 0; i < propChain.length; i++) {
+					PayloadSchema<Payload> schema = ($ instanceof Payload) ? PayloadCodecs.schema($) : null;
+					int field = (schema == null) ? -1 : schema.field(propChain[i]);
+					if (field >= 0) {
+						$ = schema.get((Payload) $, field);
+						continue;
+					}
 					try {
 					$ = $.getClass().getField(propChain[i]).get($);
 					} catch (NoSuchFieldException e) {
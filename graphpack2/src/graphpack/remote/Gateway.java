@@ -15,18 +15,25 @@
  ******************************************************************************/
 package graphpack.remote;
 
+import java.util.Collection;
 import java.util.List;
 
 import graphpack.ClientLocation;
 import graphpack.Edge;
 import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
 import graphpack.IClient;
 import graphpack.INode;
 import graphpack.IService;
 import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
 import graphpack.matching.Matcher;
 import graphpack.matching.ResultSet;
 import graphpack.taskprocessing.ITask;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
 
 public class Gateway {
 	
@@ -38,13 +45,27 @@ public class Gateway {
 		public String test(ClientLocation sender){
 			return service.test();
 		}
+		/** @return the client named {@code clientName} or {@code null} if there is none */
 		public Client client(ClientLocation sender, String clientName){
-			return new Client(service.client(clientName));
+			IClient client = service.client(clientName);
+			return (client == null) ? null : new Client(client);
+		}
+		public Collection<String> clientNames(ClientLocation sender) {
+			return service.clientNames();
 		}
 		public void createClient(ClientLocation sender,
 				String clientName) {
 			service.createClient(clientName);
 		}
+		public void addEdges(ClientLocation sender, List<EdgeTuple> edges) {
+			service.addEdges(edges);
+		}
+		public void addIncomingEdges(ClientLocation sender, List<SerializableEdge> edges) {
+			service.addIncomingEdges(edges);
+		}
+		public boolean traverse(ClientLocation sender, TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+			return service.traverse(batch, options, consumer);
+		}
 	}
 	
 	public static class Client {
@@ -63,9 +84,17 @@ public class Gateway {
 				String nodeName) {
 			client.createNode(nodeName);
 		}
+		/** @return the node named {@code nodeName} or {@code null} if there is none */
 		public Node node(ClientLocation sender,
 				String nodeName) {
-			return new Node(client.node(nodeName));
+			INode node = client.node(nodeName);
+			return (node == null) ? null : new Node(node);
+		}
+		public Collection<String> nodeNames(ClientLocation sender) {
+			return client.nodeNames();
+		}
+		public void addEdges(ClientLocation sender, List<EdgeTuple> edges) {
+			client.addEdges(edges);
 		}
 	}
 	
@@ -83,15 +112,47 @@ public class Gateway {
 			return node.getOutgoingEdges();
 		}
 
+		public List<? extends Edge> getOutgoingEdges(ClientLocation sender, EdgeSelector selector) {
+			return node.getOutgoingEdges(selector);
+		}
+
 		public void addOutgoingEdge(ClientLocation sender,
 				NodeLocation target, Payload payload) {
 			node.addOutgoingEdge(target, payload);
 		}
 
+		public void addOutgoingEdges(ClientLocation sender, List<EdgeTuple> edges) {
+			node.addOutgoingEdges(edges);
+		}
+
+		public List<? extends Edge> getIncomingEdges(ClientLocation sender) {
+			return node.getIncomingEdges();
+		}
+
+		public void addIncomingEdges(ClientLocation sender, List<SerializableEdge> edges) {
+			node.addIncomingEdges(edges);
+		}
+
 		public ResultSet traverse(ClientLocation sender, Matcher matcher) {
 			return node.traverse(matcher);
 		}
 
+		public boolean traverse(ClientLocation sender, Matcher matcher, IResultConsumer consumer) {
+			return node.traverse(matcher, consumer);
+		}
+
+		public boolean traverse(ClientLocation sender, Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+			return node.traverse(matcher, options, consumer);
+		}
+
+		public boolean traverse(ClientLocation sender, IResultConsumer consumer, String path, Object... params) {
+			return node.traverse(consumer, path, params);
+		}
+
+		public ResultSet traverse(ClientLocation sender, TraversalOptions options, String path, Object... params) {
+			return node.traverse(options, path, params);
+		}
+
 		public void addTask(ClientLocation sender, String taskName,
 				Class<? extends ITask> task) {
 			node.addTask(taskName, task);
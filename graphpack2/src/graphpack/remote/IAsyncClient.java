@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * The non blocking counterpart of {@link IClient}
+ * @author amitport
+ */
+public interface IAsyncClient {
+	ListenableFuture<String> testAsync();
+	ListenableFuture<Void> createNodeAsync(String nodeName);
+	ListenableFuture<Collection<String>> nodeNamesAsync();
+	ListenableFuture<Void> addEdgesAsync(List<EdgeTuple> edges);
+	/** @return the node named {@code nodeName}, resolved by the service on every call (so this never blocks) */
+	IAsyncNode asyncNode(String nodeName);
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.INode;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.Edge.Payload;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * The non blocking counterpart of {@link INode}, edges are returned as they are sent (without node proxies)
+ * @author amitport
+ */
+public interface IAsyncNode {
+	NodeLocation location();
+	ListenableFuture<String> testAsync();
+	/** @param selector {@code null} for all the edges */
+	ListenableFuture<List<SerializableEdge>> getOutgoingEdgesAsync(EdgeSelector selector);
+	ListenableFuture<List<SerializableEdge>> getIncomingEdgesAsync();
+	ListenableFuture<Void> addOutgoingEdgeAsync(NodeLocation target, Payload payload);
+	ListenableFuture<Void> addOutgoingEdgesAsync(List<EdgeTuple> edges);
+	ListenableFuture<Void> addIncomingEdgesAsync(List<SerializableEdge> edges);
+	/**
+	 * @see INode#traverse(Matcher, TraversalOptions, IResultConsumer)
+	 * @return completes with true IFF the traversal completed, after {@code consumer} received every result
+	 */
+	ListenableFuture<Boolean> traverseAsync(Matcher matcher, TraversalOptions options, IResultConsumer consumer);
+	/** same as {@link #traverseAsync(Matcher, TraversalOptions, IResultConsumer)} with a path parsed by the remote service */
+	ListenableFuture<Boolean> traverseAsync(IResultConsumer consumer, String path, Object... params);
+	ListenableFuture<Void> callTaskAsync(String taskName, Object... params);
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.EdgeTuple;
+import graphpack.IService;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * The non blocking counterpart of {@link IService}: every call returns as soon as it was sent,
+ * failures complete the future with a {@link RemoteException}
+ * @author amitport
+ */
+public interface IAsyncService {
+	ListenableFuture<String> testAsync();
+	ListenableFuture<Void> createClientAsync(String clientName);
+	ListenableFuture<Collection<String>> clientNamesAsync();
+	ListenableFuture<Void> addEdgesAsync(List<EdgeTuple> edges);
+	ListenableFuture<Void> addIncomingEdgesAsync(List<SerializableEdge> edges);
+	/**
+	 * @see IService#traverse(TraversalBatch, TraversalOptions, IResultConsumer)
+	 * @return completes with true IFF the traversal completed, after {@code consumer} received every result
+	 */
+	ListenableFuture<Boolean> traverseAsync(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer);
+	/** @return the client named {@code clientName}, resolved by the service on every call (so this never blocks) */
+	IAsyncClient asyncClient(String clientName);
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.ClientLocation;
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+import graphpack.IService;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Keeps a small pool of connections for every (sender, target service) pair on top of another connection manager
+ * (the transport), connections are shared by all the threads of the sender and handed out round robin.
+ * <p>
+ * A connection that fails under a call (see {@link RemoteException#isTransportFailure}) is evicted from its pool,
+ * and so are the {@link RemoteNodeCache} proxies of its target service since they may have been resolved through it.
+ * Other exceptions (thrown by the remote service or by a consumer) keep the connection, all are rethrown.
+ * A connection that has been idle for longer than the health check interval is tested before it is handed out again.
+ * @author amitport
+ */
+public class PooledConnectionManager implements IConnectionManager {
+	public final static String UNPOOLED = "unpooled";
+	public final static int DEFAULT_POOL_SIZE = 2;
+	public final static long DEFAULT_HEALTH_CHECK_INTERVAL = 10000;//ms
+
+	final IConnectionManager transport;
+	final RemoteNodeCache nodes;
+	final int poolSize;
+	final long healthCheckInterval;
+	private final ConcurrentMap<Route,Pool> pools = new ConcurrentHashMap<Route,Pool>();
+
+	@Inject
+	public PooledConnectionManager(@Named(UNPOOLED) IConnectionManager transport, RemoteNodeCache nodes,
+			@Named("connectionPoolSize") int poolSize) {
+		this(transport, nodes, poolSize, DEFAULT_HEALTH_CHECK_INTERVAL);
+	}
+
+	public PooledConnectionManager(IConnectionManager transport, RemoteNodeCache nodes, int poolSize, long healthCheckInterval) {
+		if (poolSize < 1) throw new IllegalArgumentException("pool size " + poolSize);
+		this.transport = transport;
+		this.nodes = nodes;
+		this.poolSize = poolSize;
+		this.healthCheckInterval = healthCheckInterval;
+	}
+
+	@Override
+	public void export(String serviceName, IService service) {
+		transport.export(serviceName, service);
+	}
+
+	@Override
+	public void unexport() {
+		transport.unexport();
+		pools.clear();
+		nodes.invalidateAll();
+	}
+
+	@Override
+	public IService connect(String sourceService, String sourceClient, String targetService) {
+		Route route = new Route(new ClientLocation(sourceService, sourceClient), targetService);
+		Pool $ = pools.get(route);
+		if ($ == null) {
+			Pool other = pools.putIfAbsent(route, $ = new Pool(route));
+			if (other != null) $ = other;
+		}
+		return $.get();
+	}
+
+	/** @return the number of open connections (for monitoring) */
+	public int connections() {
+		int $ = 0;
+		for (Pool pool : pools.values()) {
+			for (int i = 0; i < poolSize; i++) {
+				if (pool.slots.get(i) != null) $++;
+			}
+		}
+		return $;
+	}
+
+	/*** static ***/
+
+	/**
+	 * the sender and target of a pool's connections
+	 * @author amitport
+	 */
+	static final class Route {
+		final ClientLocation sender;
+		final String targetService;
+		Route(ClientLocation sender, String targetService) {
+			this.sender = sender;
+			this.targetService = targetService;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * sender.hashCode() + targetService.hashCode();
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Route))
+				return false;
+			Route other = (Route) obj;
+			return sender.equals(other.sender) && targetService.equals(other.targetService);
+		}
+	}
+
+	/**
+	 * the connections of a single route, slots are (re)connected lazily
+	 * @author amitport
+	 */
+	final class Pool {
+		final Route route;
+		final AtomicReferenceArray<Connection> slots = new AtomicReferenceArray<Connection>(poolSize);
+		final AtomicInteger next = new AtomicInteger();
+
+		Pool(Route route) {
+			this.route = route;
+		}
+
+		Connection get() {
+			int slot = (next.getAndIncrement() & Integer.MAX_VALUE) % poolSize;
+			Connection $ = slots.get(slot);
+			if ($ != null && !$.isHealthy()) $ = null;
+			if ($ == null) {
+				synchronized (this) {//a single handshake per slot
+					$ = slots.get(slot);
+					if ($ == null) {
+						$ = new Connection(this, slot, transport.connect(route.sender.getServiceName(),
+								route.sender.getClientName(), route.targetService));
+						slots.set(slot, $);
+					}
+				}
+			}
+			return $;
+		}
+
+		void evict(Connection c) {
+			if (slots.compareAndSet(c.slot, c, null)) nodes.invalidateService(route.targetService);
+		}
+	}
+
+	/**
+	 * a pooled connection, evicted as soon as it fails under one of its calls
+	 * @author amitport
+	 */
+	final class Connection implements IService {
+		final Pool pool;
+		final int slot;
+		final IService service;
+		private volatile long lastSuccess = System.currentTimeMillis();
+
+		Connection(Pool pool, int slot, IService service) {
+			this.pool = pool;
+			this.slot = slot;
+			this.service = service;
+		}
+
+		/** @return false IFF this connection was idle for too long and failed its health check (and was evicted) */
+		boolean isHealthy() {
+			if (System.currentTimeMillis() - lastSuccess <= healthCheckInterval) return true;
+			try {
+				test();
+				return true;
+			} catch (RuntimeException e) {
+				return !RemoteException.isTransportFailure(e);
+			}
+		}
+
+		private RuntimeException failed(RuntimeException e) {
+			if (RemoteException.isTransportFailure(e)) pool.evict(this);
+			return e;
+		}
+
+		private void succeeded() {
+			lastSuccess = System.currentTimeMillis();
+		}
+
+		@Override
+		public String test() {
+			try {
+				String $ = service.test();
+				succeeded();
+				return $;
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void createClient(String clientName) {
+			try {
+				service.createClient(clientName);
+				succeeded();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public IClient client(String clientName) {
+			try {
+				IClient $ = service.client(clientName);
+				succeeded();
+				return $;
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public Collection<String> clientNames() {
+			try {
+				Collection<String> $ = service.clientNames();
+				succeeded();
+				return $;
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void addEdges(List<EdgeTuple> edges) {
+			try {
+				service.addEdges(edges);
+				succeeded();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void addIncomingEdges(List<SerializableEdge> edges) {
+			try {
+				service.addIncomingEdges(edges);
+				succeeded();
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public boolean traverse(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+			try {
+				boolean $ = service.traverse(batch, options, consumer);
+				succeeded();
+				return $;
+			} catch (RuntimeException e) {
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "<connection " + slot + " of " + pool.route.sender + " to " + pool.route.targetService + ">";
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import java.io.IOException;
+
+/**
+ * A remote call that failed, either on the remote service (the message carries the remote exception)
+ * or on the way (e.g. the connection was lost)
+ * @author amitport
+ */
+public class RemoteException extends RuntimeException {
+	private static final long serialVersionUID = -1796458101547215260L;
+
+	public RemoteException(String message) {
+		super(message);
+	}
+
+	public RemoteException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * @return true IFF {@code e} is a failure of the connection (an IO failure, the connection can't be used anymore)
+	 * rather than a failure of the call (e.g. an exception thrown by the remote service or by a consumer)
+	 */
+	public static boolean isTransportFailure(Throwable e) {
+		return e instanceof RemoteException && e.getCause() instanceof IOException;
+	}
+}
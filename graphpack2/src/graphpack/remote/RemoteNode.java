@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.INode;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.matching.ResultSet;
+import graphpack.taskprocessing.ITask;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.List;
+
+/**
+ * A cached proxy of a remote node, a call that fails on the way (see {@link RemoteException#isTransportFailure})
+ * drops the proxy from the {@link RemoteNodeCache} so the next lookup resolves the node again, failures are rethrown
+ * @author amitport
+ */
+final class RemoteNode implements INode {
+	final NodeLocation location;
+	final INode node;
+	final RemoteNodeCache cache;
+
+	RemoteNode(NodeLocation location, INode node, RemoteNodeCache cache) {
+		this.location = location;
+		this.node = node;
+		this.cache = cache;
+	}
+
+	private RuntimeException failed(RuntimeException e) {
+		if (RemoteException.isTransportFailure(e)) cache.invalidate(location);
+		return e;
+	}
+
+	@Override
+	public NodeLocation location() {
+		return location;
+	}
+
+	@Override
+	public String test() {
+		try {
+			return node.test();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges() {
+		try {
+			return node.getOutgoingEdges();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		try {
+			return node.getOutgoingEdges(selector);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void addOutgoingEdge(NodeLocation target, Payload payload) {
+		try {
+			node.addOutgoingEdge(target, payload);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void addOutgoingEdges(List<EdgeTuple> edges) {
+		try {
+			node.addOutgoingEdges(edges);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		try {
+			return node.getIncomingEdges();
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		try {
+			node.addIncomingEdges(edges);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public ResultSet traverse(String path, Object... params) {
+		try {
+			return node.traverse(path, params);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public ResultSet traverse(Matcher matcher) {
+		try {
+			return node.traverse(matcher);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public boolean traverse(IResultConsumer consumer, String path, Object... params) {
+		try {
+			return node.traverse(consumer, path, params);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public boolean traverse(Matcher matcher, IResultConsumer consumer) {
+		try {
+			return node.traverse(matcher, consumer);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public ResultSet traverse(TraversalOptions options, String path, Object... params) {
+		try {
+			return node.traverse(options, path, params);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public boolean traverse(Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+		try {
+			return node.traverse(matcher, options, consumer);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void addTask(String taskName, Class<? extends ITask> task) {
+		try {
+			node.addTask(taskName, task);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public void callTask(String taskName, Object... params) {
+		try {
+			node.callTask(taskName, params);
+		} catch (RuntimeException e) {
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<remote " + location + ">";
+	}
+}
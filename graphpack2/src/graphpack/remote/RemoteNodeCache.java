@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote;
+
+import graphpack.INode;
+import graphpack.NodeLocation;
+import graphpack.local.persistence.ClockCache;
+
+import com.google.common.base.Predicate;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * The remote node proxies resolved by the {@link RemoteNodeLocator}, every proxy weighs one.
+ * Proxies drop themselves once the connection fails under a call through them (see {@link RemoteNode}), the proxies
+ * of a service are dropped when a pooled connection to it fails (see {@link PooledConnectionManager}).
+ * Failures of the calls themselves (application exceptions) keep the proxies.
+ * @author amitport
+ */
+@Singleton
+public class RemoteNodeCache extends ClockCache<NodeLocation,INode> {
+	public final static long DEFAULT_CAPACITY = 1 << 16;
+
+	@Inject
+	public RemoteNodeCache(@Named("remoteNodeCacheCapacity") long capacity) {
+		super(capacity);
+	}
+
+	/** drops the proxies of the nodes of {@code serviceName} */
+	public void invalidateService(final String serviceName) {
+		invalidateAll(new Predicate<NodeLocation>() {
+			@Override
+			public boolean apply(NodeLocation location) {
+				return serviceName.equals(location.getServiceName());
+			}
+		});
+	}
+}
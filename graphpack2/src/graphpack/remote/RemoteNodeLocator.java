@@ -21,17 +21,30 @@ import graphpack.NodeLocation;
 
 import com.google.inject.Inject;
 
+/**
+ * Locates nodes through the connection manager, the resolved proxies are kept in the {@link RemoteNodeCache}
+ * (shared by all the clients of this process) so a remote node is looked up once rather than on every hop
+ * @author amitport
+ */
 public class RemoteNodeLocator implements INodeLocator {
 	IConnectionManager connectionManager;
+	RemoteNodeCache cache;
 	@Inject
-	public RemoteNodeLocator(IConnectionManager connectionManager){
+	public RemoteNodeLocator(IConnectionManager connectionManager, RemoteNodeCache cache){
 		this.connectionManager = connectionManager;
+		this.cache = cache;
 	}
 	@Override
 	public INode locate(String sourceService, String sourceClient,
 			NodeLocation location) {
-		return connectionManager.connect(sourceService, sourceClient, location.getServiceName())
-				.client(location.getClientName()).node(location.getNodeName());
+		INode $ = cache.get(location);
+		if ($ == null) {
+			INode node = connectionManager.connect(sourceService, sourceClient, location.getServiceName())
+					.client(location.getClientName()).node(location.getNodeName());
+			if (node == null) return null;
+			cache.put(location, $ = new RemoteNode(location, node, cache), 1);
+		}
+		return $;
 	}
 
 }
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.loopback;
+
+import graphpack.remote.rpc.RpcConnectionManager;
+
+import com.google.inject.Inject;
+
+/**
+ * Remote calls between the services of a single JVM, encoded and sent over a simulated wire
+ * (see {@link LoopbackTransport}), exactly as they would be sent over the network.
+ * <p>
+ * Managers created by injection (e.g. of services started by {@link graphpack.GraphPackService#start()}) share
+ * {@link LoopbackTransport#SHARED}, whose conditions and counters are set and read directly.
+ * @author amitport
+ */
+public class LoopbackConnectionManager extends RpcConnectionManager {
+	@Inject
+	public LoopbackConnectionManager() {
+		this(LoopbackTransport.SHARED);
+	}
+
+	public LoopbackConnectionManager(LoopbackTransport transport) {
+		super(transport);
+	}
+}
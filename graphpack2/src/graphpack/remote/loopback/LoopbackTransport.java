@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.loopback;
+
+import graphpack.remote.RemoteException;
+import graphpack.remote.rpc.IChannel;
+import graphpack.remote.rpc.ITransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Channels between the services of a single JVM over a simulated wire (see {@link WireConditions}).
+ * <p>
+ * Frames are copied when they are sent, so only bytes (as encoded by the connection managers) cross the wire,
+ * and are handed to the receiving listener by the wire's thread once their latency and transmission time passed.
+ * Frames of a channel direction arrive in order. The counters of sent frames and bytes make it possible to
+ * compare the traffic of different settings (batching, caching, codecs) of the same workload.
+ * @author amitport
+ */
+public class LoopbackTransport implements ITransport {
+	/** the transport of connection managers that weren't given one (e.g. created by injection) */
+	public final static LoopbackTransport SHARED = new LoopbackTransport();
+
+	private final ConcurrentMap<String,Acceptor> listening = new ConcurrentHashMap<String,Acceptor>();
+	private final DelayQueue<Delivery> wire = new DelayQueue<Delivery>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final Random random = new Random();
+	private final AtomicLong frames = new AtomicLong(), bytes = new AtomicLong(), drops = new AtomicLong();
+	private volatile WireConditions conditions = WireConditions.PERFECT;
+	private Thread thread;//started on the first connection, guarded by this
+
+	public WireConditions getConditions() {
+		return conditions;
+	}
+
+	/** applies to the frames sent from now on */
+	public void setConditions(WireConditions conditions) {
+		this.conditions = conditions;
+	}
+
+	public long getSentFrames() {return frames.get();}
+	public long getSentBytes() {return bytes.get();}
+	public long getDroppedConnections() {return drops.get();}
+
+	public void resetCounters() {
+		frames.set(0);
+		bytes.set(0);
+		drops.set(0);
+	}
+
+	@Override
+	public void listen(String serviceName, Acceptor acceptor) throws IOException {
+		if (listening.putIfAbsent(serviceName, acceptor) != null) throw new IOException(serviceName + " is already listening");
+	}
+
+	@Override
+	public void unlisten(String serviceName) {
+		listening.remove(serviceName);
+	}
+
+	@Override
+	public IChannel connect(String serviceName, IChannel.Listener listener) throws IOException {
+		Acceptor acceptor = listening.get(serviceName);
+		if (acceptor == null) throw new IOException("no service listens as " + serviceName);
+		start();
+		LoopbackChannel $ = new LoopbackChannel(), accepted = new LoopbackChannel();
+		$.peer = accepted;
+		accepted.peer = $;
+		$.listener = listener;
+		accepted.listener = acceptor.accepted(accepted);
+		return $;
+	}
+
+	private synchronized void start() {
+		if (thread != null) return;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						wire.take().run();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "graphpack-loopback");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*** static ***/
+
+	/**
+	 * one end of a connection
+	 * @author amitport
+	 */
+	final class LoopbackChannel implements IChannel {
+		LoopbackChannel peer;
+		volatile IChannel.Listener listener;
+		private final AtomicBoolean open = new AtomicBoolean(true);
+		private long free, arrival;//when the wire is done transmitting and when the last frame arrives, guarded by this
+
+		@Override
+		public void send(ByteBuffer frame) {
+			if (!open.get()) throw new RemoteException("channel closed", new IOException("channel closed"));
+			WireConditions c = conditions;
+			if (c.dropRate > 0 && random.nextDouble() < c.dropRate) {
+				drops.incrementAndGet();
+				IOException cause = new IOException("connection dropped by the simulated wire");
+				close(cause);
+				throw new RemoteException("connection dropped", cause);
+			}
+			ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+			copy.put(frame);
+			copy.flip();
+			frames.incrementAndGet();
+			bytes.addAndGet(copy.remaining());
+			synchronized (this) {
+				free = Math.max(free, System.nanoTime()) + c.transmission(copy.remaining());
+				arrival = Math.max(arrival, free + c.latencyNanos);//frames never overtake each other, even if the latency drops
+				wire.add(new Delivery(peer, copy, null, arrival));
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open.get();
+		}
+
+		@Override
+		public void close() {
+			close(null);
+		}
+
+		void close(Throwable cause) {
+			if (!open.compareAndSet(true, false)) return;
+			if (listener != null) listener.closed(this, cause);
+			synchronized (this) {
+				//a close reaches the peer after the frames in flight, a broken connection loses them
+				long at = (cause == null) ? Math.max(arrival, System.nanoTime() + conditions.latencyNanos) : System.nanoTime();
+				wire.add(new Delivery(peer, null, (cause == null) ? null : new IOException("connection lost", cause), at));
+			}
+		}
+
+		/** delivered by the wire's thread */
+		void closedByPeer(Throwable cause) {
+			if (open.compareAndSet(true, false)) listener.closed(this, cause);
+		}
+
+		/** delivered by the wire's thread */
+		void received(ByteBuffer frame) {
+			if (!open.get()) return;//lost with the connection
+			try {
+				listener.received(this, frame);
+			} catch (RuntimeException e) {
+				close(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "<loopback channel " + Integer.toHexString(System.identityHashCode(this)) + ">";
+		}
+	}
+
+	/**
+	 * a frame (or the end of the connection) on the wire
+	 * @author amitport
+	 */
+	final class Delivery implements Delayed, Runnable {
+		final LoopbackChannel to;
+		final ByteBuffer frame;//null when the connection is closed
+		final Throwable cause;
+		final long at, seq;//seq orders deliveries due at the same time
+
+		Delivery(LoopbackChannel to, ByteBuffer frame, Throwable cause, long at) {
+			this.to = to;
+			this.frame = frame;
+			this.cause = cause;
+			this.at = at;
+			this.seq = sequence.incrementAndGet();
+		}
+
+		@Override
+		public void run() {
+			if (frame == null) to.closedByPeer(cause);
+			else to.received(frame);
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(at - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			Delivery other = (Delivery) o;
+			if (at != other.at) return (at < other.at) ? -1 : 1;
+			return (seq < other.seq) ? -1 : ((seq == other.seq) ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.loopback;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The simulated network between the services of a {@link LoopbackTransport}: the latency of every frame,
+ * the bandwidth of every channel direction (frames queue up behind each other) and the probability of losing a
+ * connection on any frame. Conditions are immutable, the {@code with} methods return modified copies.
+ * @author amitport
+ */
+public final class WireConditions {
+	public final static long UNLIMITED_BANDWIDTH = 0;
+
+	/** no latency, unlimited bandwidth and no drops, frames are still serialized and delivered by the wire's thread */
+	public final static WireConditions PERFECT = new WireConditions(0, UNLIMITED_BANDWIDTH, 0);
+
+	final long latencyNanos;
+	final long bandwidth;//bytes per second
+	final double dropRate;
+
+	private WireConditions(long latencyNanos, long bandwidth, double dropRate) {
+		if (latencyNanos < 0) throw new IllegalArgumentException("negative latency " + latencyNanos);
+		if (bandwidth < 0) throw new IllegalArgumentException("negative bandwidth " + bandwidth);
+		if (dropRate < 0 || dropRate > 1) throw new IllegalArgumentException("drop rate " + dropRate + " isn't a probability");
+		this.latencyNanos = latencyNanos;
+		this.bandwidth = bandwidth;
+		this.dropRate = dropRate;
+	}
+
+	/** @return the one way delay of every frame, in nanoseconds */
+	public long getLatency() {return latencyNanos;}
+	/** @return bytes per second of every channel direction or {@link #UNLIMITED_BANDWIDTH} */
+	public long getBandwidth() {return bandwidth;}
+	/** @return the probability that a frame breaks its connection */
+	public double getDropRate() {return dropRate;}
+
+	public WireConditions withLatency(long latency, TimeUnit unit) {
+		return new WireConditions(unit.toNanos(latency), bandwidth, dropRate);
+	}
+
+	public WireConditions withBandwidth(long bytesPerSecond) {
+		return new WireConditions(latencyNanos, bytesPerSecond, dropRate);
+	}
+
+	/**
+	 * a reliable connection doesn't lose single frames, it is lost as a whole, so a dropped frame closes its channel
+	 * (with a cause) and fails the calls in flight
+	 */
+	public WireConditions withDropRate(double dropRate) {
+		return new WireConditions(latencyNanos, bandwidth, dropRate);
+	}
+
+	/** @return the nanoseconds it takes to put {@code bytes} on the wire */
+	long transmission(int bytes) {
+		return (bandwidth == UNLIMITED_BANDWIDTH) ? 0 : bytes * 1000000000L / bandwidth;
+	}
+
+	@Override
+	public String toString() {
+		return "{latency=" + latencyNanos + "ns, bandwidth=" + ((bandwidth == UNLIMITED_BANDWIDTH) ? "unlimited" : bandwidth + "B/s")
+				+ ", dropRate=" + dropRate + "}";
+	}
+}
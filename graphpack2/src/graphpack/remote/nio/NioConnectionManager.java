@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.nio;
+
+import graphpack.remote.rpc.RpcConnectionManager;
+
+import com.google.inject.Inject;
+
+/**
+ * Remote calls over TCP connections, multiplexed by a single selector thread (see {@link NioTransport})
+ * @author amitport
+ */
+public class NioConnectionManager extends RpcConnectionManager {
+	@Inject
+	public NioConnectionManager(ServiceDirectory directory) {
+		super(new NioTransport(directory));
+	}
+}
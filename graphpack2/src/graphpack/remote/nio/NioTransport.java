@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.nio;
+
+import graphpack.remote.RemoteException;
+import graphpack.remote.rpc.IChannel;
+import graphpack.remote.rpc.ITransport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Channels over non blocking TCP sockets, all served by a single selector thread.
+ * <p>
+ * Frames are prefixed by their length. A frame is written by the sending thread as long as the socket takes it,
+ * the selector thread only writes what is left over (so an idle channel costs no thread hand-off) and reads,
+ * received frames are handed to the channel's listener on the selector thread.
+ * Services that have no configured address (see {@link ServiceDirectory}) listen on an ephemeral local port.
+ * @author amitport
+ */
+public class NioTransport implements ITransport {
+	final static int READ_BUFFER_SIZE = 64 * 1024;
+
+	final ServiceDirectory directory;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();//run by the selector thread
+	private final ConcurrentMap<String,ServerSocketChannel> servers = new ConcurrentHashMap<String,ServerSocketChannel>();
+	private volatile Selector selector;//opened on first use
+
+	public NioTransport(ServiceDirectory directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public void listen(String serviceName, final Acceptor acceptor) throws IOException {
+		start();
+		InetSocketAddress address = directory.find(serviceName);
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().setReuseAddress(true);
+		server.socket().bind((address == null) ? new InetSocketAddress(0) : address);
+		server.configureBlocking(false);
+		if (address == null) directory.register(serviceName, new InetSocketAddress("localhost", server.socket().getLocalPort()));
+		servers.put(serviceName, server);
+		schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+				} catch (IOException e) {
+					closeQuietly(server);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void unlisten(String serviceName) {
+		ServerSocketChannel server = servers.remove(serviceName);
+		if (server != null) closeQuietly(server);
+	}
+
+	@Override
+	public IChannel connect(String serviceName, IChannel.Listener listener) throws IOException {
+		start();
+		SocketChannel socket = SocketChannel.open(directory.address(serviceName));
+		NioChannel $ = new NioChannel(socket);
+		$.listener = listener;
+		$.register();
+		return $;
+	}
+
+	private synchronized void start() throws IOException {
+		if (selector != null) return;
+		selector = Selector.open();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "graphpack-nio");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** runs {@code task} on the selector thread */
+	private void schedule(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	private void loop() {
+		while (true) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				throw new RemoteException("selector failed", e);
+			}
+			for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) task.run();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				if (!key.isValid()) continue;
+				if (key.isAcceptable()) {
+					accept(key);
+					continue;
+				}
+				NioChannel channel = (NioChannel) key.attachment();
+				if (key.isReadable()) channel.read();
+				if (key.isValid() && key.isWritable()) channel.flush();
+			}
+		}
+	}
+
+	private void accept(SelectionKey key) {
+		SocketChannel socket = null;
+		try {
+			socket = ((ServerSocketChannel) key.channel()).accept();
+			if (socket == null) return;
+			NioChannel channel = new NioChannel(socket);
+			channel.listener = ((Acceptor) key.attachment()).accepted(channel);
+			channel.register();
+		} catch (IOException e) {
+			if (socket != null) closeQuietly(socket);
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException e) {
+			//nothing left to do
+		}
+	}
+
+	/*** static ***/
+
+	/**
+	 * a connected socket
+	 * @author amitport
+	 */
+	final class NioChannel implements IChannel {
+		final SocketChannel socket;
+		volatile IChannel.Listener listener;
+		private SelectionKey key;//selector thread only
+		private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);//selector thread only
+		private final Queue<ByteBuffer> out = new ArrayDeque<ByteBuffer>();//guarded by itself
+		private final AtomicBoolean open = new AtomicBoolean(true);
+
+		NioChannel(SocketChannel socket) {
+			this.socket = socket;
+		}
+
+		void register() throws IOException {
+			socket.configureBlocking(false);
+			socket.socket().setTcpNoDelay(true);
+			schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						int ops = SelectionKey.OP_READ;
+						synchronized (out) {
+							if (!out.isEmpty()) ops |= SelectionKey.OP_WRITE;
+						}
+						key = socket.register(selector, ops, NioChannel.this);
+					} catch (IOException e) {
+						close(e);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void send(ByteBuffer frame) {
+			if (!open.get()) throw new RemoteException("channel closed", new IOException("channel closed"));
+			ByteBuffer length = ByteBuffer.allocate(4);
+			length.putInt(0, frame.remaining());
+			synchronized (out) {
+				boolean idle = out.isEmpty();
+				out.add(length);
+				out.add(frame);
+				if (!idle) return;//the selector thread is flushing what is left
+				try {
+					write();
+				} catch (IOException e) {
+					close(e);
+					throw new RemoteException("can't send", e);
+				}
+				if (!out.isEmpty()) {
+					schedule(new Runnable() {
+						@Override
+						public void run() {
+							if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						}
+					});
+				}
+			}
+		}
+
+		/** writes as much as the socket takes (in a single gathering write), guarded by out */
+		private void write() throws IOException {
+			socket.write(out.toArray(new ByteBuffer[out.size()]));
+			while (!out.isEmpty() && !out.peek().hasRemaining()) out.poll();
+		}
+
+		void flush() {
+			synchronized (out) {
+				try {
+					write();
+				} catch (IOException e) {
+					close(e);
+					return;
+				}
+				if (out.isEmpty()) key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		void read() {
+			try {
+				if (socket.read(in) < 0) {
+					close(null);
+					return;
+				}
+				in.flip();
+				while (in.remaining() >= 4) {
+					int length = in.getInt(in.position());
+					if (length < 0) throw new IOException("bad frame length " + length);
+					if (in.remaining() < 4 + length) break;
+					in.position(in.position() + 4);
+					ByteBuffer frame = ByteBuffer.allocate(length);
+					int limit = in.limit();
+					in.limit(in.position() + length);
+					frame.put(in);
+					in.limit(limit);
+					frame.flip();
+					listener.received(this, frame);
+				}
+				in.compact();
+				if (in.position() >= 4 && 4 + in.getInt(0) > in.capacity()) {//a frame larger than the buffer
+					ByteBuffer larger = ByteBuffer.allocate(4 + in.getInt(0));
+					in.flip();
+					larger.put(in);
+					in = larger;
+				}
+			} catch (IOException e) {
+				close(e);
+			} catch (RuntimeException e) {
+				close(e);
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open.get();
+		}
+
+		@Override
+		public void close() {
+			close(null);
+		}
+
+		void close(Throwable cause) {
+			if (!open.compareAndSet(true, false)) return;
+			closeQuietly(socket);
+			if (listener != null) listener.closed(this, cause);
+		}
+
+		@Override
+		public String toString() {
+			return "<channel " + socket.socket().getLocalSocketAddress() + " to " + socket.socket().getRemoteSocketAddress() + ">";
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.nio;
+
+import graphpack.remote.RemoteException;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.inject.Singleton;
+
+/**
+ * The socket addresses of services, either registered (services exported in this process register themselves)
+ * or configured by the system property {@code graphpack.service.<name>=<host>:<port>}
+ * @author amitport
+ */
+@Singleton
+public class ServiceDirectory {
+	public final static String PROPERTY_PREFIX = "graphpack.service.";
+
+	private final ConcurrentMap<String,InetSocketAddress> addresses = new ConcurrentHashMap<String,InetSocketAddress>();
+
+	public void register(String serviceName, InetSocketAddress address) {
+		addresses.put(serviceName, address);
+	}
+
+	/** @return the address of {@code serviceName} or {@code null} if it is unknown */
+	public InetSocketAddress find(String serviceName) {
+		InetSocketAddress $ = addresses.get(serviceName);
+		if ($ != null) return $;
+		String configured = System.getProperty(PROPERTY_PREFIX + serviceName);
+		if (configured == null) return null;
+		int colon = configured.lastIndexOf(':');
+		if (colon < 0) throw new IllegalArgumentException("bad address " + configured + " of " + serviceName);
+		return new InetSocketAddress(configured.substring(0, colon), Integer.parseInt(configured.substring(colon + 1)));
+	}
+
+	/** @return the address of {@code serviceName} */
+	public InetSocketAddress address(String serviceName) {
+		InetSocketAddress $ = find(serviceName);
+		if ($ == null) throw new RemoteException("unknown service " + serviceName);
+		return $;
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataInput} reading a received frame in place
+ * @author amitport
+ */
+final class BufferInput implements DataInput {
+	private final ByteBuffer buffer;
+
+	BufferInput(ByteBuffer frame) {
+		this.buffer = frame;
+	}
+
+	private ByteBuffer require(int bytes) throws EOFException {
+		if (buffer.remaining() < bytes) throw new EOFException("frame ended " + (bytes - buffer.remaining()) + " bytes early");
+		return buffer;
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		require(len).get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		n = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + n);
+		return n;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return require(1).get() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return require(1).get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return require(1).get() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return require(2).getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return require(2).getShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return require(2).getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return require(4).getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return require(8).getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return require(4).getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return require(8).getDouble();
+	}
+
+	@Override
+	@Deprecated
+	public String readLine() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		try {
+			return DataInputStream.readUTF(this);
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link DataOutput} over a growable buffer that is reused for every frame of a codec,
+ * only the finished frame is copied (once) out of it
+ * @author amitport
+ */
+final class BufferOutput implements DataOutput {
+	private ByteBuffer buffer;
+
+	BufferOutput(int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity);
+	}
+
+	void clear() {
+		buffer.clear();
+	}
+
+	int size() {
+		return buffer.position();
+	}
+
+	/** @return a copy of the bytes written since the last {@link #clear()}, ready to be read */
+	ByteBuffer frame() {
+		ByteBuffer $ = ByteBuffer.allocate(buffer.position());
+		$.put(buffer.array(), 0, buffer.position());
+		$.flip();
+		return $;
+	}
+
+	private ByteBuffer ensure(int bytes) {
+		if (buffer.remaining() < bytes) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+		return buffer;
+	}
+
+	@Override
+	public void write(int b) {
+		ensure(1).put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensure(len).put(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) {
+		ensure(2).putShort((short) v);
+	}
+
+	@Override
+	public void writeChar(int v) {
+		ensure(2).putChar((char) v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		ensure(4).putInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) {
+		ensure(8).putLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		ensure(4).putFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		ensure(8).putDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		for (int i = 0; i < s.length(); i++) write(s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s) {
+		for (int i = 0; i < s.length(); i++) writeChar(s.charAt(i));
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		int start = size();
+		writeShort(0);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c != 0 && c < 0x80) {
+				write(c);
+			} else if (c < 0x800) {
+				write(0xC0 | (c >> 6));
+				write(0x80 | (c & 0x3F));
+			} else {
+				write(0xE0 | (c >> 12));
+				write(0x80 | ((c >> 6) & 0x3F));
+				write(0x80 | (c & 0x3F));
+			}
+		}
+		int length = size() - start - 2;
+		if (length > 0xFFFF) throw new IOException("string too long for UTF " + length);
+		buffer.putShort(start, (short) length);
+	}
+}
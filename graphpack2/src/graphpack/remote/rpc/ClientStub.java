@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.remote.IAsyncClient;
+import graphpack.remote.IAsyncNode;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A client of a remote service (see {@link ServiceStub})
+ * @author amitport
+ */
+final class ClientStub implements IClient, IAsyncClient {
+	final RpcConnectionManager manager;
+	final ClientLocation sender;
+	final String serviceName, clientName;
+
+	ClientStub(RpcConnectionManager manager, ClientLocation sender, String serviceName, String clientName) {
+		this.manager = manager;
+		this.sender = sender;
+		this.serviceName = serviceName;
+		this.clientName = clientName;
+	}
+
+	private <T> ListenableFuture<T> call(Op op, Object... args) {
+		return manager.call(serviceName, op, sender, clientName, null, null, args);
+	}
+
+	@Override
+	public ListenableFuture<String> testAsync() {
+		return call(Op.CLIENT_TEST);
+	}
+
+	@Override
+	public ListenableFuture<Void> createNodeAsync(String nodeName) {
+		return call(Op.CREATE_NODE, nodeName);
+	}
+
+	@Override
+	public ListenableFuture<Collection<String>> nodeNamesAsync() {
+		return call(Op.NODE_NAMES);
+	}
+
+	@Override
+	public ListenableFuture<Void> addEdgesAsync(List<EdgeTuple> edges) {
+		return call(Op.CLIENT_ADD_EDGES, edges);
+	}
+
+	@Override
+	public IAsyncNode asyncNode(String nodeName) {
+		return new NodeStub(manager, sender, new NodeLocation(serviceName, clientName, nodeName));
+	}
+
+	@Override
+	public String test() {
+		return RpcConnectionManager.await(testAsync());
+	}
+
+	/** connects to {@code targetService} on behalf of this (remote) client */
+	@Override
+	public IService connect(String targetService) {
+		return manager.connect(serviceName, clientName, targetService);
+	}
+
+	@Override
+	public void createNode(String nodeName) {
+		RpcConnectionManager.await(createNodeAsync(nodeName));
+	}
+
+	/** @return the node named {@code nodeName}, whether it exists is only checked by the calls made through it */
+	@Override
+	public INode node(String nodeName) {
+		return new NodeStub(manager, sender, new NodeLocation(serviceName, clientName, nodeName));
+	}
+
+	@Override
+	public Collection<String> nodeNames() {
+		return RpcConnectionManager.await(nodeNamesAsync());
+	}
+
+	@Override
+	public void addEdges(List<EdgeTuple> edges) {
+		RpcConnectionManager.await(addEdgesAsync(edges));
+	}
+
+	@Override
+	public String toString() {
+		return "<remote " + serviceName + "." + clientName + " for " + sender + ">";
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * A connection of a {@link ITransport}, carries frames (byte arrays) in order in both directions
+ * @author amitport
+ */
+public interface IChannel {
+	/** sends the bytes between the position and the limit of {@code frame} as a single frame, may be called by any thread */
+	void send(ByteBuffer frame);
+	boolean isOpen();
+	void close();
+
+	/*** static ***/
+
+	/**
+	 * receives the frames of a channel, called by a single (transport) thread at a time, which must not block
+	 * @author amitport
+	 */
+	public static interface Listener {
+		void received(IChannel channel, ByteBuffer frame);
+		/** the channel was closed, by either side, @param cause {@code null} if it was closed on purpose */
+		void closed(IChannel channel, @Nullable Throwable cause);
+	}
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import java.io.IOException;
+
+/**
+ * Opens {@link IChannel}s between services, the remote calls themselves are layered on top
+ * (see {@link RpcConnectionManager})
+ * @author amitport
+ */
+public interface ITransport {
+	/** starts accepting channels to {@code serviceName} */
+	void listen(String serviceName, Acceptor acceptor) throws IOException;
+	/** stops accepting channels to {@code serviceName} (channels already accepted stay open) */
+	void unlisten(String serviceName);
+	/** @return a new channel to the service listening as {@code serviceName}, its frames are passed to {@code listener} */
+	IChannel connect(String serviceName, IChannel.Listener listener) throws IOException;
+
+	/*** static ***/
+
+	/**
+	 * @author amitport
+	 */
+	public static interface Acceptor {
+		/** @return the listener of a newly accepted channel */
+		IChannel.Listener accepted(IChannel channel);
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.matching.Result;
+
+import java.util.List;
+
+/**
+ * A single frame of the remote call protocol. Every request gets exactly one response (or error), streaming requests
+ * also get batches of results (and the number of edges a traversal matched) before it,
+ * and a client that no longer wants results cancels its request
+ * @author amitport
+ */
+final class Message {
+	final static byte REQUEST = 1, RESPONSE = 2, RESULTS = 3, ERROR = 4, CANCEL = 5, EXPANDED = 6;
+
+	final byte kind;
+	final long id;//of the request
+	//requests
+	final Op op;
+	final ClientLocation sender;
+	final String clientName, nodeName;//null for operations of the service (or the client)
+	final Object[] args;
+	//responses (the returned value), results (a list of Result), expansions (a Long) and errors (the message)
+	final Object value;
+
+	private Message(byte kind, long id, Op op, ClientLocation sender, String clientName, String nodeName, Object[] args, Object value) {
+		this.kind = kind;
+		this.id = id;
+		this.op = op;
+		this.sender = sender;
+		this.clientName = clientName;
+		this.nodeName = nodeName;
+		this.args = args;
+		this.value = value;
+	}
+
+	static Message request(long id, Op op, ClientLocation sender, String clientName, String nodeName, Object[] args) {
+		return new Message(REQUEST, id, op, sender, clientName, nodeName, args, null);
+	}
+
+	static Message response(long id, Object value) {
+		return new Message(RESPONSE, id, null, null, null, null, null, value);
+	}
+
+	static Message results(long id, List<Result> results) {
+		return new Message(RESULTS, id, null, null, null, null, null, results);
+	}
+
+	static Message expanded(long id, long expanded) {
+		return new Message(EXPANDED, id, null, null, null, null, null, expanded);
+	}
+
+	static Message error(long id, String message) {
+		return new Message(ERROR, id, null, null, null, null, null, message);
+	}
+
+	static Message cancel(long id) {
+		return new Message(CANCEL, id, null, null, null, null, null, null);
+	}
+
+	@Override
+	public String toString() {
+		switch (kind) {
+		case REQUEST: return "request " + id + " " + op + " of " + sender;
+		case RESPONSE: return "response " + id;
+		case RESULTS: return "results " + id;
+		case EXPANDED: return "expanded " + id + " " + value;
+		case ERROR: return "error " + id + " " + value;
+		default: return "cancel " + id;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.INode;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.matching.ResultSet;
+import graphpack.remote.IAsyncNode;
+import graphpack.taskprocessing.ITask;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A node of a remote service (see {@link ServiceStub}), the ends of its edges are stubs as well
+ * @author amitport
+ */
+final class NodeStub implements INode, IAsyncNode {
+	final RpcConnectionManager manager;
+	final ClientLocation sender;
+	final NodeLocation location;
+
+	NodeStub(RpcConnectionManager manager, ClientLocation sender, NodeLocation location) {
+		this.manager = manager;
+		this.sender = sender;
+		this.location = location;
+	}
+
+	private <T> ListenableFuture<T> call(Op op, IResultConsumer consumer, Object... args) {
+		return manager.call(location.getServiceName(), op, sender, location.getClientName(), location.getNodeName(), consumer, args);
+	}
+
+	@Override
+	public NodeLocation location() {
+		return location;
+	}
+
+	@Override
+	public ListenableFuture<String> testAsync() {
+		return call(Op.NODE_TEST, null);
+	}
+
+	@Override
+	public ListenableFuture<List<SerializableEdge>> getOutgoingEdgesAsync(EdgeSelector selector) {
+		return call(Op.OUTGOING_EDGES, null, selector);
+	}
+
+	@Override
+	public ListenableFuture<List<SerializableEdge>> getIncomingEdgesAsync() {
+		return call(Op.INCOMING_EDGES, null);
+	}
+
+	@Override
+	public ListenableFuture<Void> addOutgoingEdgeAsync(NodeLocation target, Payload payload) {
+		return call(Op.ADD_OUTGOING_EDGE, null, target, payload);
+	}
+
+	@Override
+	public ListenableFuture<Void> addOutgoingEdgesAsync(List<EdgeTuple> edges) {
+		return call(Op.ADD_OUTGOING_EDGES, null, edges);
+	}
+
+	@Override
+	public ListenableFuture<Void> addIncomingEdgesAsync(List<SerializableEdge> edges) {
+		return call(Op.ADD_INCOMING_EDGES, null, edges);
+	}
+
+	@Override
+	public ListenableFuture<Boolean> traverseAsync(Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+		return call(Op.TRAVERSE, consumer, matcher, options);
+	}
+
+	@Override
+	public ListenableFuture<Boolean> traverseAsync(IResultConsumer consumer, String path, Object... params) {
+		return call(Op.TRAVERSE_PATH, consumer, path, params);
+	}
+
+	@Override
+	public ListenableFuture<Void> callTaskAsync(String taskName, Object... params) {
+		return call(Op.CALL_TASK, null, taskName, params);
+	}
+
+	@Override
+	public String test() {
+		return RpcConnectionManager.await(testAsync());
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges() {
+		return getOutgoingEdges(null);
+	}
+
+	@Override
+	public List<Edge> getOutgoingEdges(EdgeSelector selector) {
+		List<SerializableEdge> edges = RpcConnectionManager.await(getOutgoingEdgesAsync(selector));
+		List<Edge> $ = new ArrayList<Edge>(edges.size());
+		for (SerializableEdge e : edges) $.add(new Edge(e.source, manager.node(sender, e.target), e.num, e.payload));
+		return $;
+	}
+
+	@Override
+	public void addOutgoingEdge(NodeLocation target, Payload payload) {
+		RpcConnectionManager.await(addOutgoingEdgeAsync(target, payload));
+	}
+
+	@Override
+	public void addOutgoingEdges(List<EdgeTuple> edges) {
+		RpcConnectionManager.await(addOutgoingEdgesAsync(edges));
+	}
+
+	@Override
+	public List<Edge> getIncomingEdges() {
+		List<SerializableEdge> edges = RpcConnectionManager.await(getIncomingEdgesAsync());
+		List<Edge> $ = new ArrayList<Edge>(edges.size());
+		for (SerializableEdge e : edges) $.add(Edge.incoming(manager.node(sender, e.source), e));
+		return $;
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		RpcConnectionManager.await(addIncomingEdgesAsync(edges));
+	}
+
+	@Override
+	public ResultSet traverse(String path, Object... params) {
+		ResultSet $ = new ResultSet();
+		traverse(new IResultConsumer.Collector($), path, params);
+		return $;
+	}
+
+	@Override
+	public ResultSet traverse(Matcher matcher) {
+		ResultSet $ = new ResultSet();
+		traverse(matcher, new IResultConsumer.Collector($));
+		return $;
+	}
+
+	@Override
+	public boolean traverse(IResultConsumer consumer, String path, Object... params) {
+		return RpcConnectionManager.await(traverseAsync(consumer, path, params));
+	}
+
+	@Override
+	public boolean traverse(Matcher matcher, IResultConsumer consumer) {
+		return traverse(matcher, TraversalOptions.DEFAULT, consumer);
+	}
+
+	@Override
+	public ResultSet traverse(TraversalOptions options, String path, Object... params) {
+		ListenableFuture<ResultSet> $ = call(Op.TRAVERSE_PATH_BOUNDED, null, options, path, params);
+		return RpcConnectionManager.await($);
+	}
+
+	@Override
+	public boolean traverse(Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+		return RpcConnectionManager.await(traverseAsync(matcher, options, consumer));
+	}
+
+	@Override
+	public void addTask(String taskName, Class<? extends ITask> task) {
+		ListenableFuture<Void> $ = call(Op.ADD_TASK, null, taskName, task);
+		RpcConnectionManager.await($);
+	}
+
+	@Override
+	public void callTask(String taskName, Object... params) {
+		RpcConnectionManager.await(callTaskAsync(taskName, params));
+	}
+
+	@Override
+	public String toString() {
+		return "<remote " + location + " for " + sender + ">";
+	}
+}
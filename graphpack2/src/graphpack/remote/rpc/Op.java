@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+/**
+ * The remote operations, sent by ordinal (so new operations are only appended)
+ * @author amitport
+ */
+enum Op {
+	SERVICE_TEST, CREATE_CLIENT, CLIENT_NAMES, SERVICE_ADD_EDGES, TRAVERSE_BATCH(true),
+	CLIENT_TEST, CREATE_NODE, NODE_NAMES, CLIENT_ADD_EDGES,
+	NODE_TEST, OUTGOING_EDGES, INCOMING_EDGES, ADD_OUTGOING_EDGE, ADD_OUTGOING_EDGES, ADD_INCOMING_EDGES,
+	TRAVERSE(true), TRAVERSE_PATH(true), TRAVERSE_PATH_BOUNDED, ADD_TASK, CALL_TASK,
+	SERVICE_ADD_INCOMING_EDGES;
+
+	/** true IFF results are streamed to a consumer before the response */
+	final boolean streaming;
+
+	private Op() {
+		this(false);
+	}
+
+	private Op(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	private final static Op[] values = values();
+
+	static Op of(int ordinal) {
+		if (ordinal < 0 || ordinal >= values.length) throw new IllegalArgumentException("unknown operation " + ordinal);
+		return values[ordinal];
+	}
+}
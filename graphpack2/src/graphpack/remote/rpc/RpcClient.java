@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Result;
+import graphpack.remote.RemoteException;
+import graphpack.traversal.IExpansionCounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * The calling end of a channel, any number of calls (of any number of threads) are multiplexed over it.
+ * <p>
+ * The transport thread only decodes frames: calls without a consumer are completed right away, the results of
+ * streaming calls (in batches) (and then their completion) are handed to the consumer in order by an executor thread, so a
+ * slow (or blocking) consumer delays neither the channel nor the other calls.
+ * @author amitport
+ */
+final class RpcClient implements IChannel.Listener {
+	private final RpcCodec codec;
+	private final Executor delivery;
+	private final AtomicLong ids = new AtomicLong();
+	private final ConcurrentMap<Long,Call> calls = new ConcurrentHashMap<Long,Call>();
+	private volatile IChannel channel;
+	private volatile Throwable closed;//the reason, once closed
+
+	RpcClient(RpcCodec codec, Executor delivery) {
+		this.codec = codec;
+		this.delivery = delivery;
+	}
+
+	void open(IChannel channel) {
+		this.channel = channel;
+	}
+
+	boolean isOpen() {
+		return closed == null && channel.isOpen();
+	}
+
+	void close() {
+		channel.close();
+	}
+
+	/** @return the (typed) future of the call's response */
+	@SuppressWarnings("unchecked")
+	<T> ListenableFuture<T> call(Op op, ClientLocation sender, String clientName, String nodeName,
+			IResultConsumer consumer, Object... args) {
+		Call call = new Call(ids.incrementAndGet(), consumer);
+		calls.put(call.id, call);
+		if (closed != null) {
+			calls.remove(call.id);
+			call.fail(closed);
+		} else {
+			try {
+				send(Message.request(call.id, op, sender, clientName, nodeName, args));
+			} catch (RuntimeException e) {
+				calls.remove(call.id);
+				call.fail(e);
+			}
+		}
+		return (ListenableFuture<T>) call.future;
+	}
+
+	private void send(Message m) {
+		synchronized (codec) {//frames must be sent in the order they were encoded
+			channel.send(codec.encode(m));
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void received(IChannel channel, ByteBuffer frame) {
+		Message m = codec.decode(frame);
+		Call call = (m.kind == Message.RESULTS || m.kind == Message.EXPANDED) ? calls.get(m.id) : calls.remove(m.id);
+		if (call == null) return;//cancelled results still in flight
+		switch (m.kind) {
+		case Message.RESULTS:
+			call.results((List<Result>) m.value);
+			break;
+		case Message.EXPANDED:
+			call.expanded((Long) m.value);
+			break;
+		case Message.RESPONSE:
+			call.complete(m.value);
+			break;
+		case Message.ERROR:
+			call.fail(new RemoteException((String) m.value));
+			break;
+		}
+	}
+
+	@Override
+	public void closed(IChannel channel, Throwable cause) {
+		closed = new RemoteException("connection closed",
+				(cause instanceof IOException) ? cause : new IOException("connection closed", cause));
+		for (Long id : calls.keySet()) {
+			Call call = calls.remove(id);
+			if (call != null) call.fail(closed);
+		}
+	}
+
+	/*** static ***/
+
+	/**
+	 * the response (or error) of a call
+	 * @author amitport
+	 */
+	private static final class Completion {
+		final Object value;
+		final Throwable failure;
+		Completion(Object value, Throwable failure) {
+			this.value = value;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * a pending call, its inbox is drained by a single executor thread at a time
+	 * @author amitport
+	 */
+	final class Call implements Runnable {
+		final long id;
+		final IResultConsumer consumer;//null for calls that don't stream
+		final SettableFuture<Object> future = SettableFuture.create();
+		private final Queue<Object> inbox = new ConcurrentLinkedQueue<Object>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private boolean stopped;//the consumer asked to stop (or failed), only touched while draining
+		private RuntimeException consumerFailure;
+
+		Call(long id, IResultConsumer consumer) {
+			this.id = id;
+			this.consumer = consumer;
+		}
+
+		void results(List<Result> results) {
+			enqueue(results);
+		}
+
+		void expanded(Long expanded) {
+			enqueue(expanded);
+		}
+
+		void complete(Object value) {
+			if (consumer == null) future.set(value);
+			else enqueue(new Completion(value, null));
+		}
+
+		void fail(Throwable failure) {
+			if (consumer == null) future.setException(failure);
+			else enqueue(new Completion(null, failure));
+		}
+
+		private void enqueue(Object o) {
+			inbox.add(o);
+			if (scheduled.compareAndSet(false, true)) delivery.execute(this);
+		}
+
+		@Override
+		public void run() {
+			do {
+				for (Object o = inbox.poll(); o != null; o = inbox.poll()) handle(o);
+				scheduled.set(false);
+			} while (!inbox.isEmpty() && scheduled.compareAndSet(false, true));
+		}
+
+		@SuppressWarnings("unchecked")
+		private void handle(Object o) {
+			if (o instanceof Completion) {
+				Completion c = (Completion) o;
+				if (c.failure != null) future.setException(c.failure);
+				else if (consumerFailure != null) future.setException(consumerFailure);
+				else future.set(stopped ? Boolean.FALSE : c.value);//the consumer stopped the traversal before it completed
+				return;
+			}
+			if (o instanceof Long) {//counted even once stopped, the edges were matched anyway
+				if (consumer instanceof IExpansionCounter) ((IExpansionCounter) consumer).expanded((Long) o);
+				return;
+			}
+			try {
+				for (Result r : (List<Result>) o) {
+					if (stopped) return;
+					if (!consumer.accept(r)) stop();
+				}
+			} catch (RuntimeException e) {
+				consumerFailure = e;
+				stop();
+			}
+		}
+
+		private void stop() {
+			stopped = true;
+			try {
+				send(Message.cancel(id));
+			} catch (RuntimeException e) {
+				//the channel is gone, so is the call
+			}
+		}
+	}
+}
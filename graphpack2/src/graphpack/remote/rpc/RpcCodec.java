@@ -0,0 +1,533 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.Edge.Payload;
+import graphpack.EdgeTuple;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.codec.PayloadCodecs;
+import graphpack.codec.Varints;
+import graphpack.matching.Automaton;
+import graphpack.matching.Automaton.Frame;
+import graphpack.matching.CompiledMatcher;
+import graphpack.matching.Matcher;
+import graphpack.matching.Result;
+import graphpack.matching.ResultSchema;
+import graphpack.matching.ResultSet;
+import graphpack.remote.RemoteException;
+import graphpack.traversal.PathSemantics;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes {@link Message}s to compact binary frames: the kind, the request id and the body, whose values are
+ * tagged with their type.
+ * <p>
+ * There is a codec for every end of every channel, messages are encoded in the order they are sent and decoded
+ * in the order they are received, so each direction of a channel keeps tables of what was already sent
+ * (see {@link WireTable}):
+ * <ul>
+ * <li>names (of services, clients, nodes and variables, and other short strings) are sent once and then by slot</li>
+ * <li>result schemas are sent once, a result is then just its schema's slot and its values</li>
+ * <li>automata of compiled matchers (with their predicates) are sent once, a compiled matcher is then the
+ * automaton's slot and its state (the part of the tree already reached); other matchers are sent once per instance</li>
+ * </ul>
+ * Payloads are written by their {@link PayloadCodecs}, values of other types fall back to java serialization.
+ * @author amitport
+ */
+class RpcCodec {
+	final static int MAX_NAMES = 1 << 14, MAX_SCHEMAS = 1 << 10, MAX_MATCHERS = 1 << 10;
+	/** longer strings are sent in full every time */
+	final static int MAX_NAME_LENGTH = 256;
+
+	final static byte NULL = 0, TRUE = 1, FALSE = 2, INT = 3, LONG = 4, NAME = 5, TEXT = 6, LIST = 7, ARRAY = 8,
+			NODE = 9, CLIENT = 10, EDGE = 11, TUPLE = 12, PAYLOAD = 13, RESULT = 14, RESULT_SET = 15, UNASSIGNED = 16,
+			COMPILED = 17, MATCHER = 18, OPTIONS = 19, BATCH = 20, SERIALIZED = 21;
+
+	//sent definitions, only touched while encoding
+	private final BufferOutput out = new BufferOutput(256);
+	private final WireTable<String> names = new WireTable<String>(MAX_NAMES, false);
+	private final WireTable<ResultSchema> schemas = new WireTable<ResultSchema>(MAX_SCHEMAS, true);
+	private final WireTable<Object> matchers = new WireTable<Object>(MAX_MATCHERS, true);//automata and matcher trees
+	//received definitions, only touched while decoding
+	private Object[] inNames = new Object[64], inSchemas = new Object[16], inMatchers = new Object[16];
+
+	ByteBuffer encode(Message m) {
+		out.clear();
+		try {
+			out.writeByte(m.kind);
+			Varints.writeUnsigned(out, m.id);
+			switch (m.kind) {
+			case Message.REQUEST:
+				out.writeByte(m.op.ordinal());
+				writeClient(m.sender);
+				writeName(m.clientName);
+				writeName(m.nodeName);
+				writeValue(m.args);
+				break;
+			case Message.RESPONSE:
+				writeValue(m.value);
+				break;
+			case Message.RESULTS:
+				@SuppressWarnings("unchecked")
+				List<Result> results = (List<Result>) m.value;
+				Varints.writeUnsigned(out, results.size());
+				for (Result r : results) writeResult(r);
+				break;
+			case Message.EXPANDED:
+				Varints.writeUnsigned(out, (Long) m.value);
+				break;
+			case Message.ERROR:
+				Varints.writeString(out, (String) m.value);
+				break;
+			}
+			names.commit();
+			schemas.commit();
+			matchers.commit();
+			return out.frame();
+		} catch (IOException e) {
+			rollback();
+			throw new IllegalArgumentException("can't encode " + m, e);//the connection is still usable
+		} catch (RuntimeException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	private void rollback() {
+		names.rollback();
+		schemas.rollback();
+		matchers.rollback();
+	}
+
+	Message decode(ByteBuffer frame) {
+		BufferInput in = new BufferInput(frame);
+		try {
+			byte kind = in.readByte();
+			long id = Varints.readUnsigned(in);
+			switch (kind) {
+			case Message.REQUEST:
+				Op op = Op.of(in.readUnsignedByte());
+				ClientLocation sender = readClient(in);
+				String clientName = readName(in), nodeName = readName(in);
+				return Message.request(id, op, sender, clientName, nodeName, (Object[]) readValue(in));
+			case Message.RESPONSE:
+				return Message.response(id, readValue(in));
+			case Message.RESULTS:
+				int size = Varints.readUnsignedInt(in);
+				List<Result> results = new ArrayList<Result>(size);
+				for (int i = 0; i < size; i++) results.add(readResult(in));
+				return Message.results(id, results);
+			case Message.EXPANDED:
+				return Message.expanded(id, Varints.readUnsigned(in));
+			case Message.ERROR:
+				return Message.error(id, Varints.readString(in));
+			case Message.CANCEL:
+				return Message.cancel(id);
+			default:
+				throw new RemoteException("unknown message kind " + kind);
+			}
+		} catch (IOException e) {
+			throw new RemoteException("can't decode a message", e);
+		} catch (ClassNotFoundException e) {
+			throw new RemoteException("can't decode a message", e);
+		}
+	}
+
+	/*** values ***/
+
+	private void writeValue(Object v) throws IOException {
+		if (v == null) {
+			out.writeByte(NULL);
+		} else if (v instanceof Boolean) {
+			out.writeByte(((Boolean) v) ? TRUE : FALSE);
+		} else if (v instanceof Integer) {
+			out.writeByte(INT);
+			Varints.writeSigned(out, (Integer) v);
+		} else if (v instanceof Long) {
+			out.writeByte(LONG);
+			Varints.writeSigned(out, (Long) v);
+		} else if (v instanceof String) {
+			String s = (String) v;
+			if (s.length() <= MAX_NAME_LENGTH) {
+				out.writeByte(NAME);
+				writeName(s);
+			} else {
+				out.writeByte(TEXT);
+				Varints.writeString(out, s);
+			}
+		} else if (v instanceof NodeLocation) {
+			out.writeByte(NODE);
+			writeLocation((NodeLocation) v);
+		} else if (v instanceof ClientLocation) {
+			out.writeByte(CLIENT);
+			writeClient((ClientLocation) v);
+		} else if (v instanceof SerializableEdge) {
+			out.writeByte(EDGE);
+			writeEdge((SerializableEdge) v);
+		} else if (v instanceof EdgeTuple) {
+			EdgeTuple t = (EdgeTuple) v;
+			out.writeByte(TUPLE);
+			writeLocation(t.getSource());
+			writeLocation(t.getTarget());
+			PayloadCodecs.write(out, t.getPayload());
+		} else if (v instanceof Payload) {
+			out.writeByte(PAYLOAD);
+			PayloadCodecs.write(out, (Payload) v);
+		} else if (v instanceof Result) {
+			out.writeByte(RESULT);
+			writeResult((Result) v);
+		} else if (v == Result.UNASSIGNED_VALUE) {
+			out.writeByte(UNASSIGNED);
+		} else if (v instanceof ResultSet) {
+			ResultSet rs = (ResultSet) v;
+			out.writeByte(RESULT_SET);
+			out.writeBoolean(rs.isTruncated());
+			Varints.writeUnsigned(out, rs.size());
+			for (Result r : rs) writeResult(r);
+		} else if (v instanceof Matcher) {
+			writeMatcher((Matcher) v);
+		} else if (v instanceof TraversalOptions) {
+			TraversalOptions o = (TraversalOptions) v;
+			out.writeByte(OPTIONS);
+			out.writeByte(o.getSemantics().ordinal());
+			Varints.writeUnsigned(out, o.getLimit());
+			Varints.writeSigned(out, o.getDeadline());
+			Varints.writeUnsigned(out, o.getMaxExpandedEdges());
+			writeValue(o.getCancellation());
+		} else if (v instanceof TraversalBatch) {
+			TraversalBatch b = (TraversalBatch) v;
+			out.writeByte(BATCH);
+			writeName(b.getServiceName());
+			Varints.writeUnsigned(out, b.size());
+			for (int i = 0; i < b.size(); i++) {
+				writeLocation(b.location(i));
+				writeMatcher(b.matcher(i));
+			}
+		} else if (v instanceof List) {
+			List<?> l = (List<?>) v;
+			out.writeByte(LIST);
+			Varints.writeUnsigned(out, l.size());
+			for (Object o : l) writeValue(o);
+		} else if (v.getClass() == Object[].class) {
+			Object[] a = (Object[]) v;
+			out.writeByte(ARRAY);
+			Varints.writeUnsigned(out, a.length);
+			for (Object o : a) writeValue(o);
+		} else {
+			out.writeByte(SERIALIZED);
+			Varints.writeBytes(out, serialize(v));
+		}
+	}
+
+	private Object readValue(DataInput in) throws IOException, ClassNotFoundException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL: return null;
+		case TRUE: return Boolean.TRUE;
+		case FALSE: return Boolean.FALSE;
+		case INT: return (int) Varints.readSigned(in);
+		case LONG: return Varints.readSigned(in);
+		case NAME: return readName(in);
+		case TEXT: return Varints.readString(in);
+		case NODE: return readLocation(in);
+		case CLIENT: return readClient(in);
+		case EDGE: return readEdge(in);
+		case TUPLE: return new EdgeTuple(readLocation(in), readLocation(in), PayloadCodecs.read(in));
+		case PAYLOAD: return PayloadCodecs.read(in);
+		case RESULT: return readResult(in);
+		case UNASSIGNED: return Result.UNASSIGNED_VALUE;
+		case RESULT_SET: {
+			ResultSet $ = new ResultSet();
+			boolean truncated = in.readBoolean();
+			for (int i = Varints.readUnsignedInt(in); i > 0; i--) $.add(readResult(in));
+			$.setTruncated(truncated);
+			return $;
+		}
+		case COMPILED:
+		case MATCHER:
+			return readMatcher(tag, in);
+		case OPTIONS: {
+			TraversalOptions $ = new TraversalOptions(PathSemantics.values()[in.readUnsignedByte()]);
+			int limit = Varints.readUnsignedInt(in);
+			long deadline = Varints.readSigned(in), maxExpandedEdges = Varints.readUnsigned(in);
+			Object cancellation = readValue(in);
+			if (limit != TraversalOptions.NO_LIMIT) $ = $.withLimit(limit);
+			if (deadline != TraversalOptions.NO_DEADLINE) $ = $.withDeadline(deadline);
+			if (maxExpandedEdges != TraversalOptions.NO_MAX_EXPANDED_EDGES) $ = $.withMaxExpandedEdges(maxExpandedEdges);
+			if (cancellation != null) $ = $.withCancellation((graphpack.traversal.CancellationToken) cancellation);
+			return $;
+		}
+		case BATCH: {
+			TraversalBatch $ = new TraversalBatch(readName(in));
+			for (int i = Varints.readUnsignedInt(in); i > 0; i--) {
+				NodeLocation location = readLocation(in);
+				$.add(location, readMatcher(in.readByte(), in));
+			}
+			return $;
+		}
+		case LIST: {
+			int size = Varints.readUnsignedInt(in);
+			ArrayList<Object> $ = new ArrayList<Object>(size);
+			for (int i = 0; i < size; i++) $.add(readValue(in));
+			return $;
+		}
+		case ARRAY: {
+			Object[] $ = new Object[Varints.readUnsignedInt(in)];
+			for (int i = 0; i < $.length; i++) $[i] = readValue(in);
+			return $;
+		}
+		case SERIALIZED:
+			return deserialize(Varints.readBytes(in));
+		default:
+			throw new IOException("unknown value tag " + tag);
+		}
+	}
+
+	/*** names and locations ***/
+
+	/** writes the reference to a {@link WireTable} slot ({@code null} is 0), @return true IFF the definition must follow */
+	private boolean writeRef(int slot) throws IOException {
+		boolean defining = slot < 0;
+		if (defining) slot = -slot - 1;
+		Varints.writeUnsigned(out, (((long) slot << 1) | (defining ? 1 : 0)) + 1);
+		return defining;
+	}
+
+	private void writeName(String s) throws IOException {
+		if (s == null) {
+			out.writeByte(0);
+		} else if (writeRef(names.slot(s))) {
+			Varints.writeString(out, s);
+		}
+	}
+
+	private String readName(DataInput in) throws IOException {
+		long ref = Varints.readUnsigned(in);
+		if (ref == 0) return null;
+		int slot = slot(ref, MAX_NAMES);
+		if (defining(ref)) inNames = define(inNames, slot, Varints.readString(in));
+		return (String) inNames[slot];
+	}
+
+	private void writeLocation(NodeLocation l) throws IOException {
+		if (l == null) {
+			out.writeByte(0);
+			return;
+		}
+		writeName(l.getServiceName());
+		writeName(l.getClientName());
+		writeName(l.getNodeName());
+	}
+
+	private NodeLocation readLocation(DataInput in) throws IOException {
+		String serviceName = readName(in);
+		return (serviceName == null) ? null : new NodeLocation(serviceName, readName(in), readName(in));
+	}
+
+	private void writeClient(ClientLocation l) throws IOException {
+		if (l == null) {
+			out.writeByte(0);
+			return;
+		}
+		writeName(l.getServiceName());
+		writeName(l.getClientName());
+	}
+
+	private ClientLocation readClient(DataInput in) throws IOException {
+		String serviceName = readName(in);
+		return (serviceName == null) ? null : new ClientLocation(serviceName, readName(in));
+	}
+
+	private void writeEdge(SerializableEdge e) throws IOException {
+		writeLocation(e.source);
+		writeLocation(e.target);
+		Varints.writeSigned(out, e.num);
+		PayloadCodecs.write(out, e.payload);
+	}
+
+	private SerializableEdge readEdge(DataInput in) throws IOException {
+		NodeLocation source = readLocation(in), target = readLocation(in);
+		long num = Varints.readSigned(in);
+		return new SerializableEdge(source, target, num, PayloadCodecs.read(in));
+	}
+
+	/*** results ***/
+
+	private void writeResult(Result r) throws IOException {
+		ResultSchema schema = r.getSchema();
+		if (writeRef(schemas.slot(schema))) {
+			Varints.writeUnsigned(out, schema.size());
+			for (int i = 0; i < schema.size(); i++) writeName(schema.name(i));
+		}
+		for (int i = 0; i < schema.size(); i++) writeValue(r.get(i));
+	}
+
+	private Result readResult(DataInput in) throws IOException, ClassNotFoundException {
+		long ref = Varints.readUnsigned(in);
+		if (ref == 0) throw new IOException("a result without a schema");
+		int slot = slot(ref, MAX_SCHEMAS);
+		if (defining(ref)) {
+			String[] schemaNames = new String[Varints.readUnsignedInt(in)];
+			for (int i = 0; i < schemaNames.length; i++) schemaNames[i] = readName(in);
+			inSchemas = define(inSchemas, slot, ResultSchema.of(schemaNames));
+		}
+		ResultSchema schema = (ResultSchema) inSchemas[slot];
+		Object[] values = new Object[schema.size()];
+		for (int i = 0; i < values.length; i++) values[i] = readValue(in);
+		return Result.of(schema, values);
+	}
+
+	/*** matchers ***/
+
+	private void writeMatcher(Matcher m) throws IOException {
+		if (!(m instanceof CompiledMatcher)) {
+			out.writeByte(MATCHER);
+			if (writeRef(matchers.slot(m))) Varints.writeBytes(out, serialize(m));
+			return;
+		}
+		CompiledMatcher c = (CompiledMatcher) m;
+		out.writeByte(COMPILED);
+		if (writeRef(matchers.slot(c.getAutomaton()))) Varints.writeBytes(out, serialize(c.getAutomaton()));
+		writeFrame(c.getFrame());
+	}
+
+	private void writeFrame(Frame f) throws IOException {
+		out.writeByte(f.kind());
+		switch (f.kind()) {
+		case Frame.AT:
+		case Frame.REPEAT:
+			Varints.writeUnsigned(out, f.pc());
+			writeResults(f.conformed());
+			writeResults(f.previous());
+			if (f.kind() == Frame.REPEAT) {
+				Varints.writeSigned(out, f.min());
+				Varints.writeSigned(out, f.max());
+			}
+			break;
+		case Frame.DONE:
+			writeResults(f.results());
+			break;
+		case Frame.OR:
+		case Frame.CONS:
+			writeFrame(f.left());
+			writeFrame(f.right());
+			break;
+		}
+	}
+
+	/** writes a (possibly null) result set with the multiplicity of every result */
+	private void writeResults(ResultSet rs) throws IOException {
+		if (rs == null) {
+			out.writeByte(0);
+			return;
+		}
+		out.writeByte(1);
+		Varints.writeUnsigned(out, rs.size());
+		for (Result r : rs) writeResult(r);
+	}
+
+	private Matcher readMatcher(byte tag, DataInput in) throws IOException, ClassNotFoundException {
+		if (tag != MATCHER && tag != COMPILED) throw new IOException("expected a matcher, not tag " + tag);
+		long ref = Varints.readUnsigned(in);
+		if (ref == 0) throw new IOException("a matcher without a definition");
+		int slot = slot(ref, MAX_MATCHERS);
+		if (defining(ref)) inMatchers = define(inMatchers, slot, deserialize(Varints.readBytes(in)));
+		if (tag == MATCHER) return (Matcher) inMatchers[slot];
+		Automaton automaton = (Automaton) inMatchers[slot];
+		return CompiledMatcher.of(automaton, readFrame(automaton, in));
+	}
+
+	private Frame readFrame(Automaton automaton, DataInput in) throws IOException, ClassNotFoundException {
+		byte kind = in.readByte();
+		switch (kind) {
+		case Frame.AT:
+		case Frame.REPEAT: {
+			int pc = Varints.readUnsignedInt(in);
+			ResultSet conformed = readResults(in), previous = readResults(in);
+			try {
+				if (kind == Frame.AT) return automaton.at(pc, conformed, previous);
+				int min = (int) Varints.readSigned(in), max = (int) Varints.readSigned(in);
+				return automaton.repeat(pc, conformed, previous, min, max);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+		case Frame.DONE:
+			return Frame.done(readResults(in));
+		case Frame.FAIL:
+			return Frame.failed();
+		case Frame.OR:
+			return Frame.or(readFrame(automaton, in), readFrame(automaton, in));
+		case Frame.CONS:
+			return Frame.cons(readFrame(automaton, in), readFrame(automaton, in));
+		default:
+			throw new IOException("unknown frame " + kind);
+		}
+	}
+
+	private ResultSet readResults(DataInput in) throws IOException, ClassNotFoundException {
+		if (in.readByte() == 0) return null;
+		ResultSet $ = new ResultSet();
+		for (int i = Varints.readUnsignedInt(in); i > 0; i--) $.add(readResult(in));
+		return $;
+	}
+
+	/*** static ***/
+
+	private static int slot(long ref, int capacity) throws IOException {
+		long $ = (ref - 1) >>> 1;
+		if ($ >= capacity) throw new IOException("slot " + $ + " out of range");
+		return (int) $;
+	}
+
+	private static boolean defining(long ref) {
+		return ((ref - 1) & 1) != 0;
+	}
+
+	private static Object[] define(Object[] table, int slot, Object value) {
+		if (slot >= table.length) table = Arrays.copyOf(table, Math.max(table.length * 2, slot + 1));
+		table[slot] = value;
+		return table;
+	}
+
+	private static byte[] serialize(Object o) throws IOException {
+		if (!(o instanceof Serializable)) throw new IOException(o.getClass().getName() + " can't be sent");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objects = new ObjectOutputStream(bytes);
+		objects.writeObject(o);
+		objects.close();
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+	}
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.matching.IResultConsumer;
+import graphpack.remote.IAsyncConnectionManager;
+import graphpack.remote.IAsyncService;
+import graphpack.remote.RemoteException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Remote calls over the channels of a {@link ITransport}.
+ * <p>
+ * All the calls to a service (of all the clients and threads of this process) are multiplexed over a single channel,
+ * opened on the first call and reopened once it is lost. Connecting only creates stubs, the remote service resolves
+ * the client and the node of every call, so remote proxies cost nothing until they are used.
+ * Every call is asynchronous underneath (see {@link IAsyncService}), blocking calls wait for their response.
+ * <p>
+ * The exported service serves calls on an executor thread each (traversals block while they run), the transport
+ * threads only move frames.
+ * @author amitport
+ */
+public class RpcConnectionManager implements IAsyncConnectionManager {
+	final ITransport transport;
+	final ExecutorService executor;
+	final ScheduledExecutorService scheduler;//flushes batches of results
+	private final ConcurrentMap<String,RpcClient> connections = new ConcurrentHashMap<String,RpcClient>();
+	private final Set<IChannel> accepted = Collections.newSetFromMap(new ConcurrentHashMap<IChannel,Boolean>());
+	private volatile String exported;
+
+	public RpcConnectionManager(ITransport transport) {
+		this.transport = transport;
+		this.executor = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphpack-rpc-%d").build());
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("graphpack-rpc-timer-%d").build());
+	}
+
+	/** @return the codec of one end of a new channel */
+	protected RpcCodec newCodec() {
+		return new RpcCodec();
+	}
+
+	@Override
+	public void export(String serviceName, final IService service) {
+		try {
+			transport.listen(serviceName, new ITransport.Acceptor() {
+				@Override
+				public IChannel.Listener accepted(IChannel channel) {
+					for (Iterator<IChannel> i = accepted.iterator(); i.hasNext();) {
+						if (!i.next().isOpen()) i.remove();
+					}
+					accepted.add(channel);
+					return new RpcServer(service, newCodec(), executor, scheduler);
+				}
+			});
+		} catch (IOException e) {
+			throw new RemoteException("can't export " + serviceName, e);
+		}
+		exported = serviceName;
+	}
+
+	@Override
+	public void unexport() {
+		if (exported != null) transport.unlisten(exported);
+		exported = null;
+		for (IChannel channel : accepted) channel.close();
+		accepted.clear();
+		for (String serviceName : connections.keySet()) {
+			RpcClient connection = connections.remove(serviceName);
+			if (connection != null) connection.close();
+		}
+	}
+
+	@Override
+	public IService connect(String sourceService, String sourceClient, String targetService) {
+		return new ServiceStub(this, new ClientLocation(sourceService, sourceClient), targetService);
+	}
+
+	@Override
+	public IAsyncService connectAsync(String sourceService, String sourceClient, String targetService) {
+		return new ServiceStub(this, new ClientLocation(sourceService, sourceClient), targetService);
+	}
+
+	/** @return a stub of the remote node at {@code location} */
+	INode node(ClientLocation sender, NodeLocation location) {
+		return new NodeStub(this, sender, location);
+	}
+
+	/** @return the open channel to {@code serviceName} */
+	RpcClient connection(String serviceName) {
+		RpcClient $ = connections.get(serviceName);
+		if ($ != null && $.isOpen()) return $;
+		synchronized (connections) {
+			$ = connections.get(serviceName);
+			if ($ != null && $.isOpen()) return $;
+			$ = new RpcClient(newCodec(), executor);
+			try {
+				$.open(transport.connect(serviceName, $));
+			} catch (IOException e) {
+				throw new RemoteException("can't connect to " + serviceName, e);
+			}
+			connections.put(serviceName, $);
+			return $;
+		}
+	}
+
+	<T> ListenableFuture<T> call(String serviceName, Op op, ClientLocation sender, String clientName, String nodeName,
+			IResultConsumer consumer, Object... args) {
+		RpcClient connection;
+		try {
+			connection = connection(serviceName);
+		} catch (RemoteException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		return connection.call(op, sender, clientName, nodeName, consumer, args);
+	}
+
+	/** @return the value of {@code future} once it completes, failures are rethrown */
+	static <T> T await(ListenableFuture<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("interrupted while waiting for a remote call", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RemoteException(String.valueOf(e.getCause()), e.getCause());
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.Edge;
+import graphpack.Edge.Payload;
+import graphpack.EdgeSelector;
+import graphpack.EdgeTuple;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.matching.Result;
+import graphpack.remote.Gateway;
+import graphpack.remote.RemoteException;
+import graphpack.taskprocessing.ITask;
+import graphpack.traversal.IExpansionCounter;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The serving end of a channel, calls are decoded by the transport thread and run (through the {@link Gateway})
+ * by executor threads, results of streaming calls are sent in batches as they are matched (see {@link ResultBatcher})
+ * @author amitport
+ */
+final class RpcServer implements IChannel.Listener {
+	final static int RESULT_BATCH_SIZE = 256;
+	/** milliseconds a result may wait for more results (the first result of a call never waits) */
+	final static long RESULT_BATCH_DELAY = 5;
+
+	private final Gateway.Service gateway;
+	private final Executor executor;
+	private final ScheduledExecutorService scheduler;
+	private final RpcCodec codec;
+	private final ConcurrentMap<Long,AtomicBoolean> cancelled = new ConcurrentHashMap<Long,AtomicBoolean>();//of running streaming calls
+
+	RpcServer(IService service, RpcCodec codec, Executor executor, ScheduledExecutorService scheduler) {
+		this.gateway = new Gateway.Service(service);
+		this.codec = codec;
+		this.executor = executor;
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public void received(final IChannel channel, ByteBuffer frame) {
+		final Message m = codec.decode(frame);
+		if (m.kind == Message.CANCEL) {
+			AtomicBoolean flag = cancelled.get(m.id);
+			if (flag != null) flag.set(true);
+			return;
+		}
+		if (m.kind != Message.REQUEST) throw new RemoteException("unexpected " + m);
+		final AtomicBoolean flag = m.op.streaming ? new AtomicBoolean() : null;
+		if (flag != null) cancelled.put(m.id, flag);//before the call runs, so an early cancel isn't lost
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				serve(channel, m, flag);
+			}
+		});
+	}
+
+	@Override
+	public void closed(IChannel channel, Throwable cause) {
+		for (AtomicBoolean flag : cancelled.values()) flag.set(true);
+	}
+
+	private void serve(final IChannel channel, final Message m, final AtomicBoolean cancelled) {
+		try {
+			ResultBatcher batcher = (cancelled == null) ? null : new ResultBatcher(channel, m.id, cancelled);
+			Object value = invoke(m, batcher);
+			if (batcher != null) batcher.flush();
+			send(channel, Message.response(m.id, value));
+		} catch (Throwable t) {
+			try {
+				send(channel, Message.error(m.id, t.toString()));
+			} catch (RuntimeException e) {
+				//the channel is gone, so is the caller
+			}
+		} finally {
+			if (cancelled != null) this.cancelled.remove(m.id);
+		}
+	}
+
+	private void send(IChannel channel, Message m) {
+		synchronized (codec) {//frames must be sent in the order they were encoded
+			channel.send(codec.encode(m));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object invoke(Message m, IResultConsumer consumer) {
+		Object[] args = m.args;
+		switch (m.op) {
+		case SERVICE_TEST: return gateway.test(m.sender);
+		case CREATE_CLIENT: gateway.createClient(m.sender, (String) args[0]); return null;
+		case CLIENT_NAMES: return new ArrayList<String>(gateway.clientNames(m.sender));
+		case SERVICE_ADD_EDGES: gateway.addEdges(m.sender, (List<EdgeTuple>) args[0]); return null;
+		case SERVICE_ADD_INCOMING_EDGES: gateway.addIncomingEdges(m.sender, (List<SerializableEdge>) args[0]); return null;
+		case TRAVERSE_BATCH: return gateway.traverse(m.sender, (TraversalBatch) args[0], (TraversalOptions) args[1], consumer);
+		default:
+		}
+		Gateway.Client client = gateway.client(m.sender, m.clientName);
+		if (client == null) throw new IllegalArgumentException("no client " + m.clientName);
+		switch (m.op) {
+		case CLIENT_TEST: return client.test(m.sender);
+		case CREATE_NODE: client.createNode(m.sender, (String) args[0]); return null;
+		case NODE_NAMES: return new ArrayList<String>(client.nodeNames(m.sender));
+		case CLIENT_ADD_EDGES: client.addEdges(m.sender, (List<EdgeTuple>) args[0]); return null;
+		default:
+		}
+		Gateway.Node node = client.node(m.sender, m.nodeName);
+		if (node == null) throw new IllegalArgumentException("no node " + m.nodeName + " at " + m.clientName);
+		switch (m.op) {
+		case NODE_TEST: return node.test(m.sender);
+		case OUTGOING_EDGES:
+			return edges((args[0] == null) ? node.getOutgoingEdges(m.sender) : node.getOutgoingEdges(m.sender, (EdgeSelector) args[0]));
+		case INCOMING_EDGES: return edges(node.getIncomingEdges(m.sender));
+		case ADD_OUTGOING_EDGE: node.addOutgoingEdge(m.sender, (NodeLocation) args[0], (Payload) args[1]); return null;
+		case ADD_OUTGOING_EDGES: node.addOutgoingEdges(m.sender, (List<EdgeTuple>) args[0]); return null;
+		case ADD_INCOMING_EDGES: node.addIncomingEdges(m.sender, (List<SerializableEdge>) args[0]); return null;
+		case TRAVERSE: return node.traverse(m.sender, (Matcher) args[0], (TraversalOptions) args[1], consumer);
+		case TRAVERSE_PATH: return node.traverse(m.sender, consumer, (String) args[0], (Object[]) args[1]);
+		case TRAVERSE_PATH_BOUNDED: return node.traverse(m.sender, (TraversalOptions) args[0], (String) args[1], (Object[]) args[2]);
+		case ADD_TASK: node.addTask(m.sender, (String) args[0], (Class<? extends ITask>) args[1]); return null;
+		case CALL_TASK: node.callTask(m.sender, (String) args[0], (Object[]) args[1]); return null;
+		default: throw new IllegalArgumentException("unknown operation " + m.op);
+		}
+	}
+
+	/** @return the edges as they are sent, without node proxies */
+	private static ArrayList<SerializableEdge> edges(List<? extends Edge> edges) {
+		ArrayList<SerializableEdge> $ = new ArrayList<SerializableEdge>(edges.size());
+		for (Edge e : edges) $.add(e.serializableEdge);
+		return $;
+	}
+
+	/*** static ***/
+
+	/**
+	 * sends the results of a streaming call in batches: the first result right away, then a batch once it is full
+	 * or {@link #RESULT_BATCH_DELAY} ms after its first result (by a timer), the rest is sent before the response
+	 * @author amitport
+	 */
+	final class ResultBatcher implements IExpansionCounter {
+		final IChannel channel;
+		final long id;
+		final AtomicBoolean cancelled;
+		private List<Result> batch = new ArrayList<Result>();
+		private boolean sent;//whether any results were sent
+		private ScheduledFuture<?> timer;//flushes the current batch once it waited long enough
+		private final Runnable flusher = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					cancelled.set(true);//the channel is gone, stops the call
+				}
+			}
+		};
+
+		ResultBatcher(IChannel channel, long id, AtomicBoolean cancelled) {
+			this.channel = channel;
+			this.id = id;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		public synchronized boolean accept(Result r) {
+			if (cancelled.get()) return false;
+			batch.add(r);
+			if (!sent || batch.size() >= RESULT_BATCH_SIZE) {
+				flush();
+			} else if (timer == null) {
+				timer = scheduler.schedule(flusher, RESULT_BATCH_DELAY, TimeUnit.MILLISECONDS);
+			}
+			return true;
+		}
+
+		/** sent right away, the response follows it */
+		@Override
+		public void expanded(long expanded) {
+			send(channel, Message.expanded(id, expanded));
+		}
+
+		synchronized void flush() {
+			if (timer != null) {
+				timer.cancel(false);
+				timer = null;
+			}
+			if (batch.isEmpty()) return;
+			sent = true;
+			send(channel, Message.results(id, batch));
+			batch = new ArrayList<Result>();
+		}
+	}
+}
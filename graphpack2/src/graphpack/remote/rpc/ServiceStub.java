@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import graphpack.ClientLocation;
+import graphpack.EdgeTuple;
+import graphpack.IClient;
+import graphpack.IService;
+import graphpack.SerializableEdge;
+import graphpack.matching.IResultConsumer;
+import graphpack.remote.IAsyncClient;
+import graphpack.remote.IAsyncService;
+import graphpack.traversal.TraversalBatch;
+import graphpack.traversal.TraversalOptions;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A remote service, calls go through the connection manager's channel to the service, the blocking calls
+ * simply wait for their asynchronous counterparts
+ * @author amitport
+ */
+final class ServiceStub implements IService, IAsyncService {
+	final RpcConnectionManager manager;
+	final ClientLocation sender;
+	final String serviceName;
+
+	ServiceStub(RpcConnectionManager manager, ClientLocation sender, String serviceName) {
+		this.manager = manager;
+		this.sender = sender;
+		this.serviceName = serviceName;
+	}
+
+	private <T> ListenableFuture<T> call(Op op, IResultConsumer consumer, Object... args) {
+		return manager.call(serviceName, op, sender, null, null, consumer, args);
+	}
+
+	@Override
+	public ListenableFuture<String> testAsync() {
+		return call(Op.SERVICE_TEST, null);
+	}
+
+	@Override
+	public ListenableFuture<Void> createClientAsync(String clientName) {
+		return call(Op.CREATE_CLIENT, null, clientName);
+	}
+
+	@Override
+	public ListenableFuture<Collection<String>> clientNamesAsync() {
+		return call(Op.CLIENT_NAMES, null);
+	}
+
+	@Override
+	public ListenableFuture<Void> addEdgesAsync(List<EdgeTuple> edges) {
+		return call(Op.SERVICE_ADD_EDGES, null, edges);
+	}
+
+	@Override
+	public ListenableFuture<Void> addIncomingEdgesAsync(List<SerializableEdge> edges) {
+		return call(Op.SERVICE_ADD_INCOMING_EDGES, null, edges);
+	}
+
+	@Override
+	public ListenableFuture<Boolean> traverseAsync(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+		return call(Op.TRAVERSE_BATCH, consumer, batch, options);
+	}
+
+	@Override
+	public IAsyncClient asyncClient(String clientName) {
+		return new ClientStub(manager, sender, serviceName, clientName);
+	}
+
+	@Override
+	public String test() {
+		return RpcConnectionManager.await(testAsync());
+	}
+
+	@Override
+	public void createClient(String clientName) {
+		RpcConnectionManager.await(createClientAsync(clientName));
+	}
+
+	/** @return the client named {@code clientName}, whether it exists is only checked by the calls made through it */
+	@Override
+	public IClient client(String clientName) {
+		return new ClientStub(manager, sender, serviceName, clientName);
+	}
+
+	@Override
+	public Collection<String> clientNames() {
+		return RpcConnectionManager.await(clientNamesAsync());
+	}
+
+	@Override
+	public void addEdges(List<EdgeTuple> edges) {
+		RpcConnectionManager.await(addEdgesAsync(edges));
+	}
+
+	@Override
+	public void addIncomingEdges(List<SerializableEdge> edges) {
+		RpcConnectionManager.await(addIncomingEdgesAsync(edges));
+	}
+
+	@Override
+	public boolean traverse(TraversalBatch batch, TraversalOptions options, IResultConsumer consumer) {
+		return RpcConnectionManager.await(traverseAsync(batch, options, consumer));
+	}
+
+	@Override
+	public String toString() {
+		return "<remote " + serviceName + " for " + sender + ">";
+	}
+}
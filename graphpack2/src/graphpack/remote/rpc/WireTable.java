@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.remote.rpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sending half of a table of values both ends of a channel direction keep in sync: a value is defined (sent in
+ * full) the first time it is written and referred to by its slot afterwards. Once the table is full slots are
+ * reused round robin, the receiver replaces the value of a slot when its new definition arrives.
+ * <p>
+ * Definitions of a frame that fails to encode are rolled back, since the receiver never sees them.
+ * Not thread safe, frames are encoded one at a time.
+ * @author amitport
+ */
+final class WireTable<T> {
+	private final Map<T,Integer> slots;
+	private final Object[] values;
+	private int next;
+	private final List<Object> journal = new ArrayList<Object>();//slot and replaced value pairs of the current frame
+	private int journalNext;
+
+	/** @param identity IFF values are the same only when they are the same instance */
+	WireTable(int capacity, boolean identity) {
+		this.slots = identity ? new IdentityHashMap<T,Integer>() : new HashMap<T,Integer>();
+		this.values = new Object[capacity];
+	}
+
+	/** @return the slot of {@code value}, or {@code -slot - 1} if it was just defined (and must be sent in full) */
+	@SuppressWarnings("unchecked")
+	int slot(T value) {
+		Integer $ = slots.get(value);
+		if ($ != null) return $;
+		int slot = next;
+		if (journal.isEmpty()) journalNext = next;
+		journal.add(slot);
+		journal.add(values[slot]);
+		if (values[slot] != null) slots.remove(values[slot]);
+		values[slot] = value;
+		slots.put(value, slot);
+		next = (next + 1) % values.length;
+		return -slot - 1;
+	}
+
+	/** the current frame was sent */
+	void commit() {
+		journal.clear();
+	}
+
+	/** the current frame won't be sent, forgets its definitions */
+	@SuppressWarnings("unchecked")
+	void rollback() {
+		for (int i = journal.size() - 2; i >= 0; i -= 2) {
+			int slot = (Integer) journal.get(i);
+			T replaced = (T) journal.get(i + 1);
+			slots.remove(values[slot]);
+			values[slot] = replaced;
+			if (replaced != null) slots.put(replaced, slot);
+		}
+		if (!journal.isEmpty()) next = journalNext;
+		journal.clear();
+	}
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.remote.IConnectionManager;
+
+import java.util.Deque;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Expands nodes in the order they were discovered (frontier used as a queue)
+ * @author amitport
+ */
+public class BreadthFirstTraversalEngine extends WorkListTraversalEngine {
+	@Inject
+	public BreadthFirstTraversalEngine(@Named("serviceName") String serviceName, IConnectionManager connectionManager) {
+		super(serviceName, connectionManager);
+	}
+
+	public BreadthFirstTraversalEngine(String serviceName) {
+		this(serviceName, null);
+	}
+
+	@Override
+	protected WorkItem next(Deque<WorkItem> frontier) {
+		return frontier.pollFirst();
+	}
+}
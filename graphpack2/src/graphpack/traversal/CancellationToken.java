@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import java.io.Serializable;
+
+/**
+ * Cancels the traversals it was given to (see {@link TraversalOptions#withCancellation}).
+ * A token is checked whenever an edge is matched, so a cancelled traversal stops promptly.
+ * Remote services receive a copy of the token as it was when the hop was made,
+ * cancelling afterwards stops a remote part of the traversal once it hands back its next result.
+ * @author amitport
+ */
+public final class CancellationToken implements Serializable {
+	private static final long serialVersionUID = 2866316475001925310L;
+
+	private volatile boolean cancelled;
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public String toString() {
+		return cancelled ? "cancelled" : "not cancelled";
+	}
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.matching.IResultConsumer;
+
+/**
+ * A consumer that is also told how many edges a remote part of the traversal matched, so
+ * {@link TraversalOptions#getMaxExpandedEdges()} bounds the whole traversal rather than every hop on its own.
+ * Remote services report once, when their part of the traversal is done (before it returns)
+ * @author amitport
+ */
+public interface IExpansionCounter extends IResultConsumer {
+	/** {@code expanded} more edges were matched on behalf of the traversal */
+	void expanded(long expanded);
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.INode;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.matching.ResultSet;
+
+import java.util.List;
+
+/**
+ * Drives a {@link Matcher} over the graph starting at some node
+ * @author amitport
+ */
+public interface ITraversalEngine {
+	/** @return all the results {@code matcher} accepts on paths starting at {@code start} */
+	ResultSet traverse(INode start, Matcher matcher);
+	/**
+	 * feeds {@code consumer} with every result as soon as it is matched
+	 * @return true IFF the traversal completed (i.e. {@code consumer} never asked to stop)
+	 */
+	boolean traverse(INode start, Matcher matcher, IResultConsumer consumer);
+	/**
+	 * same as {@link #traverse(INode, Matcher, IResultConsumer)} with non default {@code options}
+	 * @return true IFF the traversal completed (i.e. {@code consumer} never asked to stop and no bound of {@code options} tripped)
+	 */
+	boolean traverse(INode start, Matcher matcher, TraversalOptions options, IResultConsumer consumer);
+	/**
+	 * traverses from every start node with the matcher at the same position of {@code matchers} as a single traversal
+	 * (i.e. within the same bounds of {@code options})
+	 * @return true IFF the traversal completed
+	 */
+	boolean traverse(List<INode> starts, List<Matcher> matchers, TraversalOptions options, IResultConsumer consumer);
+}
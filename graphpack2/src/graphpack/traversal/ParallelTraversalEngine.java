@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.Edge;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.ResultSet;
+import graphpack.remote.IConnectionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+/**
+ * Depth first traversal that splits the edges of high fan-out nodes into chunks which are matched in parallel.
+ * Matchers are immutable so every chunk simply continues the same matcher; partial results and
+ * continuations are merged back (and fed to the consumer) in chunk order once all chunks are done.
+ * Chunks collect their results through the traversal's bounds, so they stop at its limit, deadline or cancellation
+ * rather than when they are merged.
+ * Nodes with less than {@code fanOutThreshold} outgoing edges are expanded sequentially.
+ * <p>
+ * The expanding thread helps running its own chunks (see {@link FutureTask#run()}), so a traversal always
+ * makes progress even when every pool thread is blocked (e.g. on a remote hop that calls back to this service).
+ * @author amitport
+ */
+public class ParallelTraversalEngine extends DepthFirstTraversalEngine {
+	public final static int DEFAULT_FAN_OUT_THRESHOLD = 1024;
+
+	final int fanOutThreshold;
+	final int parallelism;
+	final ExecutorService executor;
+
+	@Inject
+	public ParallelTraversalEngine(@Named("serviceName") String serviceName, IConnectionManager connectionManager) {
+		this(serviceName, connectionManager, DEFAULT_FAN_OUT_THRESHOLD, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelTraversalEngine(String serviceName, int fanOutThreshold, int parallelism) {
+		this(serviceName, null, fanOutThreshold, parallelism);
+	}
+
+	public ParallelTraversalEngine(String serviceName, IConnectionManager connectionManager, int fanOutThreshold, int parallelism) {
+		super(serviceName, connectionManager);
+		this.fanOutThreshold = Math.max(2, fanOutThreshold);
+		this.parallelism = Math.max(1, parallelism);
+		this.executor = Executors.newFixedThreadPool(this.parallelism,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat(serviceName + "-traversal-%d").build());
+	}
+
+	@Override
+	protected boolean expand(Traversal traversal, WorkItem item, List<Edge> edges, Collection<WorkItem> continuations) {
+		int size = edges.size();
+		if (size < fanOutThreshold || parallelism == 1) return super.expand(traversal, item, edges, continuations);
+
+		int chunks = Math.min(parallelism, size / (fanOutThreshold / 2));
+		List<FutureTask<Partial>> tasks = new ArrayList<FutureTask<Partial>>(chunks);
+		for (int i = 0; i < chunks; i++) {
+			FutureTask<Partial> task = new FutureTask<Partial>(
+					new Chunk(traversal, item, edges.subList(i * size / chunks, (i + 1) * size / chunks)));
+			tasks.add(task);
+			executor.execute(task);
+		}
+
+		for (FutureTask<Partial> task : tasks) {
+			task.run();//no-op if a pool thread already took this chunk
+		}
+		boolean $ = true;
+		for (FutureTask<Partial> task : tasks) {
+			if (!$) {
+				task.cancel(false);
+				continue;
+			}
+			Partial partial = join(task);
+			$ = partial.results.feed(traversal.upstream) && partial.complete;//already counted against the bounds by the chunk
+			continuations.addAll(partial.continuations);
+		}
+		return $;
+	}
+
+	private static Partial join(FutureTask<Partial> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/*** static ***/
+
+	static class Partial {
+		final ResultSet results;
+		final List<WorkItem> continuations;
+		final boolean complete;//false if a bound tripped while matching the chunk
+		Partial(ResultSet results, List<WorkItem> continuations, boolean complete) {
+			this.results = results;
+			this.continuations = continuations;
+			this.complete = complete;
+		}
+	}
+
+	class Chunk implements Callable<Partial> {
+		final Traversal traversal;
+		final WorkItem item;
+		final List<Edge> edges;
+		Chunk(Traversal traversal, WorkItem item, List<Edge> edges) {
+			this.traversal = traversal;
+			this.item = item;
+			this.edges = edges;
+		}
+		@Override
+		public Partial call() {
+			List<WorkItem> continuations = new ArrayList<WorkItem>();
+			ResultSet results = new ResultSet();
+			boolean complete = ParallelTraversalEngine.super.expand(
+					traversal.withConsumer(traversal.bounded(new IResultConsumer.Collector(results))), item, edges, continuations);
+			return new Partial(results, continuations, complete);
+		}
+	}
+}
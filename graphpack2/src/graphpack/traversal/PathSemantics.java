@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+/**
+ * Which paths a traversal follows
+ * @author amitport
+ */
+public enum PathSemantics {
+	/** every walk accepted by the matcher (nodes may repeat), results keep their multiplicity */
+	WALK,
+	/** paths never revisit a node */
+	SIMPLE_PATH,
+	/**
+	 * every (node, matcher state) pair is expanded once, when it is first reached
+	 * (with a breadth first engine this is the shortest path to it).
+	 * The state includes the results bound so far (see {@link graphpack.matching.Matcher#stateKey()}),
+	 * so only paths that bind the same values are merged
+	 */
+	SHORTEST
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.NodeLocation;
+import graphpack.matching.Matcher;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * (node, matcher) pairs of a single service that a traversal continues at, shipped to that service in one request
+ * (see {@link graphpack.IService#traverse(TraversalBatch, TraversalOptions, graphpack.matching.IResultConsumer)})
+ * instead of asking every remote node to traverse itself.
+ * <p>
+ * Matchers reached from the same path usually share their (compiled) state, which is then written once per batch.
+ * @author amitport
+ */
+public final class TraversalBatch implements Serializable {
+	private static final long serialVersionUID = 7305271624150958373L;
+
+	final String serviceName;
+	final List<NodeLocation> locations = new ArrayList<NodeLocation>();
+	final List<Matcher> matchers = new ArrayList<Matcher>();
+
+	public TraversalBatch(String serviceName) {
+		this.serviceName = serviceName;
+	}
+
+	/** continues {@code matcher} at {@code location}, a node of this batch's service */
+	public void add(NodeLocation location, Matcher matcher) {
+		if (!serviceName.equals(location.getServiceName())) {
+			throw new IllegalArgumentException(location + " is not a node of " + serviceName);
+		}
+		locations.add(location);
+		matchers.add(matcher);
+	}
+
+	public String getServiceName() {return serviceName;}
+
+	public int size() {return locations.size();}
+
+	public boolean isEmpty() {return locations.isEmpty();}
+
+	public NodeLocation location(int i) {return locations.get(i);}
+
+	public Matcher matcher(int i) {return matchers.get(i);}
+
+	@Override
+	public String toString() {
+		return "<batch of " + size() + " at " + serviceName + ">";
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per query settings of a traversal, these travel with the query to remote services.
+ * <p>
+ * Besides the path semantics, options bound the work done on behalf of a single query: the number of results,
+ * a deadline, the number of edges matched and an optional {@link CancellationToken}.
+ * A traversal stops as soon as a bound trips and reports that it did not complete
+ * (see {@link graphpack.matching.ResultSet#isTruncated()}).
+ * @author amitport
+ */
+public final class TraversalOptions implements Serializable {
+	private static final long serialVersionUID = -2335393480858224367L;
+
+	public final static int NO_LIMIT = Integer.MAX_VALUE;
+	public final static long NO_DEADLINE = Long.MAX_VALUE;
+	public final static long NO_MAX_EXPANDED_EDGES = Long.MAX_VALUE;
+
+	public final static TraversalOptions DEFAULT = new TraversalOptions(PathSemantics.WALK);
+
+	final PathSemantics semantics;
+	final int limit;
+	final long deadline;//absolute, in System.currentTimeMillis() terms
+	final long maxExpandedEdges;
+	final CancellationToken cancellation;//may be null
+
+	public TraversalOptions(PathSemantics semantics) {
+		this(semantics, NO_LIMIT, NO_DEADLINE, NO_MAX_EXPANDED_EDGES, null);
+	}
+
+	private TraversalOptions(PathSemantics semantics, int limit, long deadline, long maxExpandedEdges, CancellationToken cancellation) {
+		if (limit < 0) throw new IllegalArgumentException("negative limit " + limit);
+		if (maxExpandedEdges < 0) throw new IllegalArgumentException("negative max expanded edges " + maxExpandedEdges);
+		this.semantics = semantics;
+		this.limit = limit;
+		this.deadline = deadline;
+		this.maxExpandedEdges = maxExpandedEdges;
+		this.cancellation = cancellation;
+	}
+
+	public PathSemantics getSemantics() {return semantics;}
+	/** @return the maximal number of results (duplicates included) or {@link #NO_LIMIT} */
+	public int getLimit() {return limit;}
+	/** @return the time (in milliseconds since the epoch) after which the traversal stops, or {@link #NO_DEADLINE} */
+	public long getDeadline() {return deadline;}
+	/** @return the maximal number of edges matched by the traversal or {@link #NO_MAX_EXPANDED_EDGES} */
+	public long getMaxExpandedEdges() {return maxExpandedEdges;}
+	/** @return the token that cancels the traversal, or {@code null} */
+	public CancellationToken getCancellation() {return cancellation;}
+
+	public TraversalOptions withSemantics(PathSemantics semantics) {
+		return new TraversalOptions(semantics, limit, deadline, maxExpandedEdges, cancellation);
+	}
+
+	public TraversalOptions withLimit(int limit) {
+		return new TraversalOptions(semantics, limit, deadline, maxExpandedEdges, cancellation);
+	}
+
+	public TraversalOptions withDeadline(long deadline) {
+		return new TraversalOptions(semantics, limit, deadline, maxExpandedEdges, cancellation);
+	}
+
+	/** @return these options with a deadline {@code timeout} from now */
+	public TraversalOptions withTimeout(long timeout, TimeUnit unit) {
+		long now = System.currentTimeMillis(), millis = unit.toMillis(timeout);
+		return withDeadline((millis >= NO_DEADLINE - now) ? NO_DEADLINE : now + millis);
+	}
+
+	public TraversalOptions withMaxExpandedEdges(long maxExpandedEdges) {
+		return new TraversalOptions(semantics, limit, deadline, maxExpandedEdges, cancellation);
+	}
+
+	public TraversalOptions withCancellation(CancellationToken cancellation) {
+		return new TraversalOptions(semantics, limit, deadline, maxExpandedEdges, cancellation);
+	}
+
+	/** @return true IFF these options may stop a traversal before it completes */
+	public boolean isBounded() {
+		return limit != NO_LIMIT || deadline != NO_DEADLINE || maxExpandedEdges != NO_MAX_EXPANDED_EDGES || cancellation != null;
+	}
+
+	/** @return the options of a remote hop after {@code produced} results were already consumed and {@code expanded} edges were matched */
+	TraversalOptions remaining(int produced, long expanded) {
+		if (!isBounded()) return this;
+		return new TraversalOptions(semantics,
+				(limit == NO_LIMIT) ? NO_LIMIT : Math.max(0, limit - produced),
+				deadline,
+				(maxExpandedEdges == NO_MAX_EXPANDED_EDGES) ? NO_MAX_EXPANDED_EDGES : Math.max(0, maxExpandedEdges - expanded),
+				cancellation);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder $ = new StringBuilder("{semantics=").append(semantics);
+		if (limit != NO_LIMIT) $.append(", limit=").append(limit);
+		if (deadline != NO_DEADLINE) $.append(", deadline=").append(deadline);
+		if (maxExpandedEdges != NO_MAX_EXPANDED_EDGES) $.append(", maxExpandedEdges=").append(maxExpandedEdges);
+		if (cancellation != null) $.append(", ").append(cancellation);
+		return $.append("}").toString();
+	}
+}
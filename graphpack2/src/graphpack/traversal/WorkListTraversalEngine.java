@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright 2012 Amit Portnoy
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package graphpack.traversal;
+
+import graphpack.Edge;
+import graphpack.INode;
+import graphpack.IService;
+import graphpack.NodeLocation;
+import graphpack.matching.IResultConsumer;
+import graphpack.matching.Matcher;
+import graphpack.matching.Result;
+import graphpack.matching.ResultSet;
+import graphpack.remote.IConnectionManager;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traverses the graph iteratively using an explicit frontier of (node, matcher) pairs,
+ * so the stack depth doesn't grow with the length of the matched path.
+ * Only nodes of the local service are expanded here. Continuations at remote nodes are grouped by service into
+ * {@link TraversalBatch}es, a batch is shipped to its service (which evaluates it locally and streams the results back)
+ * once it holds {@link #REMOTE_BATCH_SIZE} continuations or once the local frontier is exhausted, so a query pays
+ * a round trip per remote service rather than per remote node.
+ * Subclasses choose the order in which the frontier is expanded.
+ * Matchers are {@link Matcher#compile() compiled} before the traversal starts.
+ * Nodes are asked only for the edges the matcher may consume (see {@link Matcher#selector()}), which indexed stores
+ * look up instead of scanning every outgoing edge,
+ * incoming edges are fetched only when the matcher may follow an edge backwards (see {@link Matcher#directions()}).
+ * <p>
+ * The bounds of {@link TraversalOptions} are checked whenever an edge is matched and whenever a result is consumed,
+ * remote hops get whatever is left of the budget and report the edges they matched back (see {@link IExpansionCounter}),
+ * so the budget of matched edges is shared by the whole traversal.
+ * @author amitport
+ */
+public abstract class WorkListTraversalEngine implements ITraversalEngine {
+	/** the number of continuations at the same remote service shipped in a single request */
+	public final static int REMOTE_BATCH_SIZE = 512;
+
+	final String serviceName;
+	final IConnectionManager connectionManager;//null if remote nodes are asked to traverse themselves one by one
+
+	protected WorkListTraversalEngine(String serviceName, IConnectionManager connectionManager){
+		this.serviceName = serviceName;
+		this.connectionManager = connectionManager;
+	}
+
+	/** removes and returns the next item to expand from a non empty {@code frontier} */
+	protected abstract WorkItem next(Deque<WorkItem> frontier);
+
+	@Override
+	public ResultSet traverse(INode start, Matcher matcher) {
+		if (matcher == null) return null;
+		ResultSet $ = new ResultSet();
+		traverse(start, matcher, new IResultConsumer.Collector($));
+		return $;
+	}
+
+	@Override
+	public boolean traverse(INode start, Matcher matcher, IResultConsumer consumer) {
+		return traverse(start, matcher, TraversalOptions.DEFAULT, consumer);
+	}
+
+	@Override
+	public boolean traverse(INode start, Matcher matcher, TraversalOptions options, IResultConsumer consumer) {
+		if (matcher == null) return true;
+		return traverse(Collections.singletonList(start), Collections.singletonList(matcher), options, consumer);
+	}
+
+	@Override
+	public boolean traverse(List<INode> starts, List<Matcher> matchers, TraversalOptions options, IResultConsumer consumer) {
+		if (starts.size() != matchers.size()) {
+			throw new IllegalArgumentException(starts.size() + " start nodes but " + matchers.size() + " matchers");
+		}
+		if (starts.isEmpty()) return true;
+		Traversal traversal = new Traversal(options, consumer, starts.get(0).location().getClientName());
+		if (!traversal.withinBounds()) return false;
+		Deque<WorkItem> frontier = new ArrayDeque<WorkItem>();
+		for (int i = 0; i < starts.size(); i++) {
+			INode start = starts.get(i);
+			Matcher matcher = matchers.get(i);
+			if (matcher == null) continue;
+			matcher = matcher.compile();
+			if (!traversal.firstVisit(start.location(), matcher)) continue;
+			frontier.addLast(new WorkItem(start, matcher, new Path(start.location(), null)));
+		}
+		try {
+			while (!frontier.isEmpty()) {
+				WorkItem item = next(frontier);
+				int directions = item.matcher.directions();
+				if ((directions & Matcher.OUTGOING) != 0
+						&& !expand(traversal, item, item.node.getOutgoingEdges(item.matcher.selector()), frontier)) return false;
+				if ((directions & Matcher.INCOMING) != 0
+						&& !expand(traversal, item, item.node.getIncomingEdges(), frontier)) return false;
+			}
+			return shipDeferred(traversal);
+		} finally {
+			traversal.reportExpanded();
+		}
+	}
+
+	/**
+	 * matches {@code edges} (outgoing or incoming edges of {@code item.node}) against {@code item.matcher},
+	 * completed results are fed to the traversal's consumer and local continuations are added to {@code continuations}
+	 * @return false IFF the consumer asked to stop
+	 */
+	protected boolean expand(Traversal traversal, WorkItem item, List<Edge> edges, Collection<WorkItem> continuations) {
+		PathSemantics semantics = traversal.options.semantics;
+		for (Edge e : edges) {
+			if (!traversal.charge()) return false;
+			NodeLocation target = e.targetLocation();
+			if (semantics == PathSemantics.SIMPLE_PATH && item.path.contains(target)) continue;
+			Matcher newMatcher = item.matcher.cont(e.serializableEdge, e.incoming);
+			if (newMatcher.canTake()) {
+				if (!newMatcher.take().feed(traversal.consumer)) return false;
+			}
+			if (newMatcher.canCont() && traversal.firstVisit(target, newMatcher)) {
+				if (isLocal(e)) {
+					Path path = (semantics == PathSemantics.SIMPLE_PATH) ? new Path(target, item.path) : null;
+					continuations.add(new WorkItem(e.target, newMatcher, path));
+				} else {
+					if (!traverseRemote(traversal, e, newMatcher)) return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * continues {@code matcher} at the remote target of {@code e}, the continuation is deferred into the batch of
+	 * the target's service (without a connection manager the target is asked to traverse itself right away)
+	 * @return false IFF the traversal should stop
+	 */
+	protected boolean traverseRemote(Traversal traversal, Edge e, Matcher matcher) {
+		if (connectionManager == null) return e.target.traverse(matcher, traversal.remainingOptions(), traversal.consumer);
+		TraversalBatch full = traversal.defer(e.targetLocation(), matcher, REMOTE_BATCH_SIZE);
+		return (full == null) || ship(traversal, full);
+	}
+
+	/** ships every batch the traversal deferred, @return false IFF the traversal should stop */
+	protected boolean shipDeferred(Traversal traversal) {
+		for (TraversalBatch batch : traversal.drainDeferred()) {
+			if (!ship(traversal, batch)) return false;
+		}
+		return true;
+	}
+
+	private boolean ship(Traversal traversal, TraversalBatch batch) {
+		if (!traversal.withinBounds()) return false;
+		IService service = connectionManager.connect(serviceName, traversal.sourceClient, batch.getServiceName());
+		return service.traverse(batch, traversal.remainingOptions(), traversal.consumer);
+	}
+
+	/** @return true IFF the target of {@code e} is served by this service (checked without touching the target itself) */
+	protected boolean isLocal(Edge e) {
+		return serviceName.equals(e.targetLocation().getServiceName());
+	}
+
+	/*** static ***/
+
+	/**
+	 * a node that still needs to be expanded together with the matcher that reached it
+	 * @author amitport
+	 */
+	protected static class WorkItem {
+		final INode node;
+		final Matcher matcher;
+		final Path path;//only tracked for simple paths
+		WorkItem(INode node, Matcher matcher, Path path) {
+			this.node = node;
+			this.matcher = matcher;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * the nodes of a path from the start node (shared by all the paths with the same prefix)
+	 * @author amitport
+	 */
+	protected static class Path {
+		final NodeLocation location;
+		final Path parent;
+		Path(NodeLocation location, Path parent) {
+			this.location = location;
+			this.parent = parent;
+		}
+		boolean contains(NodeLocation l) {
+			for (Path p = this; p != null; p = p.parent) {
+				if (p.location.equals(l)) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * the state of a single traversal shared by everything expanded on its behalf
+	 * @author amitport
+	 */
+	protected static class Traversal {
+		/** the deadline is only checked every so many edges */
+		final static int DEADLINE_CHECK_INTERVAL = 256;
+
+		final TraversalOptions options;
+		final IResultConsumer consumer;
+		final IResultConsumer upstream;//the consumer the traversal was given
+		final Set<Object> visited;//(node, matcher state) pairs already reached, only tracked for shortest paths
+		final AtomicLong expanded;
+		final AtomicInteger produced;
+		final AtomicBoolean stopped;//a bound tripped
+		final String sourceClient;//the client remote services are connected on behalf of
+		final Map<String,TraversalBatch> deferred;//by service, guarded by itself
+
+		Traversal(TraversalOptions options, IResultConsumer consumer, String sourceClient) {
+			this.options = options;
+			this.sourceClient = sourceClient;
+			this.deferred = new LinkedHashMap<String,TraversalBatch>();
+			this.visited = (options.semantics == PathSemantics.SHORTEST) ?
+					Collections.newSetFromMap(new ConcurrentHashMap<Object,Boolean>()) : null;
+			this.expanded = new AtomicLong();
+			this.produced = new AtomicInteger();
+			this.stopped = new AtomicBoolean();
+			this.upstream = consumer;
+			this.consumer = bounded(consumer);
+		}
+
+		private Traversal(Traversal t, IResultConsumer consumer) {
+			this.options = t.options;
+			this.consumer = consumer;
+			this.upstream = t.upstream;
+			this.visited = t.visited;
+			this.expanded = t.expanded;
+			this.produced = t.produced;
+			this.stopped = t.stopped;
+			this.sourceClient = t.sourceClient;
+			this.deferred = t.deferred;
+		}
+
+		/** counts one more matched edge, @return false IFF the traversal should stop */
+		boolean charge() {
+			if (stopped.get()) return false;
+			if (options.maxExpandedEdges == TraversalOptions.NO_MAX_EXPANDED_EDGES
+					&& options.deadline == TraversalOptions.NO_DEADLINE
+					&& options.cancellation == null) return true;
+			long count = expanded.incrementAndGet();
+			if (count > options.maxExpandedEdges) return stop();
+			if (count % DEADLINE_CHECK_INTERVAL == 1 && System.currentTimeMillis() > options.deadline) return stop();
+			if (options.cancellation != null && options.cancellation.isCancelled()) return stop();
+			return true;
+		}
+
+		/** @return false IFF the traversal should stop */
+		boolean withinBounds() {
+			if (stopped.get()) return false;
+			if (System.currentTimeMillis() > options.deadline) return stop();
+			if (options.cancellation != null && options.cancellation.isCancelled()) return stop();
+			return true;
+		}
+
+		private boolean stop() {
+			stopped.set(true);
+			return false;
+		}
+
+		/** tells the consumer the traversal was given how many edges were matched, if it counts them (a caller's remote hop) */
+		void reportExpanded() {
+			long count = expanded.get();
+			if (count > 0 && upstream instanceof IExpansionCounter) ((IExpansionCounter) upstream).expanded(count);
+		}
+
+		/** @return the options of a remote hop made now */
+		TraversalOptions remainingOptions() {
+			return options.remaining(produced.get(), expanded.get());
+		}
+
+		/**
+		 * adds the continuation of {@code matcher} at the remote node {@code location} to the batch of its service
+		 * @return that batch (no longer deferred) if it reached {@code batchSize}, otherwise {@code null}
+		 */
+		TraversalBatch defer(NodeLocation location, Matcher matcher, int batchSize) {
+			synchronized (deferred) {
+				TraversalBatch $ = deferred.get(location.getServiceName());
+				if ($ == null) deferred.put(location.getServiceName(), $ = new TraversalBatch(location.getServiceName()));
+				$.add(location, matcher);
+				if ($.size() < batchSize) return null;
+				deferred.remove(location.getServiceName());
+				return $;
+			}
+		}
+
+		/** @return the deferred batches, which are no longer deferred */
+		List<TraversalBatch> drainDeferred() {
+			synchronized (deferred) {
+				List<TraversalBatch> $ = new ArrayList<TraversalBatch>(deferred.values());
+				deferred.clear();
+				return $;
+			}
+		}
+
+		/** @return {@code inner} fed only while the traversal is within its bounds (counting results against its limit) */
+		IResultConsumer bounded(IResultConsumer inner) {
+			return options.isBounded() ? new Bounded(inner) : inner;
+		}
+
+		/** @return the same traversal feeding a different consumer */
+		Traversal withConsumer(IResultConsumer consumer) {
+			return new Traversal(this, consumer);
+		}
+
+		/** @return false IFF {@code matcher}'s state was already reached at {@code location} (and should not be expanded again) */
+		boolean firstVisit(NodeLocation location, Matcher matcher) {
+			if (visited == null) return true;
+			return visited.add(new SimpleImmutableEntry<NodeLocation,Object>(location, matcher.stateKey()));
+		}
+
+		/**
+		 * enforces the result limit (and stops feeding results once any bound tripped),
+		 * edges matched by remote hops are counted against the traversal's budget
+		 * @author amitport
+		 */
+		class Bounded implements IExpansionCounter {
+			final IResultConsumer inner;
+			Bounded(IResultConsumer inner) {
+				this.inner = inner;
+			}
+			@Override
+			public boolean accept(Result r) {
+				if (!withinBounds()) return false;
+				int count = produced.incrementAndGet();
+				if (count > options.limit) return stop();
+				if (!inner.accept(r)) return false;
+				return (count < options.limit) || stop();
+			}
+			@Override
+			public void expanded(long count) {
+				if (expanded.addAndGet(count) > options.maxExpandedEdges) stop();
+			}
+		}
+	}
+}